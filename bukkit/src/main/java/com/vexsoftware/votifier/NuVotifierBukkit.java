@@ -25,6 +25,10 @@ import com.vexsoftware.votifier.support.forwarding.ForwardedVoteListener;
 import com.vexsoftware.votifier.support.forwarding.ForwardingVoteSink;
 import com.vexsoftware.votifier.model.Vote;
 import com.vexsoftware.votifier.model.VotifierEvent;
+import com.vexsoftware.votifier.net.AddressFilter;
+import com.vexsoftware.votifier.net.ConnectionRateLimiter;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
+import com.vexsoftware.votifier.net.VoteBatcher;
 import com.vexsoftware.votifier.net.VotifierServerBootstrap;
 import com.vexsoftware.votifier.net.VotifierSession;
 import com.vexsoftware.votifier.net.protocol.v1crypto.RSAIO;
@@ -49,8 +53,13 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.security.Key;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.logging.Level;
 
 /**
@@ -224,7 +233,38 @@ public class NuVotifierBukkit extends JavaPlugin implements VoteHandler, Votifie
                 getLogger().info("------------------------------------------------------------------------------");
             }
 
+            AddressFilter addressFilter;
+            try {
+                addressFilter = AddressFilter.compile(cfg.getStringList("address-filter.allow"),
+                        cfg.getStringList("address-filter.deny"));
+            } catch (IllegalArgumentException e) {
+                getLogger().log(Level.SEVERE, "Invalid address-filter configuration", e);
+                return false;
+            }
+
+            InFlightVoteLimiter voteLimiter;
+            try {
+                voteLimiter = InFlightVoteLimiter.fromConfig(
+                        cfg.getInt("in-flight-votes.high-watermark", InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK),
+                        cfg.getInt("in-flight-votes.low-watermark", InFlightVoteLimiter.DEFAULT_LOW_WATERMARK),
+                        cfg.getString("in-flight-votes.overload-action", "pause"));
+            } catch (IllegalArgumentException e) {
+                getLogger().log(Level.SEVERE, "Invalid in-flight-votes configuration", e);
+                return false;
+            }
+
             this.bootstrap = new VotifierServerBootstrap(host, port, this, disablev1);
+            this.bootstrap.setAddressFilter(addressFilter);
+            this.bootstrap.setTimeouts(
+                    cfg.getLong("connection-limits.handshake-timeout", VotifierServerBootstrap.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS),
+                    cfg.getLong("connection-limits.read-timeout", VotifierServerBootstrap.DEFAULT_READ_TIMEOUT_MILLIS));
+            this.bootstrap.setMaxConnections(cfg.getInt("connection-limits.max-connections", VotifierServerBootstrap.DEFAULT_MAX_CONNECTIONS));
+            this.bootstrap.setHandlerTimeout(cfg.getLong("connection-limits.handler-timeout", 0));
+            this.bootstrap.setConnectionRateLimit(cfg.getInt("connection-limits.connection-burst", ConnectionRateLimiter.DEFAULT_BURST),
+                    cfg.getDouble("connection-limits.connection-rate", 0));
+            this.bootstrap.setVoteLimiter(voteLimiter);
+            this.bootstrap.setVoteBatching(cfg.getInt("vote-batching.max-size", 1),
+                    cfg.getLong("vote-batching.max-delay", VoteBatcher.DEFAULT_MAX_DELAY_MILLIS));
             this.bootstrap.start(error -> {});
         } else {
             getLogger().info("------------------------------------------------------------------------------");
@@ -335,10 +375,57 @@ public class NuVotifierBukkit extends JavaPlugin implements VoteHandler, Votifie
 
     @Override
     public void onVoteReceived(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        onVoteReceivedAsync(vote, protocolVersion, remoteAddress);
+    }
+
+    @Override
+    public CompletionStage<Void> onVoteReceivedAsync(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
         if (debug) {
             getLogger().info("Got a " + protocolVersion.humanReadable + " vote record from " + remoteAddress + " -> " + vote);
         }
-        Bukkit.getScheduler().runTask(this, () -> fireVotifierEvent(vote));
+        CompletableFuture<Void> handled = new CompletableFuture<>();
+        Bukkit.getScheduler().runTask(this, () -> {
+            if (handled.isDone()) {
+                // The handler timeout already failed this vote, so the site will send it again.
+                return;
+            }
+            try {
+                fireVotifierEvent(vote);
+                handled.complete(null);
+            } catch (Throwable e) {
+                handled.completeExceptionally(e);
+            }
+        });
+        return handled;
+    }
+
+    @Override
+    public List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+        if (debug) {
+            for (ReceivedVote vote : votes) {
+                getLogger().info("Got a " + vote.getProtocolVersion().humanReadable + " vote record from " + vote.getRemoteAddress() + " -> " + vote.getVote());
+            }
+        }
+        List<CompletableFuture<Void>> handled = new ArrayList<>(votes.size());
+        for (int i = 0; i < votes.size(); i++) {
+            handled.add(new CompletableFuture<>());
+        }
+        Bukkit.getScheduler().runTask(this, () -> {
+            // Each vote succeeds or fails on its own, so a failing listener doesn't get the others sent again.
+            for (int i = 0; i < votes.size(); i++) {
+                if (handled.get(i).isDone()) {
+                    // The handler timeout already failed this vote, so the site will send it again.
+                    continue;
+                }
+                try {
+                    fireVotifierEvent(votes.get(i).getVote());
+                    handled.get(i).complete(null);
+                } catch (Throwable e) {
+                    handled.get(i).completeExceptionally(e);
+                }
+            }
+        });
+        return Collections.unmodifiableList(handled);
     }
 
     @Override
@@ -21,6 +21,7 @@ public class BukkitPluginMessagingForwardingSink extends AbstractPluginMessaging
         Validate.notNull(channel, "Channel cannot be null.");
         this.channel = channel;
         Bukkit.getMessenger().registerIncomingPluginChannel(p, channel, this);
+        Bukkit.getMessenger().registerOutgoingPluginChannel(p, channel);
         this.p = p;
     }
 
@@ -30,12 +31,17 @@ public class BukkitPluginMessagingForwardingSink extends AbstractPluginMessaging
     @Override
     public void halt() {
         Bukkit.getMessenger().unregisterIncomingPluginChannel(p, channel, this);
+        Bukkit.getMessenger().unregisterOutgoingPluginChannel(p, channel);
     }
 
     @Override
     public void onPluginMessageReceived(String s, Player player, byte[] bytes) {
         try {
-            this.handlePluginMessage(bytes);
+            byte[] ack = this.handlePluginMessage(bytes);
+            if (ack != null) {
+                // The acknowledgement goes back to the proxy over the connection the votes came in on.
+                player.sendPluginMessage(p, channel, ack);
+            }
         } catch (Exception e) {
             p.getLogger().log(Level.SEVERE, "There was an unknown error when processing a forwarded vote.", e);
         }
@@ -1,21 +1,32 @@
 package com.vexsoftware.votifier.bungee;
 
 import com.google.common.collect.ImmutableList;
+import com.vexsoftware.votifier.ReceivedVote;
 import com.vexsoftware.votifier.VoteHandler;
 import com.vexsoftware.votifier.bungee.cmd.NVReloadCmd;
+import com.vexsoftware.votifier.bungee.cmd.NVStatusCmd;
 import com.vexsoftware.votifier.bungee.cmd.TestVoteCmd;
+import com.vexsoftware.votifier.net.AddressFilter;
+import com.vexsoftware.votifier.net.ConnectionRateLimiter;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
+import com.vexsoftware.votifier.net.VoteBatcher;
 import com.vexsoftware.votifier.net.VotifierServerBootstrap;
 import com.vexsoftware.votifier.platform.BackendServer;
+import com.vexsoftware.votifier.platform.BackendServerSnapshot;
+import com.vexsoftware.votifier.platform.BackendServerTracker;
 import com.vexsoftware.votifier.platform.JavaUtilLogger;
 import com.vexsoftware.votifier.platform.LoggingAdapter;
 import com.vexsoftware.votifier.platform.ProxyVotifierPlugin;
 import com.vexsoftware.votifier.bungee.events.VotifierEvent;
 import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
+import com.vexsoftware.votifier.support.forwarding.AbstractPluginMessagingForwardingSource;
+import com.vexsoftware.votifier.support.forwarding.BoundedSendQueue;
 import com.vexsoftware.votifier.support.forwarding.ForwardingVoteSource;
 import com.vexsoftware.votifier.support.forwarding.ServerFilter;
 import com.vexsoftware.votifier.support.forwarding.cache.FileVoteCache;
 import com.vexsoftware.votifier.support.forwarding.cache.MemoryVoteCache;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
+import com.vexsoftware.votifier.support.forwarding.proxy.ConsistentHashRing;
 import com.vexsoftware.votifier.support.forwarding.proxy.ProxyForwardingVoteSource;
 import com.vexsoftware.votifier.model.Vote;
 import com.vexsoftware.votifier.net.VotifierSession;
@@ -24,6 +35,7 @@ import com.vexsoftware.votifier.net.protocol.v1crypto.RSAKeygen;
 import com.vexsoftware.votifier.util.IOUtil;
 import com.vexsoftware.votifier.util.KeyCreator;
 import com.vexsoftware.votifier.util.TokenUtil;
+import com.vexsoftware.votifier.util.VotifierStatus;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.plugin.Plugin;
@@ -44,11 +56,13 @@ import java.nio.file.StandardCopyOption;
 import java.security.Key;
 import java.security.KeyPair;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlugin {
 
@@ -77,6 +91,11 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
      */
     private ForwardingVoteSource forwardingMethod;
 
+    /**
+     * Backend servers, rewrapped only when servers are added or removed.
+     */
+    private final BackendServerTracker<ServerInfo> backendServers = new BackendServerTracker<>(BungeeBackendServer::new);
+
     private VotifierScheduler scheduler;
     private LoggingAdapter pluginLogger;
 
@@ -200,9 +219,38 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
             getLogger().info("------------------------------------------------------------------------------");
         }
 
+        final AddressFilter addressFilter;
+        try {
+            addressFilter = AddressFilter.compile(configuration.getStringList("address-filter.allow"),
+                    configuration.getStringList("address-filter.deny"));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid address-filter configuration", e);
+        }
+
+        final InFlightVoteLimiter voteLimiter;
+        try {
+            voteLimiter = InFlightVoteLimiter.fromConfig(
+                    configuration.getInt("in-flight-votes.high-watermark", InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK),
+                    configuration.getInt("in-flight-votes.low-watermark", InFlightVoteLimiter.DEFAULT_LOW_WATERMARK),
+                    configuration.getString("in-flight-votes.overload-action", "pause"));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid in-flight-votes configuration", e);
+        }
+
         // Must set up server asynchronously due to BungeeCord goofiness.
         FutureTask<?> initTask = new FutureTask<>(Executors.callable(() -> {
             this.bootstrap = new VotifierServerBootstrap(host, port, NuVotifier.this, disablev1);
+            this.bootstrap.setAddressFilter(addressFilter);
+            this.bootstrap.setTimeouts(
+                    configuration.getLong("connection-limits.handshake-timeout", VotifierServerBootstrap.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS),
+                    configuration.getLong("connection-limits.read-timeout", VotifierServerBootstrap.DEFAULT_READ_TIMEOUT_MILLIS));
+            this.bootstrap.setMaxConnections(configuration.getInt("connection-limits.max-connections", VotifierServerBootstrap.DEFAULT_MAX_CONNECTIONS));
+            this.bootstrap.setHandlerTimeout(configuration.getLong("connection-limits.handler-timeout", VotifierServerBootstrap.DEFAULT_HANDLER_TIMEOUT_MILLIS));
+            this.bootstrap.setConnectionRateLimit(configuration.getInt("connection-limits.connection-burst", ConnectionRateLimiter.DEFAULT_BURST),
+                    configuration.getDouble("connection-limits.connection-rate", 0));
+            this.bootstrap.setVoteLimiter(voteLimiter);
+            this.bootstrap.setVoteBatching(configuration.getInt("vote-batching.max-size", 1),
+                    configuration.getLong("vote-batching.max-delay", VoteBatcher.DEFAULT_MAX_DELAY_MILLIS));
             this.bootstrap.start(err -> {});
         }));
         getProxy().getScheduler().runAsync(this, initTask);
@@ -214,6 +262,16 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
 
         Configuration fwdCfg = configuration.getSection("forwarding");
         String fwdMethod = fwdCfg.getString("method", "none").toLowerCase();
+        int queueCapacity = fwdCfg.getInt("queue.capacity", BoundedSendQueue.DEFAULT_CAPACITY);
+        BoundedSendQueue.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = BoundedSendQueue.OverflowPolicy.fromConfig(fwdCfg.getString("queue.overflow", "spill"));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Unknown queue overflow policy '" + fwdCfg.getString("queue.overflow") + "'", e);
+        }
+        if (queueCapacity < 1) {
+            throw new RuntimeException("The forwarding queue capacity must be positive");
+        }
         if ("none".equals(fwdMethod)) {
             getLogger().info("Method none selected for vote forwarding: Votes will not be forwarded to backend servers.");
         } else if ("pluginmessaging".equals(fwdMethod)) {
@@ -239,6 +297,16 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
             }
 
             int dumpRate = fwdCfg.getInt("pluginMessaging.dumpRate", 5);
+            int maxMessageSize = fwdCfg.getInt("pluginMessaging.maxMessageSize", AbstractPluginMessagingForwardingSource.DEFAULT_MAX_MESSAGE_SIZE);
+            boolean acknowledge = fwdCfg.getBoolean("pluginMessaging.acknowledge", false);
+            int ackTimeout = fwdCfg.getInt("pluginMessaging.ackTimeout", 30);
+            AbstractPluginMessagingForwardingSource.MessageFormat messageFormat;
+            try {
+                messageFormat = AbstractPluginMessagingForwardingSource.MessageFormat.fromConfig(
+                        fwdCfg.getString("pluginMessaging.format", "json"));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown plugin messaging format '" + fwdCfg.getString("pluginMessaging.format") + "'", e);
+            }
 
             ServerFilter filter = new ServerFilter(
                     fwdCfg.getStringList("pluginMessaging.excludedServers"),
@@ -247,7 +315,12 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
 
             if (!fwdCfg.getBoolean("pluginMessaging.onlySendToJoinedServer")) {
                 try {
-                    forwardingMethod = new PluginMessagingForwardingSource(channel, filter, this, voteCache, dumpRate);
+                    PluginMessagingForwardingSource source = new PluginMessagingForwardingSource(channel, filter, this, voteCache, dumpRate);
+                    source.setQueueLimits(queueCapacity, overflowPolicy);
+                    source.setMessageFormat(messageFormat);
+                    source.setMaxMessageSize(maxMessageSize);
+                    if (acknowledge) source.enableAcks(TimeUnit.SECONDS.toMillis(ackTimeout));
+                    forwardingMethod = source;
                     getLogger().info("Forwarding votes over PluginMessaging channel '" + channel + "' for vote forwarding!");
                 } catch (RuntimeException e) {
                     getLogger().log(Level.SEVERE, "NuVotifier could not set up PluginMessaging for vote forwarding!", e);
@@ -256,7 +329,12 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
                 try {
                     String fallbackServer = fwdCfg.getString("pluginMessaging.joinedServerFallback", null);
                     if (fallbackServer != null && fallbackServer.isEmpty()) fallbackServer = null;
-                    forwardingMethod = new OnlineForwardPluginMessagingForwardingSource(channel, this, filter, voteCache, fallbackServer, dumpRate);
+                    OnlineForwardPluginMessagingForwardingSource source = new OnlineForwardPluginMessagingForwardingSource(channel, this, filter, voteCache, fallbackServer, dumpRate);
+                    source.setQueueLimits(queueCapacity, overflowPolicy);
+                    source.setMessageFormat(messageFormat);
+                    source.setMaxMessageSize(maxMessageSize);
+                    if (acknowledge) source.enableAcks(TimeUnit.SECONDS.toMillis(ackTimeout));
+                    forwardingMethod = source;
                     getLogger().info("Forwarding votes over PluginMessaging channel '" + channel + "' for vote forwarding for online players!");
                 } catch (RuntimeException e) {
                     getLogger().log(Level.SEVERE, "NuVotifier could not set up PluginMessaging for vote forwarding!", e);
@@ -292,7 +370,32 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
                 }
             }
 
-            forwardingMethod = bootstrap.createForwardingSource(serverList, null);
+            ProxyForwardingVoteSource proxySource;
+            if (fwdCfg.getBoolean("proxyOutbox", true)) {
+                proxySource = bootstrap.createForwardingSource(serverList, null,
+                        new File(getDataFolder(), "proxy-outbox").toPath());
+            } else {
+                proxySource = bootstrap.createForwardingSource(serverList, null);
+            }
+
+            String routing = fwdCfg.getString("proxyRouting", "broadcast");
+            if ("sharded".equalsIgnoreCase(routing)) {
+                try {
+                    proxySource.setSharding(fwdCfg.getInt("proxyVirtualNodes", ConsistentHashRing.DEFAULT_VIRTUAL_NODES),
+                            fwdCfg.getInt("proxyReplicas", 1));
+                } catch (IllegalArgumentException e) {
+                    throw new RuntimeException("Invalid vote sharding settings", e);
+                }
+            } else if (!"broadcast".equalsIgnoreCase(routing)) {
+                getLogger().severe("No proxy routing '" + routing + "' known. Sending votes to every server.");
+            }
+            proxySource.setQueueLimits(queueCapacity, overflowPolicy);
+            try {
+                proxySource.setIdleTimeout(fwdCfg.getLong("proxyIdleTimeout", ProxyForwardingVoteSource.DEFAULT_IDLE_TIMEOUT_MILLIS));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Invalid proxy idle timeout", e);
+            }
+            forwardingMethod = proxySource;
             getLogger().info("Forwarding votes from this NuVotifier instance to another NuVotifier server.");
         } else {
             getLogger().severe("No vote forwarding method '" + fwdMethod + "' known. Defaulting to noop implementation.");
@@ -306,6 +409,7 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
 
         PluginManager pm = ProxyServer.getInstance().getPluginManager();
         pm.registerCommand(this, new NVReloadCmd(this));
+        pm.registerCommand(this, new NVStatusCmd(this));
         pm.registerCommand(this, new TestVoteCmd(this));
         pm.registerListener(this, new ReloadListener(this));
 
@@ -348,6 +452,13 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
         }
     }
 
+    /**
+     * Describes what the Votifier server and vote forwarding are up to, one line at a time.
+     */
+    public List<String> getStatus() {
+        return VotifierStatus.describe(bootstrap, forwardingMethod);
+    }
+
     @Override
     public void onDisable() {
         halt();
@@ -356,6 +467,11 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
 
     @Override
     public void onVoteReceived(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        onVoteReceivedAsync(vote, protocolVersion, remoteAddress);
+    }
+
+    @Override
+    public CompletionStage<Void> onVoteReceivedAsync(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
         if (debug) {
             if (protocolVersion == VotifierSession.ProtocolVersion.ONE) {
                 getLogger().info("Got a protocol v1 vote record from " + remoteAddress + " -> " + vote);
@@ -364,11 +480,57 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
             }
         }
 
-        getProxy().getScheduler().runAsync(this, () -> getProxy().getPluginManager().callEvent(new VotifierEvent(vote)));
+        CompletableFuture<Void> handled = new CompletableFuture<>();
+        getProxy().getScheduler().runAsync(this, () -> {
+            if (handled.isDone()) {
+                // The handler timeout already failed this vote, so the site will send it again.
+                return;
+            }
+            try {
+                getProxy().getPluginManager().callEvent(new VotifierEvent(vote));
+                if (forwardingMethod != null) {
+                    forwardingMethod.forward(vote);
+                }
+                handled.complete(null);
+            } catch (Throwable e) {
+                handled.completeExceptionally(e);
+            }
+        });
+        return handled;
+    }
 
-        if (forwardingMethod != null) {
-            getProxy().getScheduler().runAsync(this, () -> forwardingMethod.forward(vote));
+    @Override
+    public List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+        if (debug) {
+            for (ReceivedVote vote : votes) {
+                getLogger().info("Got a " + vote.getProtocolVersion().humanReadable + " vote record from " + vote.getRemoteAddress() + " -> " + vote.getVote());
+            }
+        }
+
+        List<CompletableFuture<Void>> handled = new ArrayList<>(votes.size());
+        for (int i = 0; i < votes.size(); i++) {
+            handled.add(new CompletableFuture<>());
         }
+        getProxy().getScheduler().runAsync(this, () -> {
+            // Each vote succeeds or fails on its own, so a failing listener doesn't get the others sent again.
+            for (int i = 0; i < votes.size(); i++) {
+                if (handled.get(i).isDone()) {
+                    // The handler timeout already failed this vote, so the site will send it again.
+                    continue;
+                }
+                Vote vote = votes.get(i).getVote();
+                try {
+                    getProxy().getPluginManager().callEvent(new VotifierEvent(vote));
+                    if (forwardingMethod != null) {
+                        forwardingMethod.forward(vote);
+                    }
+                    handled.get(i).complete(null);
+                } catch (Throwable e) {
+                    handled.get(i).completeExceptionally(e);
+                }
+            }
+        });
+        return Collections.unmodifiableList(handled);
     }
 
     @Override
@@ -411,9 +573,12 @@ public class NuVotifier extends Plugin implements VoteHandler, ProxyVotifierPlug
 
     @Override
     public Collection<BackendServer> getAllBackendServers() {
-        return getProxy().getServers().values().stream()
-                .map(BungeeBackendServer::new)
-                .collect(Collectors.toList());
+        return getBackendServerSnapshot().asList();
+    }
+
+    @Override
+    public BackendServerSnapshot getBackendServerSnapshot() {
+        return backendServers.update(getProxy().getServers().values());
     }
 
     @Override
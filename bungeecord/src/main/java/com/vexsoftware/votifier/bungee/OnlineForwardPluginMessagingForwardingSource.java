@@ -8,6 +8,7 @@ import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.connection.Server;
 import net.md_5.bungee.api.event.PluginMessageEvent;
 import net.md_5.bungee.api.event.ServerConnectedEvent;
 import net.md_5.bungee.api.plugin.Listener;
@@ -32,7 +33,7 @@ public final class OnlineForwardPluginMessagingForwardingSource extends Abstract
         ProxiedPlayer p = ProxyServer.getInstance().getPlayer(v.getUsername());
         if (p != null && p.getServer() != null &&
                 serverFilter.isAllowed(p.getServer().getInfo().getName())) {
-            if (forwardSpecific(new BungeeBackendServer(p.getServer().getInfo()), v)) {
+            if (forwardSpecific(new BungeeBackendServer(p.getServer().getInfo()), v, v.getUsername())) {
                 if (plugin.isDebug()) {
                     plugin.getPluginLogger().info("Successfully forwarded vote " + v + " to server " + p.getServer().getInfo().getName());
                 }
@@ -51,7 +52,11 @@ public final class OnlineForwardPluginMessagingForwardingSource extends Abstract
 
     @EventHandler
     public void onPluginMessage(PluginMessageEvent e) {
-        if (e.getTag().equals(channel)) e.setCancelled(true);
+        if (!e.getTag().equals(channel)) return;
+        e.setCancelled(true);
+        if (e.getSender() instanceof Server) {
+            handleAck(((Server) e.getSender()).getInfo().getName(), e.getData());
+        }
     }
 
     @EventHandler
@@ -4,6 +4,7 @@ import com.vexsoftware.votifier.support.forwarding.AbstractPluginMessagingForwar
 import com.vexsoftware.votifier.support.forwarding.ServerFilter;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
 import net.md_5.bungee.api.ProxyServer;
+import net.md_5.bungee.api.connection.Server;
 import net.md_5.bungee.api.event.PluginMessageEvent;
 import net.md_5.bungee.api.event.ServerConnectedEvent;
 import net.md_5.bungee.api.plugin.Listener;
@@ -23,7 +24,11 @@ public class PluginMessagingForwardingSource extends AbstractPluginMessagingForw
 
     @EventHandler
     public void onPluginMessage(PluginMessageEvent e) {
-        if (e.getTag().equals(channel)) e.setCancelled(true);
+        if (!e.getTag().equals(channel)) return;
+        e.setCancelled(true);
+        if (e.getSender() instanceof Server) {
+            handleAck(((Server) e.getSender()).getInfo().getName(), e.getData());
+        }
     }
 
     @EventHandler
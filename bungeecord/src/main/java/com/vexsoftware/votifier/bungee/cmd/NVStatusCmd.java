@@ -0,0 +1,37 @@
+package com.vexsoftware.votifier.bungee.cmd;
+
+import com.vexsoftware.votifier.bungee.NuVotifier;
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.CommandSender;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.plugin.Command;
+
+public class NVStatusCmd extends Command {
+
+    private final NuVotifier plugin;
+
+    private static final BaseComponent permission = new TextComponent("You do not have permission to do this!");
+
+    static {
+        permission.setColor(ChatColor.DARK_RED);
+    }
+
+    public NVStatusCmd(NuVotifier plugin) {
+        super("pnvstatus", "nuvotifier.status");
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(CommandSender sender, String[] args) {
+        if (sender.hasPermission("nuvotifier.status")) {
+            for (String line : plugin.getStatus()) {
+                TextComponent component = new TextComponent(line);
+                component.setColor(ChatColor.GRAY);
+                sender.sendMessage(component);
+            }
+        } else {
+            sender.sendMessage(permission);
+        }
+    }
+}
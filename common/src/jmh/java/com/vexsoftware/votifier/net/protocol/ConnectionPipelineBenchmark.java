@@ -0,0 +1,146 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.net.protocol.v1crypto.RSA;
+import com.vexsoftware.votifier.net.protocol.v1crypto.RSAKeygen;
+import com.vexsoftware.votifier.platform.LoggingAdapter;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
+import com.vexsoftware.votifier.util.GsonInst;
+import com.vexsoftware.votifier.util.KeyCreator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of accepting one vote on a fresh connection with {@link VotifierProtocolHandler}, from the
+ * greeting to the decoded {@link Vote}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionPipelineBenchmark {
+    private static final String CHALLENGE = "benchmarkchallenge";
+
+    @Param({"2", "1"})
+    public int protocol;
+
+    private VotifierPlugin plugin;
+    private VotifierProtocolHandler fusedHandler;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPair keyPair = RSAKeygen.generate(2048);
+        Key token = KeyCreator.createKeyFrom("benchmark");
+        plugin = new BenchmarkPlugin(Collections.singletonMap("default", token), keyPair);
+        fusedHandler = new VotifierProtocolHandler(true, null);
+
+        Vote vote = new Vote("Benchmark", "player", "127.0.0.1", "1546300800");
+        if (protocol == 1) {
+            String block = "VOTE\n" + vote.getServiceName() + "\n" + vote.getUsername() + "\n" + vote.getAddress() +
+                    "\n" + vote.getTimeStamp() + "\n";
+            message = RSA.encrypt(block.getBytes(StandardCharsets.US_ASCII), keyPair.getPublic());
+        } else {
+            JsonObject payload = vote.serialize();
+            payload.addProperty("challenge", CHALLENGE);
+            String payloadEncoded = GsonInst.gson.toJson(payload);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(token);
+            JsonObject envelope = new JsonObject();
+            envelope.addProperty("payload", payloadEncoded);
+            envelope.addProperty("signature",
+                    Base64.getEncoder().encodeToString(mac.doFinal(payloadEncoded.getBytes(StandardCharsets.UTF_8))));
+            byte[] json = GsonInst.gson.toJson(envelope).getBytes(StandardCharsets.UTF_8);
+
+            ByteBuf buf = Unpooled.buffer();
+            buf.writeShort(0x733A);
+            buf.writeShort(json.length);
+            buf.writeBytes(json);
+            message = new byte[buf.readableBytes()];
+            buf.readBytes(message);
+        }
+    }
+
+    private EmbeddedChannel newChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel(false, false);
+        channel.attr(VotifierSession.KEY).set(new VotifierSession(CHALLENGE));
+        channel.attr(VotifierPlugin.KEY).set(plugin);
+        return channel;
+    }
+
+    private static Object accept(EmbeddedChannel channel, byte[] message) throws Exception {
+        channel.register();
+        channel.writeInbound(Unpooled.wrappedBuffer(message));
+        Object vote = channel.readInbound();
+        channel.finishAndReleaseAll();
+        return vote;
+    }
+
+    @Benchmark
+    public Object fusedHandler() throws Exception {
+        EmbeddedChannel channel = newChannel();
+        channel.pipeline().addLast("protocolHandler", fusedHandler);
+        return accept(channel, message);
+    }
+
+    private static final class BenchmarkPlugin implements VotifierPlugin {
+        private final Map<String, Key> tokens;
+        private final KeyPair keyPair;
+
+        private BenchmarkPlugin(Map<String, Key> tokens, KeyPair keyPair) {
+            this.tokens = tokens;
+            this.keyPair = keyPair;
+        }
+
+        @Override
+        public Map<String, Key> getTokens() {
+            return tokens;
+        }
+
+        @Override
+        public KeyPair getProtocolV1Key() {
+            return keyPair;
+        }
+
+        @Override
+        public LoggingAdapter getPluginLogger() {
+            return null;
+        }
+
+        @Override
+        public VotifierScheduler getScheduler() {
+            return null;
+        }
+
+        @Override
+        public void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        }
+    }
+}
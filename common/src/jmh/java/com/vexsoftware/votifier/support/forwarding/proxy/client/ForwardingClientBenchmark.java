@@ -0,0 +1,154 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.platform.LoggingAdapter;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
+import com.vexsoftware.votifier.util.KeyCreator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.string.StringDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of setting up a forwarding client connection and sending one vote over it, from the greeting to
+ * the server's response, with the pipeline built from scratch for every connection and with the shared
+ * {@link VotifierProtocol2ClientInitializer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardingClientBenchmark {
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final byte[] GREETING = "VOTIFIER 2 benchmarkchallenge\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE = "{\"status\":\"ok\"}\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private VotifierPlugin plugin;
+    private VotifierProtocol2Encoder encoder;
+    private VotifierProtocol2ClientInitializer sharedInitializer;
+    private Vote vote;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Key token = KeyCreator.createKeyFrom("benchmark");
+        plugin = new BenchmarkPlugin(Collections.singletonMap("default", token));
+        encoder = new VotifierProtocol2Encoder(token);
+        vote = new Vote("Benchmark", "player", "127.0.0.1", "1546300800");
+        sharedInitializer = new VotifierProtocol2ClientInitializer(plugin, encoder, () -> TIMEOUT_MILLIS,
+                () -> TIMEOUT_MILLIS, () -> new OneVoteSession(vote));
+    }
+
+    private static Object sendOne(ChannelHandler initializer) {
+        EmbeddedChannel channel = new EmbeddedChannel(initializer);
+        channel.writeInbound(Unpooled.wrappedBuffer(GREETING));
+        Object request = channel.readOutbound();
+        channel.writeInbound(Unpooled.wrappedBuffer(RESPONSE));
+        channel.finishAndReleaseAll();
+        return request;
+    }
+
+    @Benchmark
+    public Object perConnectionPipeline() {
+        // Everything but the encoder is created again for each connection.
+        OneVoteSession session = new OneVoteSession(vote);
+        return sendOne(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel channel) {
+                channel.pipeline().addLast(new DelimiterBasedFrameDecoder(256, true, Delimiters.lineDelimiter()));
+                channel.pipeline().addLast(new StringDecoder(StandardCharsets.US_ASCII));
+                channel.pipeline().addLast(encoder);
+                channel.pipeline().addLast(new VotifierProtocol2ClientHandler(session, plugin, TIMEOUT_MILLIS, TIMEOUT_MILLIS));
+            }
+        });
+    }
+
+    @Benchmark
+    public Object sharedInitializer() {
+        return sendOne(sharedInitializer);
+    }
+
+    private static final class OneVoteSession implements VotifierSessionHandler {
+        private Vote vote;
+
+        private OneVoteSession(Vote vote) {
+            this.vote = vote;
+        }
+
+        @Override
+        public Vote nextVote() {
+            Vote next = vote;
+            vote = null;
+            return next;
+        }
+
+        @Override
+        public void onClosed(Throwable error) {
+        }
+
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+        }
+    }
+
+    private static final class BenchmarkPlugin implements VotifierPlugin {
+        private final Map<String, Key> tokens;
+
+        private BenchmarkPlugin(Map<String, Key> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public Map<String, Key> getTokens() {
+            return tokens;
+        }
+
+        @Override
+        public KeyPair getProtocolV1Key() {
+            return null;
+        }
+
+        @Override
+        public LoggingAdapter getPluginLogger() {
+            return null;
+        }
+
+        @Override
+        public VotifierScheduler getScheduler() {
+            return null;
+        }
+
+        @Override
+        public void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.vexsoftware.votifier;
+
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+
+import java.util.Objects;
+
+/**
+ * A vote together with the connection it was received on, as delivered in a batch to
+ * {@link VoteHandler#onVotesReceived}.
+ */
+public final class ReceivedVote {
+    private final Vote vote;
+    private final VotifierSession.ProtocolVersion protocolVersion;
+    private final String remoteAddress;
+
+    public ReceivedVote(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        this.vote = Objects.requireNonNull(vote, "vote");
+        this.protocolVersion = Objects.requireNonNull(protocolVersion, "protocolVersion");
+        this.remoteAddress = remoteAddress;
+    }
+
+    public Vote getVote() {
+        return vote;
+    }
+
+    public VotifierSession.ProtocolVersion getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedVote{" +
+                "vote=" + vote +
+                ", protocolVersion=" + protocolVersion +
+                ", remoteAddress='" + remoteAddress + '\'' +
+                '}';
+    }
+}
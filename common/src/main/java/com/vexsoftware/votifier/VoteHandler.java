@@ -2,11 +2,58 @@ package com.vexsoftware.votifier;
 
 import com.vexsoftware.votifier.model.Vote;
 import com.vexsoftware.votifier.net.VotifierSession;
-import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public interface VoteHandler {
 
-    void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) throws Exception;
+    default void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) throws Exception {
+        throw new RuntimeException("Unimplemented onVoteReceived handler");
+    }
+
+    /**
+     * Handles a vote without blocking the calling thread, which is usually a Netty event loop. The client is told the
+     * vote was received only once the returned stage completes, and is sent an error status if it fails, so a vote
+     * site may retry it.
+     * <p>
+     * By default this calls {@link #onVoteReceived} and returns an already completed stage.
+     */
+    default CompletionStage<Void> onVoteReceivedAsync(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            onVoteReceived(vote, protocolVersion, remoteAddress);
+            future.complete(null);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Handles a batch of votes, possibly received on different connections. Each vote is acknowledged once its own
+     * stage completes, and its client is sent an error status if that fails, so a vote that fails doesn't take the
+     * rest of the batch with it.
+     * <p>
+     * By default this calls {@link #onVoteReceivedAsync} for each vote.
+     *
+     * @return a stage for each vote, in the same order as {@code votes}
+     */
+    default List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+        List<CompletionStage<Void>> handled = new ArrayList<>(votes.size());
+        for (ReceivedVote vote : votes) {
+            try {
+                handled.add(onVoteReceivedAsync(vote.getVote(), vote.getProtocolVersion(), vote.getRemoteAddress()));
+            } catch (Throwable e) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                handled.add(failed);
+            }
+        }
+        return handled;
+    }
 
     default void onError(Throwable throwable, boolean voteAlreadyCompleted, String remoteAddress) {
         throw new RuntimeException("Unimplemented onError handler");
@@ -0,0 +1,185 @@
+package com.vexsoftware.votifier.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable set of allowed and denied IPv4 and IPv6 CIDR blocks.
+ * <p>
+ * The blocks are compiled into one binary prefix trie per address family. An address is checked against the most
+ * specific block that contains it: if that block is denied, the address is rejected; if it is allowed, the address is
+ * accepted. Addresses that fall in no block are accepted only if the allow list is empty.
+ */
+public final class AddressFilter {
+    /**
+     * A filter that accepts every address.
+     */
+    public static final AddressFilter ALLOW_ALL = new AddressFilter(new Trie(), new Trie(), false);
+
+    private static final byte NONE = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = 2;
+
+    private final Trie ipv4;
+    private final Trie ipv6;
+    private final boolean defaultDeny;
+
+    private AddressFilter(Trie ipv4, Trie ipv6, boolean defaultDeny) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.defaultDeny = defaultDeny;
+    }
+
+    /**
+     * Compiles a filter from lists of CIDR blocks, such as {@code 192.0.2.0/24} or {@code 2001:db8::/32}. A block
+     * without a prefix length matches a single address.
+     *
+     * @param allow the blocks to accept connections from; if empty, every address not denied is accepted
+     * @param deny  the blocks to reject connections from
+     * @return the compiled filter
+     * @throws IllegalArgumentException if any block is malformed
+     */
+    public static AddressFilter compile(Collection<String> allow, Collection<String> deny) {
+        if (allow.isEmpty() && deny.isEmpty()) {
+            return ALLOW_ALL;
+        }
+
+        Trie ipv4 = new Trie();
+        Trie ipv6 = new Trie();
+        for (String block : allow) {
+            insert(ipv4, ipv6, block, ALLOW);
+        }
+        // Denied blocks are inserted last, so they win over an identical allowed block.
+        for (String block : deny) {
+            insert(ipv4, ipv6, block, DENY);
+        }
+        ipv4.trim();
+        ipv6.trim();
+        return new AddressFilter(ipv4, ipv6, !allow.isEmpty());
+    }
+
+    private static void insert(Trie ipv4, Trie ipv6, String block, byte verdict) {
+        String trimmed = block.trim();
+        int slash = trimmed.indexOf('/');
+        String host = slash == -1 ? trimmed : trimmed.substring(0, slash);
+
+        byte[] address = parseLiteral(host, block);
+        int maxBits = address.length * 8;
+        int prefix = maxBits;
+        if (slash != -1) {
+            try {
+                prefix = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length in '" + block + "'");
+            }
+            if (prefix < 0 || prefix > maxBits) {
+                throw new IllegalArgumentException("Invalid prefix length in '" + block + "'");
+            }
+        }
+
+        (address.length == 4 ? ipv4 : ipv6).insert(address, prefix, verdict);
+    }
+
+    private static byte[] parseLiteral(String host, String block) {
+        // Only accept literals, so that a typo never turns into a DNS lookup: IPv6 literals always contain a colon,
+        // and IPv4 literals are only digits and dots.
+        boolean ipv6 = host.indexOf(':') != -1;
+        if (host.isEmpty() || host.indexOf('.') == -1 && !ipv6) {
+            throw new IllegalArgumentException("Invalid address in '" + block + "'");
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            boolean valid = ipv6 ? Character.digit(c, 16) != -1 || c == ':' || c == '.' : c >= '0' && c <= '9' || c == '.';
+            if (!valid) {
+                throw new IllegalArgumentException("Invalid address in '" + block + "'");
+            }
+        }
+        try {
+            return InetAddress.getByName(host).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address in '" + block + "'", e);
+        }
+    }
+
+    /**
+     * Returns whether connections from {@code address} should be accepted.
+     */
+    public boolean isAllowed(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        byte verdict = (bytes.length == 4 ? ipv4 : ipv6).lookup(bytes);
+        if (verdict == NONE) {
+            return !defaultDeny;
+        }
+        return verdict == ALLOW;
+    }
+
+    /**
+     * Returns whether this filter accepts every address.
+     */
+    public boolean isAllowAll() {
+        return this == ALLOW_ALL;
+    }
+
+    /**
+     * A binary trie stored in parallel arrays. Node 0 is the root; a child index of 0 means there is no child.
+     */
+    private static final class Trie {
+        private int[] zero = new int[16];
+        private int[] one = new int[16];
+        private byte[] verdicts = new byte[16];
+        private int size = 1;
+
+        void insert(byte[] address, int prefix, byte verdict) {
+            int node = 0;
+            for (int bit = 0; bit < prefix; bit++) {
+                boolean set = bit(address, bit);
+                int child = set ? one[node] : zero[node];
+                if (child == 0) {
+                    child = newNode();
+                    // Look the array up again, as newNode() may have grown it.
+                    (set ? one : zero)[node] = child;
+                }
+                node = child;
+            }
+            verdicts[node] = verdict;
+        }
+
+        private int newNode() {
+            if (size == verdicts.length) {
+                int capacity = size * 2;
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                verdicts = Arrays.copyOf(verdicts, capacity);
+            }
+            return size++;
+        }
+
+        void trim() {
+            zero = Arrays.copyOf(zero, size);
+            one = Arrays.copyOf(one, size);
+            verdicts = Arrays.copyOf(verdicts, size);
+        }
+
+        byte lookup(byte[] address) {
+            byte verdict = verdicts[0];
+            int node = 0;
+            int bits = address.length * 8;
+            for (int bit = 0; bit < bits; bit++) {
+                node = bit(address, bit) ? one[node] : zero[node];
+                if (node == 0) {
+                    break;
+                }
+                if (verdicts[node] != NONE) {
+                    verdict = verdicts[node];
+                }
+            }
+            return verdict;
+        }
+
+        private static boolean bit(byte[] address, int bit) {
+            return (address[bit >>> 3] & (0x80 >>> (bit & 7))) != 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.vexsoftware.votifier.net;
+
+import com.vexsoftware.votifier.util.TokenUtil;
+
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out challenge tokens for new {@link VotifierSession}s.
+ * <p>
+ * Tokens are generated ahead of time by a refill task running on {@code refillExecutor}, and taken from a lock-free
+ * queue when a connection is accepted, so that the event loop never waits on a {@link SecureRandom}. If the pool is
+ * empty (for instance, during a connection flood) a token is generated inline instead, and the miss is counted.
+ */
+public final class ChallengePool {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Queue<String> tokens = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final int capacity;
+    private final int refillThreshold;
+    private final Executor refillExecutor;
+    // Only used by the refill task, and there is at most one of those at a time.
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+
+    public ChallengePool(Executor refillExecutor) {
+        this(DEFAULT_CAPACITY, refillExecutor);
+    }
+
+    public ChallengePool(int capacity, Executor refillExecutor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.refillThreshold = capacity / 4;
+        this.refillExecutor = refillExecutor;
+        scheduleRefill();
+    }
+
+    /**
+     * Returns a fresh challenge token. This never blocks on the refill task.
+     *
+     * @return a token that has not been handed out before
+     */
+    public String next() {
+        String token = tokens.poll();
+        if (token == null) {
+            misses.increment();
+            scheduleRefill();
+            return TokenUtil.newToken();
+        }
+
+        served.increment();
+        if (size.decrementAndGet() <= refillThreshold) {
+            scheduleRefill();
+        }
+        return token;
+    }
+
+    private void scheduleRefill() {
+        if (refilling.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(this::refill);
+            } catch (RejectedExecutionException e) {
+                // We're shutting down. Tokens will be generated inline.
+                refilling.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            refills.increment();
+            while (size.get() < capacity) {
+                tokens.offer(TokenUtil.newToken(random));
+                size.incrementAndGet();
+            }
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    /**
+     * Returns the number of tokens currently waiting in the pool.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns how many tokens were handed out from the pool.
+     */
+    public long getServedCount() {
+        return served.sum();
+    }
+
+    /**
+     * Returns how many times the pool was empty and a token had to be generated inline.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns how many times the pool has been refilled.
+     */
+    public long getRefillCount() {
+        return refills.sum();
+    }
+}
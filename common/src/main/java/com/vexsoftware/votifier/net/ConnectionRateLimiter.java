@@ -0,0 +1,162 @@
+package com.vexsoftware.votifier.net;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often each remote address may open a connection, using a token bucket per address.
+ * <p>
+ * This sits at the very front of the pipeline. Connections over the limit are closed as soon as they become active,
+ * before a session is created or the greeting is sent. At most {@code maxTrackedAddresses} buckets are kept; a bucket
+ * that has been idle long enough to refill completely is forgotten, and if the table is still full, new addresses
+ * share a single overflow bucket.
+ */
+@ChannelHandler.Sharable
+public class ConnectionRateLimiter extends ChannelInboundHandlerAdapter {
+    public static final int DEFAULT_BURST = 20;
+    public static final double DEFAULT_PER_SECOND = 5;
+    public static final int DEFAULT_MAX_TRACKED_ADDRESSES = 4096;
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long idleNanos;
+    private final int maxTrackedAddresses;
+    private final LongSupplier clock;
+
+    private final Map<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow;
+    private final AtomicLong lastSweep;
+    private final LongAdder dropped = new LongAdder();
+
+    public ConnectionRateLimiter() {
+        this(DEFAULT_BURST, DEFAULT_PER_SECOND, DEFAULT_MAX_TRACKED_ADDRESSES);
+    }
+
+    /**
+     * @param burst               how many connections an address may open at once
+     * @param perSecond           how many connections per second an address may open in the long run
+     * @param maxTrackedAddresses the most addresses to keep a bucket for
+     */
+    public ConnectionRateLimiter(int burst, double perSecond, int maxTrackedAddresses) {
+        this(burst, perSecond, maxTrackedAddresses, System::nanoTime);
+    }
+
+    ConnectionRateLimiter(int burst, double perSecond, int maxTrackedAddresses, LongSupplier clock) {
+        if (burst < 1 || perSecond <= 0 || maxTrackedAddresses < 1) {
+            throw new IllegalArgumentException("Rate limits must be positive");
+        }
+        this.capacity = burst;
+        this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.idleNanos = (long) Math.ceil(burst / tokensPerNano);
+        this.maxTrackedAddresses = maxTrackedAddresses;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.overflow = new Bucket(capacity, now);
+        this.lastSweep = new AtomicLong(now);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        SocketAddress remoteAddress = ctx.channel().remoteAddress();
+        if (remoteAddress instanceof InetSocketAddress && !tryAcquire(((InetSocketAddress) remoteAddress).getAddress())) {
+            dropped.increment();
+            ctx.close();
+            return;
+        }
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!ctx.channel().isActive()) {
+            // Anything still arriving on a connection we closed is discarded.
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    boolean tryAcquire(InetAddress address) {
+        long now = clock.getAsLong();
+        maybeSweep(now);
+
+        Bucket bucket = buckets.get(address);
+        if (bucket == null) {
+            if (buckets.size() >= maxTrackedAddresses) {
+                bucket = overflow;
+            } else {
+                bucket = buckets.computeIfAbsent(address, k -> new Bucket(capacity, now));
+            }
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    private void maybeSweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS && buckets.size() < maxTrackedAddresses) {
+            return;
+        }
+        if (now - last < idleNanos / 4 || !lastSweep.compareAndSet(last, now)) {
+            // Someone else is sweeping, or the table was swept too recently for it to help.
+            return;
+        }
+        for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            if (it.next().isIdle(now, idleNanos)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns how many connections have been closed for exceeding the rate limit.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns how many remote addresses currently have a bucket.
+     */
+    public int getTrackedAddresses() {
+        return buckets.size();
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.updatedAt = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+            updatedAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isIdle(long now, long idleNanos) {
+            return now - updatedAt >= idleNanos;
+        }
+    }
+}
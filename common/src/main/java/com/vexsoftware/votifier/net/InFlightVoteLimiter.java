@@ -0,0 +1,149 @@
+package com.vexsoftware.votifier.net;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks votes that have been decoded but not yet handled, across every channel of a server.
+ * <p>
+ * Once the number of votes in flight reaches the high watermark, the server is considered overloaded until it drops
+ * back to the low watermark. While overloaded, the server either stops reading from newly accepted connections
+ * ({@link OverloadAction#PAUSE}), or answers protocol v2 votes with an error status ({@link OverloadAction#REJECT}).
+ */
+public final class InFlightVoteLimiter {
+    public static final int DEFAULT_HIGH_WATERMARK = 256;
+    public static final int DEFAULT_LOW_WATERMARK = 128;
+
+    public enum OverloadAction {
+        /**
+         * Turn off {@code autoRead} on new connections until the server has caught up.
+         */
+        PAUSE,
+        /**
+         * Keep reading, but reply to protocol v2 votes with an error status.
+         */
+        REJECT
+    }
+
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final OverloadAction action;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean overloaded;
+    private final Set<Channel> paused = ConcurrentHashMap.newKeySet();
+    private final ChannelFutureListener removePaused = future -> paused.remove(future.channel());
+    private final LongAdder rejected = new LongAdder();
+
+    public InFlightVoteLimiter(int highWatermark, int lowWatermark, OverloadAction action) {
+        if (highWatermark < 1 || lowWatermark < 0 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("The low watermark must be below the high watermark");
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.action = action;
+    }
+
+    /**
+     * Creates a limiter from configuration values.
+     *
+     * @param highWatermark the high watermark, or 0 to disable the limit
+     * @param lowWatermark  the low watermark
+     * @param action        the name of an {@link OverloadAction}, in any case
+     * @return the limiter, or {@code null} if the limit is disabled
+     * @throws IllegalArgumentException if the values are not valid
+     */
+    public static InFlightVoteLimiter fromConfig(int highWatermark, int lowWatermark, String action) {
+        if (highWatermark <= 0) {
+            return null;
+        }
+        return new InFlightVoteLimiter(highWatermark, lowWatermark, OverloadAction.valueOf(action.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Called for every newly accepted channel. If the server is overloaded and the action is
+     * {@link OverloadAction#PAUSE}, the channel won't be read from until the server has caught up.
+     */
+    public void onChannelAccepted(Channel channel) {
+        if (action != OverloadAction.PAUSE || !overloaded) {
+            return;
+        }
+        channel.config().setAutoRead(false);
+        paused.add(channel);
+        channel.closeFuture().addListener(removePaused);
+        if (!overloaded) {
+            // We caught up while pausing the channel.
+            resumePaused();
+        }
+    }
+
+    /**
+     * Reserves a slot for a decoded vote. Every successful call must be followed by {@link #release()} once the vote
+     * has been handled.
+     *
+     * @param version the protocol the vote was received with
+     * @return whether the vote may be handled; if not, the client should be told to try again later
+     */
+    public boolean tryAcquire(VotifierSession.ProtocolVersion version) {
+        if (action == OverloadAction.REJECT && overloaded && version == VotifierSession.ProtocolVersion.TWO) {
+            rejected.increment();
+            return false;
+        }
+        if (inFlight.incrementAndGet() >= highWatermark) {
+            overloaded = true;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a slot reserved with {@link #tryAcquire}.
+     */
+    public void release() {
+        if (inFlight.decrementAndGet() <= lowWatermark && overloaded) {
+            overloaded = false;
+            resumePaused();
+        }
+    }
+
+    private void resumePaused() {
+        for (Channel channel : paused) {
+            if (paused.remove(channel)) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of votes that have been decoded but not yet handled.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns whether the server is currently above its high watermark.
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * Returns the number of connections currently paused because the server is overloaded.
+     */
+    public int getPausedConnections() {
+        return paused.size();
+    }
+
+    /**
+     * Returns how many votes were answered with an error status because the server was overloaded.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,155 @@
+package com.vexsoftware.votifier.net;
+
+import com.vexsoftware.votifier.ReceivedVote;
+import com.vexsoftware.votifier.VoteHandler;
+import com.vexsoftware.votifier.model.Vote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects votes from every connection into small batches, which are handed to
+ * {@link VoteHandler#onVotesReceived} once {@code maxBatchSize} votes are waiting or the oldest of them has waited
+ * {@code maxDelayMillis}, whichever comes first. Each vote is acknowledged once the handler has completed it.
+ */
+public final class VoteBatcher implements VoteHandler {
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+    private final VoteHandler delegate;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+    private List<Pending> pending;
+    private ScheduledFuture<?> flushTask;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder votes = new LongAdder();
+
+    /**
+     * @param delegate       the handler to deliver batches to
+     * @param maxBatchSize   the most votes to deliver at once
+     * @param maxDelayMillis the longest a vote may wait for its batch to fill up
+     * @param executor       the executor to deliver batches that didn't fill up in time from
+     */
+    public VoteBatcher(VoteHandler delegate, int maxBatchSize, long maxDelayMillis, ScheduledExecutorService executor) {
+        if (maxBatchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Batch size must be positive, and delay may not be negative");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.executor = executor;
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    @Override
+    public CompletionStage<Void> onVoteReceivedAsync(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        Pending entry = new Pending(new ReceivedVote(vote, protocolVersion, remoteAddress));
+        List<Pending> full = null;
+        synchronized (lock) {
+            pending.add(entry);
+            if (pending.size() >= maxBatchSize) {
+                full = takeBatch();
+            } else if (flushTask == null) {
+                flushTask = executor.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            deliver(full);
+        }
+        return entry.handled;
+    }
+
+    /**
+     * Delivers the votes that are waiting now, without waiting for the batch to fill up.
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        deliver(batch);
+    }
+
+    private List<Pending> takeBatch() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void deliver(List<Pending> batch) {
+        batches.increment();
+        votes.add(batch.size());
+
+        List<ReceivedVote> received = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            received.add(entry.vote);
+        }
+
+        List<CompletionStage<Void>> stages;
+        try {
+            stages = delegate.onVotesReceived(received);
+            if (stages.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " results for the batch, got " + stages.size());
+            }
+        } catch (Throwable e) {
+            for (Pending entry : batch) {
+                entry.handled.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<Void> handled = batch.get(i).handled;
+            stages.get(i).whenComplete((ignored, error) -> {
+                if (error == null) {
+                    handled.complete(null);
+                } else {
+                    handled.completeExceptionally(error);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable, boolean voteAlreadyCompleted, String remoteAddress) {
+        delegate.onError(throwable, voteAlreadyCompleted, remoteAddress);
+    }
+
+    /**
+     * Returns how many batches have been delivered.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Returns how many votes have been delivered in batches.
+     */
+    public long getVoteCount() {
+        return votes.sum();
+    }
+
+    private static final class Pending {
+        private final ReceivedVote vote;
+        private final CompletableFuture<Void> handled = new CompletableFuture<>();
+
+        private Pending(ReceivedVote vote) {
+            this.vote = vote;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.vexsoftware.votifier.net;
 
+import com.vexsoftware.votifier.VoteHandler;
 import com.vexsoftware.votifier.net.protocol.VoteInboundHandler;
-import com.vexsoftware.votifier.net.protocol.VotifierGreetingHandler;
-import com.vexsoftware.votifier.net.protocol.VotifierProtocolDifferentiator;
+import com.vexsoftware.votifier.net.protocol.VotifierProtocolHandler;
 import com.vexsoftware.votifier.platform.VotifierPlugin;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
 import com.vexsoftware.votifier.support.forwarding.proxy.ProxyForwardingVoteSource;
@@ -25,14 +25,29 @@ import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class VotifierServerBootstrap {
     private static final boolean USE_EPOLL = Epoll.isAvailable();
+    private static final int V1_CRYPTO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int V1_CRYPTO_QUEUE_SIZE = 64;
+
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 15000;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+    public static final long DEFAULT_HANDLER_TIMEOUT_MILLIS = 30000;
+
+    private static final long RATE_LIMIT_REPORT_MINUTES = 1;
 
     private final String host;
     private final int port;
@@ -40,8 +55,32 @@ public class VotifierServerBootstrap {
     private final EventLoopGroup eventLoopGroup;
     private final VotifierPlugin plugin;
     private final boolean v1Disable;
+    private final ExecutorService v1CryptoExecutor;
+    private final ChallengePool challengePool;
+    private int connectionBurst = ConnectionRateLimiter.DEFAULT_BURST;
+    // Off unless configured: a site that sends votes in bursts from one address would otherwise lose them.
+    private double connectionsPerSecond = 0;
+    private ConnectionRateLimiter rateLimiter;
+    private final LongAdder filteredConnections = new LongAdder();
+    private volatile AddressFilter addressFilter = AddressFilter.ALLOW_ALL;
+
+    private long handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+    private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long handlerTimeoutMillis = DEFAULT_HANDLER_TIMEOUT_MILLIS;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final ChannelFutureListener connectionClosed = future -> openConnections.decrementAndGet();
+
+    private InFlightVoteLimiter voteLimiter;
+    private boolean allowMultiVote = true;
+    private int maxBatchSize = 1;
+    private long maxBatchDelayMillis = VoteBatcher.DEFAULT_MAX_DELAY_MILLIS;
+    private VoteBatcher voteBatcher;
 
     private Channel serverChannel;
+    private VotifierProtocolHandler protocolHandler;
+    private VoteInboundHandler voteInboundHandler;
 
     public VotifierServerBootstrap(String host, int port, VotifierPlugin plugin, boolean v1Disable) {
         this.host = host;
@@ -57,6 +96,22 @@ public class VotifierServerBootstrap {
             this.eventLoopGroup = new NioEventLoopGroup(3, createThreadFactory("Votifier NIO worker"));
             plugin.getPluginLogger().info("Using NIO transport to accept votes.");
         }
+
+        // Protocol v1 votes need an RSA private-key operation, which is too slow to run on the event loop. Keep the
+        // queue small: if it fills up, we are being flooded and new v1 connections are dropped.
+        if (v1Disable) {
+            this.v1CryptoExecutor = null;
+        } else {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(V1_CRYPTO_THREADS, V1_CRYPTO_THREADS,
+                    30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(V1_CRYPTO_QUEUE_SIZE),
+                    createThreadFactory("Votifier crypto worker"), new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            this.v1CryptoExecutor = executor;
+        }
+
+        this.challengePool = new ChallengePool(GlobalEventExecutor.INSTANCE);
+        this.voteLimiter = new InFlightVoteLimiter(InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK,
+                InFlightVoteLimiter.DEFAULT_LOW_WATERMARK, InFlightVoteLimiter.OverloadAction.PAUSE);
     }
 
     private static ThreadFactory createThreadFactory(String name) {
@@ -70,7 +125,20 @@ public class VotifierServerBootstrap {
     public void start(Consumer<Throwable> error) {
         Objects.requireNonNull(error, "error");
 
-        VoteInboundHandler voteInboundHandler = new VoteInboundHandler(plugin);
+        protocolHandler = new VotifierProtocolHandler(!v1Disable, v1CryptoExecutor, challengePool,
+                handshakeTimeoutMillis, readTimeoutMillis, allowMultiVote);
+        VoteHandler voteHandler = plugin;
+        if (maxBatchSize > 1) {
+            voteBatcher = new VoteBatcher(plugin, maxBatchSize, maxBatchDelayMillis, eventLoopGroup.next());
+            voteHandler = voteBatcher;
+        }
+        VoteInboundHandler voteInboundHandler = new VoteInboundHandler(voteHandler, voteLimiter, handlerTimeoutMillis);
+        this.voteInboundHandler = voteInboundHandler;
+        if (connectionsPerSecond > 0) {
+            rateLimiter = new ConnectionRateLimiter(connectionBurst, connectionsPerSecond,
+                    ConnectionRateLimiter.DEFAULT_MAX_TRACKED_ADDRESSES);
+            reportRateLimitedConnections(rateLimiter);
+        }
 
         new ServerBootstrap()
                 .channel(USE_EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
@@ -78,10 +146,28 @@ public class VotifierServerBootstrap {
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel channel) {
-                        channel.attr(VotifierSession.KEY).set(new VotifierSession());
+                        if (!addressFilter.isAllowed(channel.remoteAddress().getAddress())) {
+                            filteredConnections.increment();
+                            channel.close();
+                            return;
+                        }
+
+                        if (openConnections.incrementAndGet() > maxConnections && maxConnections > 0) {
+                            openConnections.decrementAndGet();
+                            rejectedConnections.increment();
+                            channel.close();
+                            return;
+                        }
+                        channel.closeFuture().addListener(connectionClosed);
+                        if (voteLimiter != null) {
+                            voteLimiter.onChannelAccepted(channel);
+                        }
+
                         channel.attr(VotifierPlugin.KEY).set(plugin);
-                        channel.pipeline().addLast("greetingHandler", VotifierGreetingHandler.INSTANCE);
-                        channel.pipeline().addLast("protocolDifferentiator", new VotifierProtocolDifferentiator(false, !v1Disable));
+                        if (rateLimiter != null) {
+                            channel.pipeline().addLast("rateLimiter", rateLimiter);
+                        }
+                        channel.pipeline().addLast("protocolHandler", protocolHandler);
                         channel.pipeline().addLast("voteHandler", voteInboundHandler);
                     }
                 })
@@ -102,6 +188,21 @@ public class VotifierServerBootstrap {
                 });
     }
 
+    /**
+     * Logs how many connections the rate limiter closed, once a minute for as long as it keeps closing any.
+     */
+    private void reportRateLimitedConnections(ConnectionRateLimiter limiter) {
+        long[] reported = {0};
+        eventLoopGroup.scheduleAtFixedRate(() -> {
+            long dropped = limiter.getDroppedCount();
+            if (dropped > reported[0]) {
+                plugin.getPluginLogger().warn("Closed " + (dropped - reported[0]) + " connection(s) in the last " +
+                        "minute from addresses that exceeded the connection rate limit.");
+                reported[0] = dropped;
+            }
+        }, RATE_LIMIT_REPORT_MINUTES, RATE_LIMIT_REPORT_MINUTES, TimeUnit.MINUTES);
+    }
+
     private Bootstrap client() {
         return new Bootstrap()
                 .channel(USE_EPOLL ? EpollSocketChannel.class : NioSocketChannel.class)
@@ -113,6 +214,157 @@ public class VotifierServerBootstrap {
         return new ProxyForwardingVoteSource(plugin, this::client, backendServers, voteCache);
     }
 
+    /**
+     * Creates a forwarding source that keeps a durable outbox for each backend server in {@code outboxDirectory}, so
+     * votes that have not been delivered yet survive a restart.
+     */
+    public ProxyForwardingVoteSource createForwardingSource(List<ProxyForwardingVoteSource.BackendServer> backendServers,
+                                                            VoteCache voteCache, Path outboxDirectory) {
+        return new ProxyForwardingVoteSource(plugin, this::client, backendServers, voteCache, outboxDirectory);
+    }
+
+    /**
+     * Replaces the filter applied to new connections. Connections that are already open are not affected.
+     */
+    public void setAddressFilter(AddressFilter addressFilter) {
+        this.addressFilter = Objects.requireNonNull(addressFilter, "addressFilter");
+    }
+
+    public AddressFilter getAddressFilter() {
+        return addressFilter;
+    }
+
+    /**
+     * Returns how many connections have been rejected by the {@link AddressFilter}.
+     */
+    public long getFilteredConnectionCount() {
+        return filteredConnections.sum();
+    }
+
+    /**
+     * Sets how long inbound connections have to deliver a vote, and how long they may go without sending any data
+     * before then. A value of 0 disables the corresponding timeout. This must be called before {@link #start}.
+     */
+    public void setTimeouts(long handshakeTimeoutMillis, long readTimeoutMillis) {
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Sets how long the plugin has to handle a received vote, or 0 for no limit. Votes that take longer fail, and their
+     * connection is closed with an error. This must be called before {@link #start}.
+     */
+    public void setHandlerTimeout(long handlerTimeoutMillis) {
+        this.handlerTimeoutMillis = handlerTimeoutMillis;
+    }
+
+    /**
+     * Sets the maximum number of inbound connections that may be open at once, or 0 for no limit. This must be called
+     * before {@link #start}.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Limits how many connections each remote address may open: {@code burst} at once, and {@code perSecond} in the
+     * long run. A rate of 0 removes the limit, which is the default. This must be called before {@link #start}.
+     */
+    public void setConnectionRateLimit(int burst, double perSecond) {
+        this.connectionBurst = burst;
+        this.connectionsPerSecond = perSecond;
+    }
+
+    /**
+     * Limits the number of votes that may be decoded but not yet handled, or removes the limit if {@code limiter} is
+     * {@code null}. This must be called before {@link #start}.
+     */
+    public void setVoteLimiter(InFlightVoteLimiter limiter) {
+        this.voteLimiter = limiter;
+    }
+
+    public InFlightVoteLimiter getVoteLimiter() {
+        return voteLimiter;
+    }
+
+    /**
+     * Sets whether protocol v2 clients that ask for it may send several votes over one connection. Clients have to opt
+     * in, so this is enabled by default. This must be called before {@link #start}.
+     */
+    public void setMultiVoteSessions(boolean allowMultiVote) {
+        this.allowMultiVote = allowMultiVote;
+    }
+
+    /**
+     * Delivers votes to the plugin in batches of up to {@code maxBatchSize} votes, waiting at most
+     * {@code maxDelayMillis} for a batch to fill up. A batch size of 1 or less delivers every vote on its own. This
+     * must be called before {@link #start}.
+     */
+    public void setVoteBatching(int maxBatchSize, long maxDelayMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Returns the batcher votes are delivered through, or {@code null} if votes aren't batched.
+     */
+    public VoteBatcher getVoteBatcher() {
+        return voteBatcher;
+    }
+
+    /**
+     * Returns the number of inbound connections that are currently open.
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Returns how many connections have been closed because too many were already open.
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnections.sum();
+    }
+
+    /**
+     * Returns how many connections have been closed for not delivering a vote in time.
+     */
+    public long getHandshakeTimeoutCount() {
+        return protocolHandler == null ? 0 : protocolHandler.getHandshakeTimeoutCount();
+    }
+
+    /**
+     * Returns how many connections have been closed for not sending data in time.
+     */
+    public long getReadTimeoutCount() {
+        return protocolHandler == null ? 0 : protocolHandler.getReadTimeoutCount();
+    }
+
+    /**
+     * Returns how many votes failed because the plugin did not handle them in time.
+     */
+    public long getHandlerTimeoutCount() {
+        return voteInboundHandler == null ? 0 : voteInboundHandler.getHandlerTimeoutCount();
+    }
+
+    public ChallengePool getChallengePool() {
+        return challengePool;
+    }
+
+    /**
+     * Returns the per-address connection rate limiter, or {@code null} if connections aren't rate limited.
+     */
+    public ConnectionRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns how many connections have been closed for exceeding the per-address connection rate limit.
+     */
+    public long getRateLimitedConnectionCount() {
+        return rateLimiter == null ? 0 : rateLimiter.getDroppedCount();
+    }
+
     public void shutdown() {
         if (serverChannel != null) {
             try {
@@ -123,6 +375,9 @@ public class VotifierServerBootstrap {
         }
         eventLoopGroup.shutdownGracefully();
         bossLoopGroup.shutdownGracefully();
+        if (v1CryptoExecutor != null) {
+            v1CryptoExecutor.shutdownNow();
+        }
 
         try {
             bossLoopGroup.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
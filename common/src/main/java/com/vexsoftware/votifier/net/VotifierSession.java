@@ -6,11 +6,16 @@ import io.netty.util.AttributeKey;
 public class VotifierSession {
     public static final AttributeKey<VotifierSession> KEY = AttributeKey.valueOf("votifier_session");
     private ProtocolVersion version = ProtocolVersion.UNKNOWN;
-    private final String challenge;
+    private String challenge;
     private boolean hasCompletedVote = false;
+    private boolean multiVote = false;
 
     public VotifierSession() {
-        challenge = TokenUtil.newToken();
+        this(TokenUtil.newToken());
+    }
+
+    public VotifierSession(String challenge) {
+        this.challenge = challenge;
     }
 
     public void setVersion(ProtocolVersion version) {
@@ -28,8 +33,18 @@ public class VotifierSession {
         return challenge;
     }
 
+    /**
+     * Replaces the challenge once the previous vote of a multi-vote session has been completed.
+     */
+    public void nextChallenge(String challenge) {
+        if (!multiVote)
+            throw new IllegalStateException("Session only accepts one vote");
+
+        this.challenge = challenge;
+    }
+
     public void completeVote() {
-        if (hasCompletedVote)
+        if (hasCompletedVote && !multiVote)
             throw new IllegalStateException("Protocol completed vote twice!");
 
         hasCompletedVote = true;
@@ -39,6 +54,20 @@ public class VotifierSession {
         return hasCompletedVote;
     }
 
+    /**
+     * Keeps the connection open for further protocol v2 votes, each signed with a fresh challenge.
+     */
+    public void enableMultiVote() {
+        if (version != ProtocolVersion.TWO)
+            throw new IllegalStateException("Only protocol v2 sessions may carry multiple votes");
+
+        multiVote = true;
+    }
+
+    public boolean isMultiVote() {
+        return multiVote;
+    }
+
     public enum ProtocolVersion {
         UNKNOWN("unknown"),
         ONE("protocol v1"),
@@ -0,0 +1,420 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal streaming reader for JSON objects encoded as UTF-8 in a {@link ByteBuf}.
+ * <p>
+ * This is deliberately much smaller than Gson's {@code JsonReader}: it only understands what Votifier messages need,
+ * reads the bytes in place without decoding the whole message to a {@code String}, and can copy the unescaped UTF-8
+ * bytes of a string value into another buffer. Any malformed input is reported as a
+ * {@link CorruptedFrameException}.
+ */
+public final class JsonByteReader {
+    private static final int MAX_DEPTH = 32;
+
+    private final ByteBuf buf;
+    private final int end;
+    private int pos;
+
+    // Tracks, for each open object, whether we are still before its first member.
+    private final boolean[] firstMember = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean atName;
+
+    // Extent of the last string token scanned by scanString().
+    private int stringStart;
+    private int stringEnd;
+    private boolean stringEscaped;
+
+    public JsonByteReader(ByteBuf buf) {
+        this.buf = buf;
+        this.pos = buf.readerIndex();
+        this.end = buf.writerIndex();
+    }
+
+    public void beginObject() {
+        expect('{');
+        if (depth == MAX_DEPTH) {
+            throw malformed("nested too deeply");
+        }
+        firstMember[depth++] = true;
+        atName = false;
+    }
+
+    public void endObject() {
+        if (depth == 0) {
+            throw malformed("no object is open");
+        }
+        expect('}');
+        depth--;
+        atName = false;
+    }
+
+    /**
+     * Checks that nothing but whitespace remains after the top-level value.
+     */
+    public void endDocument() {
+        skipWhitespace();
+        if (pos != end || depth != 0) {
+            throw malformed("trailing data");
+        }
+    }
+
+    /**
+     * Returns whether the current object has another member. This may be called multiple times before the member's
+     * name is read.
+     */
+    public boolean hasNext() {
+        if (atName) {
+            return true;
+        }
+        if (depth == 0) {
+            throw malformed("no object is open");
+        }
+        skipWhitespace();
+        int c = peekByte();
+        if (c == '}') {
+            return false;
+        }
+        if (firstMember[depth - 1]) {
+            firstMember[depth - 1] = false;
+        } else {
+            expect(',');
+            skipWhitespace();
+        }
+        if (peekByte() != '"') {
+            throw malformed("expected a member name");
+        }
+        atName = true;
+        return true;
+    }
+
+    /**
+     * Reads the name of the next member and matches it against a set of known names.
+     *
+     * @param names the known names, as UTF-8 bytes
+     * @return the index of the matching name, or -1 if the name is not known
+     */
+    public int nextName(byte[][] names) {
+        if (!hasNext()) {
+            throw malformed("expected a member name");
+        }
+        atName = false;
+        scanString();
+
+        int match = -1;
+        if (stringEscaped) {
+            ByteBuf unescaped = buf.alloc().heapBuffer(stringEnd - stringStart);
+            try {
+                unescape(stringStart, stringEnd, unescaped);
+                match = match(names, unescaped, unescaped.readerIndex(), unescaped.writerIndex());
+            } finally {
+                unescaped.release();
+            }
+        } else {
+            match = match(names, buf, stringStart, stringEnd);
+        }
+
+        skipWhitespace();
+        expect(':');
+        return match;
+    }
+
+    private static int match(byte[][] names, ByteBuf in, int start, int stop) {
+        outer:
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+            if (name.length != stop - start) {
+                continue;
+            }
+            for (int j = 0; j < name.length; j++) {
+                if (in.getByte(start + j) != name[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the next value is a JSON string.
+     */
+    public boolean isNextString() {
+        skipWhitespace();
+        return peekByte() == '"';
+    }
+
+    /**
+     * Reads the next value as a string. Strings, numbers and booleans are accepted, with numbers and booleans being
+     * returned as they appear in the input.
+     */
+    public String nextString() {
+        skipWhitespace();
+        int c = peekByte();
+        if (c == '"') {
+            scanString();
+            if (!stringEscaped) {
+                return buf.toString(stringStart, stringEnd - stringStart, StandardCharsets.UTF_8);
+            }
+            ByteBuf unescaped = buf.alloc().heapBuffer(stringEnd - stringStart);
+            try {
+                unescape(stringStart, stringEnd, unescaped);
+                return unescaped.toString(StandardCharsets.UTF_8);
+            } finally {
+                unescaped.release();
+            }
+        }
+
+        int start = pos;
+        if (c == 't') {
+            expectLiteral("true");
+        } else if (c == 'f') {
+            expectLiteral("false");
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            skipNumber();
+        } else {
+            throw malformed("expected a string");
+        }
+        return buf.toString(start, pos - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the next value, which must be a JSON string, and appends its unescaped UTF-8 bytes to {@code out}.
+     */
+    public void nextString(ByteBuf out) {
+        skipWhitespace();
+        if (peekByte() != '"') {
+            throw malformed("expected a string");
+        }
+        scanString();
+        if (stringEscaped) {
+            unescape(stringStart, stringEnd, out);
+        } else {
+            out.writeBytes(buf, stringStart, stringEnd - stringStart);
+        }
+    }
+
+    /**
+     * Skips the next value, including any nested objects or arrays.
+     */
+    public void skipValue() {
+        int nesting = 0;
+        do {
+            skipWhitespace();
+            int c = peekByte();
+            switch (c) {
+                case '{':
+                case '[':
+                    pos++;
+                    nesting++;
+                    break;
+                case '}':
+                case ']':
+                    if (nesting == 0) {
+                        throw malformed("expected a value");
+                    }
+                    pos++;
+                    nesting--;
+                    break;
+                case ',':
+                case ':':
+                    if (nesting == 0) {
+                        throw malformed("expected a value");
+                    }
+                    pos++;
+                    break;
+                case '"':
+                    scanString();
+                    break;
+                case 't':
+                    expectLiteral("true");
+                    break;
+                case 'f':
+                    expectLiteral("false");
+                    break;
+                case 'n':
+                    expectLiteral("null");
+                    break;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        skipNumber();
+                    } else {
+                        throw malformed("unexpected character");
+                    }
+            }
+        } while (nesting > 0);
+    }
+
+    private void scanString() {
+        expect('"');
+        stringStart = pos;
+        stringEscaped = false;
+        while (true) {
+            if (pos >= end) {
+                throw malformed("unterminated string");
+            }
+            byte b = buf.getByte(pos);
+            if (b == '"') {
+                stringEnd = pos++;
+                return;
+            }
+            if (b == '\\') {
+                stringEscaped = true;
+                pos += 2;
+            } else if (b >= 0 && b < 0x20) {
+                throw malformed("control character in string");
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void unescape(int start, int stop, ByteBuf out) {
+        int i = start;
+        while (i < stop) {
+            byte b = buf.getByte(i++);
+            if (b != '\\') {
+                out.writeByte(b);
+                continue;
+            }
+
+            if (i >= stop) {
+                throw malformed("bad escape");
+            }
+            byte e = buf.getByte(i++);
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.writeByte(e);
+                    break;
+                case 'b':
+                    out.writeByte('\b');
+                    break;
+                case 'f':
+                    out.writeByte('\f');
+                    break;
+                case 'n':
+                    out.writeByte('\n');
+                    break;
+                case 'r':
+                    out.writeByte('\r');
+                    break;
+                case 't':
+                    out.writeByte('\t');
+                    break;
+                case 'u':
+                    int cp = hex4(i, stop);
+                    i += 4;
+                    if (Character.isHighSurrogate((char) cp) && i + 6 <= stop &&
+                            buf.getByte(i) == '\\' && buf.getByte(i + 1) == 'u') {
+                        int low = hex4(i + 2, stop);
+                        if (Character.isLowSurrogate((char) low)) {
+                            cp = Character.toCodePoint((char) cp, (char) low);
+                            i += 6;
+                        }
+                    }
+                    writeUtf8(cp, out);
+                    break;
+                default:
+                    throw malformed("bad escape");
+            }
+        }
+    }
+
+    private int hex4(int at, int stop) {
+        if (at + 4 > stop) {
+            throw malformed("bad unicode escape");
+        }
+        int value = 0;
+        for (int j = 0; j < 4; j++) {
+            int digit = Character.digit(buf.getByte(at + j), 16);
+            if (digit < 0) {
+                throw malformed("bad unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static void writeUtf8(int cp, ByteBuf out) {
+        if (cp < 0x80) {
+            out.writeByte(cp);
+        } else if (cp < 0x800) {
+            out.writeByte(0xC0 | (cp >> 6));
+            out.writeByte(0x80 | (cp & 0x3F));
+        } else if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) {
+            // An unpaired surrogate. Java's UTF-8 encoder replaces these with '?', and so do we, so that signatures
+            // computed over String.getBytes() still match.
+            out.writeByte('?');
+        } else if (cp < 0x10000) {
+            out.writeByte(0xE0 | (cp >> 12));
+            out.writeByte(0x80 | ((cp >> 6) & 0x3F));
+            out.writeByte(0x80 | (cp & 0x3F));
+        } else {
+            out.writeByte(0xF0 | (cp >> 18));
+            out.writeByte(0x80 | ((cp >> 12) & 0x3F));
+            out.writeByte(0x80 | ((cp >> 6) & 0x3F));
+            out.writeByte(0x80 | (cp & 0x3F));
+        }
+    }
+
+    private void skipNumber() {
+        int start = pos;
+        while (pos < end) {
+            byte b = buf.getByte(pos);
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos == start) {
+            throw malformed("expected a number");
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos >= end || buf.getByte(pos) != literal.charAt(i)) {
+                throw malformed("expected " + literal);
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (peekByte() != c) {
+            throw malformed("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private int peekByte() {
+        if (pos >= end) {
+            throw malformed("unexpected end of input");
+        }
+        return buf.getByte(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = buf.getByte(pos);
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static CorruptedFrameException malformed(String reason) {
+        return new CorruptedFrameException("Malformed JSON: " + reason);
+    }
+}
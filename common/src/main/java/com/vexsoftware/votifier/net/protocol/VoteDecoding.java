@@ -0,0 +1,246 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.net.protocol.crypto.TokenVerifier;
+import com.vexsoftware.votifier.net.protocol.crypto.VotifierCrypto;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.util.QuietException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.math.BigDecimal;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Turns the messages {@link VotifierProtocolHandler} has framed into votes.
+ * <p>
+ * Protocol 2 envelopes and payloads are both read straight from the frame. The payload is unescaped once into a
+ * scratch buffer, which is what the signature is checked against and what the vote fields are then read from.
+ */
+final class VoteDecoding {
+    private static final int ENVELOPE_PAYLOAD = 0;
+    private static final int ENVELOPE_SIGNATURE = 1;
+    private static final int ENVELOPE_MULTI_VOTE = 2;
+    private static final byte[][] ENVELOPE_FIELDS = names("payload", "signature", "multiVote");
+
+    private static final int FIELD_SERVICE_NAME = 0;
+    private static final int FIELD_USERNAME = 1;
+    private static final int FIELD_ADDRESS = 2;
+    private static final int FIELD_TIMESTAMP = 3;
+    private static final int FIELD_CHALLENGE = 4;
+    private static final int FIELD_UUID = 5;
+    private static final int FIELD_ADDITIONAL_DATA = 6;
+    private static final byte[][] PAYLOAD_FIELDS = names("serviceName", "username", "address", "timestamp",
+            "challenge", "uuid", "additionalData");
+
+    private static byte[][] names(String... names) {
+        byte[][] encoded = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private VoteDecoding() {
+    }
+
+    /**
+     * Decrypts and parses a protocol v1 block.
+     */
+    static Vote decodeBlock(VotifierPlugin plugin, SocketAddress remoteAddress, byte[] block) throws Exception {
+        try {
+            block = VotifierCrypto.forPlugin(plugin).decryptV1(block);
+        } catch (Exception e) {
+            if (plugin.isDebug()) {
+                throw new CorruptedFrameException("Could not decrypt data from " + remoteAddress + ". Make sure the public key on the list is correct.", e);
+            } else {
+                throw new QuietException("Could not decrypt data from " + remoteAddress + ". Make sure the public key on the list is correct.");
+            }
+        }
+
+        // Parse the string we received.
+        String all = new String(block, StandardCharsets.US_ASCII);
+        String[] split = all.split("\n");
+        if (split.length < 5) {
+            throw new QuietException("Not enough fields specified in vote. This is not a NuVotifier issue. Got " + split.length + " fields, but needed 5.");
+        }
+
+        if (!split[0].equals("VOTE")) {
+            throw new QuietException("The VOTE opcode was not present. This is not a NuVotifier issue, but a bug with the server list.");
+        }
+
+        // Create the vote.
+        return new Vote(split[1], split[2], split[3], split[4]);
+    }
+
+    /**
+     * Decodes a vote frame. If {@code allowMultiVote} is set and the client asked to keep the connection open for
+     * more votes, multi-vote mode is enabled on the session once the vote has been verified.
+     */
+    static Vote decodeFrame(ByteBufAllocator alloc, ByteBuf frame, VotifierSession session, VotifierPlugin plugin,
+                            boolean allowMultiVote) throws Exception {
+        ByteBuf payload = alloc.heapBuffer(frame.readableBytes());
+        ByteBuf signature = null;
+        try {
+            // Read the envelope, unescaping the payload as we go.
+            boolean hasPayload = false;
+            boolean badSignature = false;
+            boolean multiVote = false;
+            JsonByteReader envelope = new JsonByteReader(frame);
+            envelope.beginObject();
+            while (envelope.hasNext()) {
+                switch (envelope.nextName(ENVELOPE_FIELDS)) {
+                    case ENVELOPE_PAYLOAD:
+                        payload.clear();
+                        envelope.nextString(payload);
+                        hasPayload = true;
+                        break;
+                    case ENVELOPE_SIGNATURE:
+                        if (signature == null) {
+                            signature = alloc.heapBuffer(64);
+                        }
+                        signature.clear();
+                        badSignature = !envelope.isNextString();
+                        if (badSignature) {
+                            envelope.skipValue();
+                        } else {
+                            envelope.nextString(signature);
+                        }
+                        break;
+                    case ENVELOPE_MULTI_VOTE:
+                        multiVote = "true".equals(envelope.nextString());
+                        break;
+                    default:
+                        envelope.skipValue();
+                        break;
+                }
+            }
+            envelope.endObject();
+            envelope.endDocument();
+
+            if (!hasPayload) {
+                throw new CorruptedFrameException("Vote has no payload");
+            }
+
+            // Deserialize the payload.
+            String serviceName = null;
+            String username = null;
+            String address = null;
+            String timestamp = null;
+            String challenge = null;
+            String uuid = null;
+            String additionalData = null;
+
+            JsonByteReader reader = new JsonByteReader(payload);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName(PAYLOAD_FIELDS)) {
+                    case FIELD_SERVICE_NAME:
+                        serviceName = reader.nextString();
+                        break;
+                    case FIELD_USERNAME:
+                        username = reader.nextString();
+                        break;
+                    case FIELD_ADDRESS:
+                        address = reader.nextString();
+                        break;
+                    case FIELD_TIMESTAMP:
+                        boolean isString = reader.isNextString();
+                        timestamp = readTimestamp(reader.nextString(), isString);
+                        break;
+                    case FIELD_CHALLENGE:
+                        challenge = reader.nextString();
+                        break;
+                    case FIELD_UUID:
+                        uuid = reader.nextString();
+                        break;
+                    case FIELD_ADDITIONAL_DATA:
+                        additionalData = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            reader.endDocument();
+
+            // Verify challenge.
+            if (!session.getChallenge().equals(challenge)) {
+                throw new CorruptedFrameException("Challenge is not valid");
+            }
+
+            // Verify that we have keys available.
+            requireField("serviceName", serviceName);
+            TokenVerifier verifier = VotifierCrypto.forPlugin(plugin).getVerifier(serviceName);
+
+            if (verifier == null) {
+                throw new RuntimeException("Unknown service '" + serviceName + "'");
+            }
+
+            // Verify signature.
+            if (signature == null || badSignature) {
+                throw new CorruptedFrameException("Vote has no signature");
+            }
+            byte[] sigBytes = Base64.getDecoder().decode(ByteBufUtil.getBytes(signature));
+
+            if (!verifier.verify(sigBytes, payload.nioBuffer(0, payload.writerIndex()))) {
+                throw new CorruptedFrameException("Signature is not valid (invalid token?)");
+            }
+
+            // Stopgap: verify the "uuid" field is valid, if provided.
+            if (uuid != null) {
+                UUID.fromString(uuid);
+            }
+
+            requireField("username", username);
+            if (username.length() > 16) {
+                throw new CorruptedFrameException("Username too long");
+            }
+
+            requireField("address", address);
+            requireField("timestamp", timestamp);
+
+            // Create the vote.
+            Vote vote = new Vote(serviceName, username, address, timestamp,
+                    additionalData == null ? null : Base64.getDecoder().decode(additionalData));
+            if (multiVote && allowMultiVote) {
+                session.enableMultiVote();
+            }
+            return vote;
+        } finally {
+            payload.release();
+            if (signature != null) {
+                signature.release();
+            }
+        }
+    }
+
+    private static void requireField(String name, String value) {
+        if (value == null) {
+            throw new CorruptedFrameException("Vote is missing the '" + name + "' field");
+        }
+    }
+
+    // Matches how Vote(JsonObject) has always read timestamps: anything that looks like a long is normalized.
+    private static String readTimestamp(String value, boolean isString) {
+        try {
+            return Long.toString(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            if (!isString) {
+                try {
+                    return Long.toString(new BigDecimal(value).longValue());
+                } catch (NumberFormatException ignored) {
+                    // fall through
+                }
+            }
+            return value;
+        }
+    }
+}
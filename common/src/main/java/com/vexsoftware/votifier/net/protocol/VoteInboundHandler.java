@@ -1,25 +1,51 @@
 package com.vexsoftware.votifier.net.protocol;
 
-import com.google.gson.JsonObject;
 import com.vexsoftware.votifier.VoteHandler;
 import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
 import com.vexsoftware.votifier.net.VotifierSession;
-import com.vexsoftware.votifier.util.GsonInst;
+import com.vexsoftware.votifier.util.QuietException;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @ChannelHandler.Sharable
 public class VoteInboundHandler extends SimpleChannelInboundHandler<Vote> {
+    private static final QuietException OVERLOADED = new QuietException("The server is overloaded. Try again later.");
+    private static final QuietException TIMED_OUT = new QuietException("The vote was not handled in time. Try again later.");
+
     private final VoteHandler handler;
+    private final InFlightVoteLimiter limiter;
+    private final long handlerTimeoutMillis;
     private final AtomicLong lastError;
     private final AtomicLong errorsSent;
+    private final LongAdder handlerTimeouts = new LongAdder();
 
     public VoteInboundHandler(VoteHandler handler) {
+        this(handler, null);
+    }
+
+    public VoteInboundHandler(VoteHandler handler, InFlightVoteLimiter limiter) {
+        this(handler, limiter, 0);
+    }
+
+    /**
+     * @param handlerTimeoutMillis how long the vote handler has to complete a vote before the vote fails and the
+     *                             connection is closed, or 0 for no limit
+     */
+    public VoteInboundHandler(VoteHandler handler, InFlightVoteLimiter limiter, long handlerTimeoutMillis) {
         this.handler = handler;
+        this.limiter = limiter;
+        this.handlerTimeoutMillis = Math.max(0, handlerTimeoutMillis);
         this.lastError = new AtomicLong();
         this.errorsSent = new AtomicLong();
     }
@@ -28,15 +54,86 @@ public class VoteInboundHandler extends SimpleChannelInboundHandler<Vote> {
     protected void channelRead0(ChannelHandlerContext ctx, final Vote vote) throws Exception {
         VotifierSession session = ctx.channel().attr(VotifierSession.KEY).get();
 
-        handler.onVoteReceived(vote, session.getVersion(), ctx.channel().remoteAddress().toString());
+        if (limiter != null && !limiter.tryAcquire(session.getVersion())) {
+            throw OVERLOADED;
+        }
+
+        CompletionStage<Void> stage;
+        try {
+            stage = handler.onVoteReceivedAsync(vote, session.getVersion(), ctx.channel().remoteAddress().toString());
+        } catch (Throwable e) {
+            stage = failed(e);
+        }
+        if (handlerTimeoutMillis > 0) {
+            stage = withTimeout(ctx, stage);
+        }
+        stage.whenComplete((ignored, error) -> {
+            if (limiter != null) {
+                limiter.release();
+            }
+            if (ctx.executor().inEventLoop()) {
+                voteHandled(ctx, session, error);
+            } else {
+                ctx.executor().execute(() -> voteHandled(ctx, session, error));
+            }
+        });
+    }
+
+    /**
+     * Returns a stage that completes like {@code stage}, or fails once the handler timeout has passed. A handler that
+     * never completes a vote would otherwise hold on to the connection and its in-flight slot forever.
+     */
+    private CompletionStage<Void> withTimeout(ChannelHandlerContext ctx, CompletionStage<Void> stage) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = ctx.executor().schedule(() -> {
+            if (result.completeExceptionally(TIMED_OUT)) {
+                handlerTimeouts.increment();
+                try {
+                    // Let the handler know, if it is still listening.
+                    stage.toCompletableFuture().completeExceptionally(TIMED_OUT);
+                } catch (UnsupportedOperationException e) {
+                    // The stage can't be completed from outside.
+                }
+            }
+        }, handlerTimeoutMillis, TimeUnit.MILLISECONDS);
+        stage.whenComplete((ignored, error) -> {
+            timeout.cancel(false);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns how many votes failed because the vote handler did not complete them in time.
+     */
+    public long getHandlerTimeoutCount() {
+        return handlerTimeouts.sum();
+    }
+
+    private static CompletionStage<Void> failed(Throwable cause) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private void voteHandled(ChannelHandlerContext ctx, VotifierSession session, Throwable error) {
+        if (error != null) {
+            exceptionCaught(ctx, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            return;
+        }
         session.completeVote();
 
         if (session.getVersion() == VotifierSession.ProtocolVersion.ONE) {
             ctx.close();
+        } else if (session.isMultiVote()) {
+            // Let the protocol handler send the next challenge and wait for another vote.
+            ctx.pipeline().fireUserEventTriggered(VotifierProtocolHandler.NEXT_VOTE);
         } else {
-            JsonObject object = new JsonObject();
-            object.addProperty("status", "ok");
-            ctx.writeAndFlush(GsonInst.gson.toJson(object) + "\r\n").addListener(ChannelFutureListener.CLOSE);
+            ctx.writeAndFlush(VotifierResponses.ok()).addListener(ChannelFutureListener.CLOSE);
         }
     }
 
@@ -45,14 +142,10 @@ public class VoteInboundHandler extends SimpleChannelInboundHandler<Vote> {
         VotifierSession session = ctx.channel().attr(VotifierSession.KEY).get();
 
         String remoteAddr = ctx.channel().remoteAddress().toString();
-        boolean hasCompletedVote = session.hasCompletedVote();
-
-        if (session.getVersion() == VotifierSession.ProtocolVersion.TWO) {
-            JsonObject object = new JsonObject();
-            object.addProperty("status", "error");
-            object.addProperty("cause", cause.getClass().getSimpleName());
-            object.addProperty("error", cause.getMessage());
-            ctx.writeAndFlush(GsonInst.gson.toJson(object) + "\r\n").addListener(ChannelFutureListener.CLOSE);
+        boolean hasCompletedVote = session != null && session.hasCompletedVote();
+
+        if (session != null && session.getVersion() == VotifierSession.ProtocolVersion.TWO) {
+            ctx.writeAndFlush(VotifierResponses.error(ctx.alloc(), cause)).addListener(ChannelFutureListener.CLOSE);
         } else {
             ctx.close();
         }
@@ -0,0 +1,431 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.ChallengePool;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.util.QuietException;
+import com.vexsoftware.votifier.util.TokenUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AttributeKey;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handles the whole inbound side of a Votifier connection: the greeting, protocol detection, framing and decoding.
+ * <p>
+ * The pipeline is never modified. The handler itself is stateless and shared by every channel; the state of each
+ * connection is kept in a channel attribute. If the channel has no {@link VotifierSession} yet, one is created when
+ * the connection becomes active.
+ * <p>
+ * Connections that take longer than the handshake timeout to deliver a vote, or that go longer than the read timeout
+ * without sending anything while a vote is still incomplete, are closed.
+ * <p>
+ * A protocol v2 client may ask to keep the connection open for more votes by adding {@code "multiVote": true} to the
+ * envelope of its vote. If multi-vote sessions are allowed, the reply to each vote then carries the challenge the next
+ * vote must be signed with, and the timeouts start over for every vote. Clients that don't ask see no difference.
+ */
+@ChannelHandler.Sharable
+public class VotifierProtocolHandler extends ChannelInboundHandlerAdapter {
+    private static final AttributeKey<Connection> CONNECTION = AttributeKey.valueOf("votifier_protocol_state");
+    /**
+     * Fired by the vote handler once a vote on a multi-vote session has been handled, to send the next challenge and
+     * wait for another vote.
+     */
+    static final Object NEXT_VOTE = new Object();
+
+    private static final QuietException V2_ONLY = new QuietException("This server only accepts well-formed Votifier v2 packets.");
+
+    private static final short PROTOCOL_2_MAGIC = 0x733A;
+    private static final int PROTOCOL_1_BLOCK_SIZE = 256;
+    private static final int PROTOCOL_2_HEADER_SIZE = 4;
+    private static final int PROTOCOL_2_MAX_FRAME_SIZE = 1024;
+
+    private final boolean allowv1;
+    private final Executor v1CryptoExecutor;
+    private final ChallengePool challengePool;
+    private final long handshakeTimeoutNanos;
+    private final long readTimeoutNanos;
+    private final boolean allowMultiVote;
+
+    private final LongAdder handshakeTimeouts = new LongAdder();
+    private final LongAdder readTimeouts = new LongAdder();
+
+    public VotifierProtocolHandler(boolean allowv1, Executor v1CryptoExecutor) {
+        this(allowv1, v1CryptoExecutor, null);
+    }
+
+    public VotifierProtocolHandler(boolean allowv1, Executor v1CryptoExecutor, ChallengePool challengePool) {
+        this(allowv1, v1CryptoExecutor, challengePool, 0, 0);
+    }
+
+    /**
+     * @param handshakeTimeoutMillis how long a connection has to deliver its vote, or 0 for no limit
+     * @param readTimeoutMillis      how long a connection may go without sending data before its vote is complete, or
+     *                               0 for no limit
+     */
+    public VotifierProtocolHandler(boolean allowv1, Executor v1CryptoExecutor, ChallengePool challengePool,
+                                   long handshakeTimeoutMillis, long readTimeoutMillis) {
+        this(allowv1, v1CryptoExecutor, challengePool, handshakeTimeoutMillis, readTimeoutMillis, false);
+    }
+
+    /**
+     * @param allowMultiVote whether protocol v2 clients may send more than one vote per connection
+     */
+    public VotifierProtocolHandler(boolean allowv1, Executor v1CryptoExecutor, ChallengePool challengePool,
+                                   long handshakeTimeoutMillis, long readTimeoutMillis, boolean allowMultiVote) {
+        this.allowv1 = allowv1;
+        this.v1CryptoExecutor = v1CryptoExecutor;
+        this.challengePool = challengePool;
+        this.handshakeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, handshakeTimeoutMillis));
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, readTimeoutMillis));
+        this.allowMultiVote = allowMultiVote;
+    }
+
+    enum State {
+        /** Waiting for the channel to become active so that the greeting can be sent. */
+        GREETING,
+        /** Waiting for enough data to tell protocol v1 and v2 apart. */
+        DETECTING,
+        /** Waiting for the 256-byte RSA block of a protocol v1 vote. */
+        V1_BLOCK,
+        /** Waiting for a complete length-prefixed protocol v2 frame. */
+        V2_FRAME,
+        /** A protocol v1 block is being decrypted off the event loop. */
+        DECODING,
+        /** A vote was passed on; the vote handler is responsible for replying and closing. */
+        RESPONDING,
+        /** Decoding failed and the error was passed on. */
+        FAILED;
+
+        boolean acceptsInput() {
+            return this == DETECTING || this == V1_BLOCK || this == V2_FRAME;
+        }
+    }
+
+    private static final class Connection {
+        private State state = State.GREETING;
+        private ByteBuf cumulation;
+        private long activeAt;
+        private long lastReadAt;
+        private long checkedAt;
+        private ScheduledFuture<?> timeout;
+    }
+
+    private static Connection connection(ChannelHandlerContext ctx) {
+        Connection connection = ctx.channel().attr(CONNECTION).get();
+        if (connection == null) {
+            connection = new Connection();
+            ctx.channel().attr(CONNECTION).set(connection);
+        }
+        return connection;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        Connection connection = connection(ctx);
+        VotifierSession session = ctx.channel().attr(VotifierSession.KEY).get();
+        if (session == null) {
+            session = new VotifierSession(newChallenge());
+            ctx.channel().attr(VotifierSession.KEY).set(session);
+        }
+        ctx.write(VotifierResponses.greetingPrefix());
+        ctx.writeAndFlush(VotifierResponses.greetingChallenge(ctx.alloc(), session.getChallenge()));
+        connection.state = State.DETECTING;
+        startTimeouts(ctx, connection);
+
+        ctx.fireChannelActive();
+    }
+
+    private String newChallenge() {
+        return challengePool == null ? TokenUtil.newToken() : challengePool.next();
+    }
+
+    private void startTimeouts(ChannelHandlerContext ctx, Connection connection) {
+        if (handshakeTimeoutNanos > 0 || readTimeoutNanos > 0) {
+            connection.activeAt = connection.lastReadAt = connection.checkedAt = System.nanoTime();
+            checkTimeouts(ctx, connection);
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt != NEXT_VOTE) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+
+        Connection connection = ctx.channel().attr(CONNECTION).get();
+        VotifierSession session = ctx.channel().attr(VotifierSession.KEY).get();
+        if (connection == null || connection.state != State.RESPONDING || !session.isMultiVote()) {
+            throw new IllegalStateException("Not waiting to respond to a multi-vote session");
+        }
+
+        String challenge = newChallenge();
+        session.nextChallenge(challenge);
+        ctx.writeAndFlush(VotifierResponses.okWithChallenge(ctx.alloc(), challenge));
+        connection.state = State.V2_FRAME;
+        startTimeouts(ctx, connection);
+    }
+
+    private void checkTimeouts(ChannelHandlerContext ctx, Connection connection) {
+        connection.timeout = null;
+        if (!connection.state.acceptsInput() || !ctx.channel().isActive()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (!ctx.channel().config().isAutoRead()) {
+            // We aren't reading from this connection (the server is overloaded), so it can't be blamed for silence or
+            // for a slow handshake. Neither clock counts the time since the last check.
+            connection.activeAt += now - connection.checkedAt;
+            connection.lastReadAt = now;
+        }
+        connection.checkedAt = now;
+
+        long delay = Long.MAX_VALUE;
+        if (handshakeTimeoutNanos > 0) {
+            long remaining = handshakeTimeoutNanos - (now - connection.activeAt);
+            if (remaining <= 0) {
+                handshakeTimeouts.increment();
+                timeOut(ctx, connection);
+                return;
+            }
+            delay = remaining;
+        }
+        if (readTimeoutNanos > 0) {
+            long remaining = readTimeoutNanos - (now - connection.lastReadAt);
+            if (remaining <= 0) {
+                readTimeouts.increment();
+                timeOut(ctx, connection);
+                return;
+            }
+            delay = Math.min(delay, remaining);
+        }
+        connection.timeout = ctx.executor().schedule(() -> checkTimeouts(ctx, connection), delay, TimeUnit.NANOSECONDS);
+    }
+
+    private static void timeOut(ChannelHandlerContext ctx, Connection connection) {
+        connection.state = State.FAILED;
+        releaseCumulation(ctx);
+        ctx.close();
+    }
+
+    private static void cancelTimeout(Connection connection) {
+        if (connection.timeout != null) {
+            connection.timeout.cancel(false);
+            connection.timeout = null;
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        Connection connection = connection(ctx);
+        ByteBuf in = (ByteBuf) msg;
+        if (!connection.state.acceptsInput()) {
+            in.release();
+            return;
+        }
+
+        connection.lastReadAt = System.nanoTime();
+        ByteBuf buf = in;
+        if (connection.cumulation != null) {
+            buf = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(ctx.alloc(), connection.cumulation, in);
+            connection.cumulation = null;
+        }
+
+        try {
+            decode(ctx, connection, buf);
+        } catch (Exception e) {
+            connection.state = State.FAILED;
+            cancelTimeout(connection);
+            buf.release();
+            ctx.fireExceptionCaught(e instanceof DecoderException ? e : new DecoderException(e));
+            return;
+        }
+
+        if (!connection.state.acceptsInput()) {
+            cancelTimeout(connection);
+            buf.release();
+        } else if (buf.isReadable()) {
+            // Wait for the rest of the message.
+            connection.cumulation = buf;
+        } else {
+            buf.release();
+        }
+    }
+
+    private void decode(ChannelHandlerContext ctx, Connection connection, ByteBuf buf) throws Exception {
+        VotifierSession session = ctx.channel().attr(VotifierSession.KEY).get();
+
+        switch (connection.state) {
+            case DETECTING:
+                if (buf.readableBytes() < 2) {
+                    // Some retarded voting sites (PMC?) seem to send empty buffers for no good reason.
+                    return;
+                }
+
+                if (buf.getShort(buf.readerIndex()) == PROTOCOL_2_MAGIC) {
+                    // Short 0x733A + Message = Protocol v2 Vote
+                    session.setVersion(VotifierSession.ProtocolVersion.TWO);
+                    connection.state = State.V2_FRAME;
+                    decodeV2(ctx, connection, session, buf);
+                } else {
+                    if (!allowv1) {
+                        throw V2_ONLY;
+                    }
+                    // Probably Protocol v1 Vote Message
+                    session.setVersion(VotifierSession.ProtocolVersion.ONE);
+                    connection.state = State.V1_BLOCK;
+                    decodeV1(ctx, connection, buf);
+                }
+                break;
+            case V1_BLOCK:
+                decodeV1(ctx, connection, buf);
+                break;
+            case V2_FRAME:
+                decodeV2(ctx, connection, session, buf);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected input in state " + connection.state);
+        }
+    }
+
+    private void decodeV1(ChannelHandlerContext ctx, Connection connection, ByteBuf buf) throws Exception {
+        if (!ctx.channel().isActive()) {
+            buf.skipBytes(buf.readableBytes());
+            return;
+        }
+
+        if (buf.readableBytes() < PROTOCOL_1_BLOCK_SIZE) {
+            // The client might have not sent all the data yet, so don't eject the connection.
+            return;
+        }
+
+        if (buf.readableBytes() > PROTOCOL_1_BLOCK_SIZE) {
+            // They sent too much data.
+            throw new QuietException("Could not decrypt data from " + ctx.channel().remoteAddress() + " as it is too long. Attack?");
+        }
+
+        byte[] block = ByteBufUtil.getBytes(buf);
+        buf.skipBytes(buf.readableBytes());
+
+        VotifierPlugin plugin = ctx.channel().attr(VotifierPlugin.KEY).get();
+        SocketAddress remoteAddress = ctx.channel().remoteAddress();
+
+        if (v1CryptoExecutor == null) {
+            Vote vote = VoteDecoding.decodeBlock(plugin, remoteAddress, block);
+            connection.state = State.RESPONDING;
+            ctx.fireChannelRead(vote);
+            return;
+        }
+
+        connection.state = State.DECODING;
+        try {
+            v1CryptoExecutor.execute(() -> {
+                try {
+                    Vote vote = VoteDecoding.decodeBlock(plugin, remoteAddress, block);
+                    ctx.executor().execute(() -> {
+                        connection.state = State.RESPONDING;
+                        ctx.fireChannelRead(vote);
+                    });
+                } catch (Exception e) {
+                    DecoderException cause = e instanceof DecoderException ? (DecoderException) e : new DecoderException(e);
+                    ctx.executor().execute(() -> {
+                        connection.state = State.FAILED;
+                        ctx.fireExceptionCaught(cause);
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The crypto workers are saturated. Drop the connection rather than queue more work.
+            connection.state = State.FAILED;
+            ctx.close();
+        }
+    }
+
+    private void decodeV2(ChannelHandlerContext ctx, Connection connection, VotifierSession session, ByteBuf buf) throws Exception {
+        if (buf.readableBytes() < PROTOCOL_2_HEADER_SIZE) {
+            return;
+        }
+
+        // Detection only looked at the first frame, so check every frame of a multi-vote session again.
+        if (buf.getShort(buf.readerIndex()) != PROTOCOL_2_MAGIC) {
+            throw new CorruptedFrameException("Frame is not a protocol v2 vote");
+        }
+
+        int frameLength = buf.getUnsignedShort(buf.readerIndex() + 2);
+        if (frameLength + PROTOCOL_2_HEADER_SIZE > PROTOCOL_2_MAX_FRAME_SIZE) {
+            throw new TooLongFrameException("Adjusted frame length exceeds " + PROTOCOL_2_MAX_FRAME_SIZE + ": " +
+                    (frameLength + PROTOCOL_2_HEADER_SIZE));
+        }
+
+        if (buf.readableBytes() < PROTOCOL_2_HEADER_SIZE + frameLength) {
+            return;
+        }
+
+        ByteBuf frame = buf.slice(buf.readerIndex() + PROTOCOL_2_HEADER_SIZE, frameLength);
+        VotifierPlugin plugin = ctx.channel().attr(VotifierPlugin.KEY).get();
+        Vote vote = VoteDecoding.decodeFrame(ctx.alloc(), frame, session, plugin, allowMultiVote);
+
+        // Anything after the frame is ignored, as it always has been.
+        buf.skipBytes(buf.readableBytes());
+        connection.state = State.RESPONDING;
+        ctx.fireChannelRead(vote);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Connection connection = ctx.channel().attr(CONNECTION).get();
+        if (connection != null) {
+            cancelTimeout(connection);
+        }
+        releaseCumulation(ctx);
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        releaseCumulation(ctx);
+    }
+
+    /**
+     * Returns how many connections were closed for not delivering a vote within the handshake timeout.
+     */
+    public long getHandshakeTimeoutCount() {
+        return handshakeTimeouts.sum();
+    }
+
+    /**
+     * Returns how many connections were closed for not sending any data within the read timeout.
+     */
+    public long getReadTimeoutCount() {
+        return readTimeouts.sum();
+    }
+
+    private static void releaseCumulation(ChannelHandlerContext ctx) {
+        Connection connection = ctx.channel().attr(CONNECTION).get();
+        if (connection != null && connection.cumulation != null) {
+            connection.cumulation.release();
+            connection.cumulation = null;
+        }
+    }
+}
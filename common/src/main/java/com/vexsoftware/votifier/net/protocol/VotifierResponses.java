@@ -0,0 +1,143 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the messages a Votifier server sends to its clients.
+ * <p>
+ * The fixed parts of every message are encoded once into shared read-only buffers; callers must write a
+ * {@link ByteBuf#duplicate() duplicate} of them. The bytes produced are identical to what the server used to send
+ * when these messages were built with string concatenation and Gson.
+ */
+public final class VotifierResponses {
+    private static final ByteBuf GREETING_PREFIX = constant("VOTIFIER 2 ");
+    private static final ByteBuf OK = constant("{\"status\":\"ok\"}\r\n");
+
+    private static final String HEX = "0123456789abcdef";
+
+    private VotifierResponses() {}
+
+    private static ByteBuf constant(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes).asReadOnly());
+    }
+
+    /**
+     * Returns the shared prefix of the greeting, {@code "VOTIFIER 2 "}. It is followed by {@link #greetingChallenge}.
+     */
+    public static ByteBuf greetingPrefix() {
+        return GREETING_PREFIX.duplicate();
+    }
+
+    /**
+     * Encodes the per-connection part of the greeting: the challenge and the terminating newline.
+     */
+    public static ByteBuf greetingChallenge(ByteBufAllocator alloc, String challenge) {
+        ByteBuf buf = alloc.buffer(challenge.length() + 1);
+        buf.writeCharSequence(challenge, StandardCharsets.UTF_8);
+        buf.writeByte('\n');
+        return buf;
+    }
+
+    /**
+     * Returns the shared {@code {"status":"ok"}} response.
+     */
+    public static ByteBuf ok() {
+        return OK.duplicate();
+    }
+
+    /**
+     * Encodes the response to a vote on a multi-vote session: {@code {"status":"ok","challenge":...}}, where the
+     * challenge is the one the next vote on the connection must be signed with.
+     */
+    public static ByteBuf okWithChallenge(ByteBufAllocator alloc, String challenge) {
+        ByteBuf buf = alloc.buffer(40 + challenge.length());
+        ByteBufUtil.writeAscii(buf, "{\"status\":\"ok\",\"challenge\":");
+        writeString(buf, challenge);
+        ByteBufUtil.writeAscii(buf, "}\r\n");
+        return buf;
+    }
+
+    /**
+     * Encodes an error response for {@code cause}. Strings are escaped the same way Gson's default (HTML-safe)
+     * configuration escapes them, and a {@code null} message is omitted.
+     */
+    public static ByteBuf error(ByteBufAllocator alloc, Throwable cause) {
+        String simpleName = cause.getClass().getSimpleName();
+        String message = cause.getMessage();
+        ByteBuf buf = alloc.buffer(64 + simpleName.length() + (message == null ? 0 : message.length()));
+        ByteBufUtil.writeAscii(buf, "{\"status\":\"error\",\"cause\":");
+        writeString(buf, simpleName);
+        if (message != null) {
+            ByteBufUtil.writeAscii(buf, ",\"error\":");
+            writeString(buf, message);
+        }
+        ByteBufUtil.writeAscii(buf, "}\r\n");
+        return buf;
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        buf.writeByte('"');
+        int last = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 0x20) {
+                replacement = controlEscape(c);
+            } else if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '<' || c == '>' || c == '&' || c == '=' || c == '\'' || c == '\u2028' || c == '\u2029') {
+                replacement = null;
+            } else {
+                continue;
+            }
+
+            if (last < i) {
+                ByteBufUtil.writeUtf8(buf, value, last, i);
+            }
+            if (replacement != null) {
+                ByteBufUtil.writeAscii(buf, replacement);
+            } else {
+                writeUnicodeEscape(buf, c);
+            }
+            last = i + 1;
+        }
+        if (last < value.length()) {
+            ByteBufUtil.writeUtf8(buf, value, last, value.length());
+        }
+        buf.writeByte('"');
+    }
+
+    private static String controlEscape(char c) {
+        switch (c) {
+            case '\b':
+                return "\\b";
+            case '\t':
+                return "\\t";
+            case '\n':
+                return "\\n";
+            case '\f':
+                return "\\f";
+            case '\r':
+                return "\\r";
+            default:
+                return null;
+        }
+    }
+
+    private static void writeUnicodeEscape(ByteBuf buf, char c) {
+        buf.writeByte('\\');
+        buf.writeByte('u');
+        buf.writeByte(HEX.charAt((c >> 12) & 0xF));
+        buf.writeByte(HEX.charAt((c >> 8) & 0xF));
+        buf.writeByte(HEX.charAt((c >> 4) & 0xF));
+        buf.writeByte(HEX.charAt(c & 0xF));
+    }
+}
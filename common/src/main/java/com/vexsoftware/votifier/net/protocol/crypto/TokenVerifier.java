@@ -0,0 +1,91 @@
+package com.vexsoftware.votifier.net.protocol.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Verifies protocol v2 signatures for a single configured token.
+ * <p>
+ * Each thread that uses a verifier gets its own {@link Mac} initialized with the token, so the provider lookup and
+ * key setup happen once per thread instead of once per vote.
+ */
+public final class TokenVerifier {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<Comparator> COMPARATOR = ThreadLocal.withInitial(Comparator::new);
+
+    private final Key key;
+    private final ThreadLocal<Mac> mac;
+
+    TokenVerifier(Key key) {
+        this.key = key;
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance(ALGORITHM);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize HMAC for token", e);
+            }
+        });
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    /**
+     * Checks that {@code signature} is the HMAC of {@code message} under this token.
+     *
+     * @param signature the signature sent by the client
+     * @param message   the signed message
+     * @return whether the signature is valid
+     */
+    public boolean verify(byte[] signature, byte[] message) throws GeneralSecurityException {
+        return verify(signature, ByteBuffer.wrap(message));
+    }
+
+    /**
+     * Checks that {@code signature} is the HMAC of the remaining bytes of {@code message} under this token. The
+     * position of {@code message} is advanced to its limit.
+     *
+     * @param signature the signature sent by the client
+     * @param message   the signed message
+     * @return whether the signature is valid
+     */
+    public boolean verify(byte[] signature, ByteBuffer message) throws GeneralSecurityException {
+        Mac m = mac.get();
+        m.update(message);
+        return COMPARATOR.get().equal(signature, m.doFinal());
+    }
+
+    private static final class Comparator {
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] randomKey = new byte[32];
+        private final Mac mac;
+
+        private Comparator() {
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize HMAC", e);
+            }
+        }
+
+        boolean equal(byte[] sig, byte[] calculatedSig) throws GeneralSecurityException {
+            // See https://www.nccgroup.trust/us/about-us/newsroom-and-events/blog/2011/february/double-hmac-verification/
+            // This randomizes the byte order to make timing attacks more difficult.
+            random.nextBytes(randomKey);
+            mac.init(new SecretKeySpec(randomKey, ALGORITHM));
+            byte[] clientSig = mac.doFinal(sig);
+            byte[] realSig = mac.doFinal(calculatedSig);
+
+            return MessageDigest.isEqual(clientSig, realSig);
+        }
+    }
+}
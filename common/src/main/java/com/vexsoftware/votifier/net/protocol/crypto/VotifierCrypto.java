@@ -0,0 +1,103 @@
+package com.vexsoftware.votifier.net.protocol.crypto;
+
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the keys a {@link VotifierPlugin} uses to accept votes.
+ * <p>
+ * Every configured token is turned into a {@link TokenVerifier}, and the protocol v1 private key is loaded into a
+ * per-thread {@link Cipher} the first time a thread decrypts with it. Snapshots are rebuilt whenever the plugin's
+ * tokens or key pair change (for instance, after a reload). Thread-local state belongs to the snapshot that created
+ * it, so a replaced snapshot takes its ciphers and MACs with it when it is collected.
+ */
+public final class VotifierCrypto {
+    private static final String DEFAULT_SERVICE = "default";
+
+    private static volatile VotifierCrypto current;
+
+    private final VotifierPlugin plugin;
+    private final Map<String, Key> tokens;
+    private final KeyPair v1Key;
+    private final Map<String, TokenVerifier> verifiers;
+    private final TokenVerifier defaultVerifier;
+    private final ThreadLocal<Cipher> v1Cipher;
+
+    private VotifierCrypto(VotifierPlugin plugin) {
+        this.plugin = plugin;
+        this.tokens = new HashMap<>(plugin.getTokens());
+        this.v1Key = plugin.getProtocolV1Key();
+
+        Map<String, TokenVerifier> verifiers = new HashMap<>(tokens.size());
+        for (Map.Entry<String, Key> entry : tokens.entrySet()) {
+            verifiers.put(entry.getKey(), new TokenVerifier(entry.getValue()));
+        }
+        this.verifiers = Collections.unmodifiableMap(verifiers);
+        this.defaultVerifier = verifiers.get(DEFAULT_SERVICE);
+
+        PrivateKey privateKey = v1Key == null ? null : v1Key.getPrivate();
+        this.v1Cipher = ThreadLocal.withInitial(() -> {
+            if (privateKey == null) {
+                throw new IllegalStateException("No protocol v1 key is available");
+            }
+            try {
+                Cipher cipher = Cipher.getInstance("RSA");
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize RSA cipher", e);
+            }
+        });
+    }
+
+    /**
+     * Returns the crypto snapshot for {@code plugin}, rebuilding it if the plugin's keys have changed since it was
+     * last requested.
+     *
+     * @param plugin the plugin whose keys to use
+     * @return an up-to-date snapshot
+     */
+    public static VotifierCrypto forPlugin(VotifierPlugin plugin) {
+        VotifierCrypto crypto = current;
+        if (crypto == null || !crypto.isCurrentFor(plugin)) {
+            crypto = new VotifierCrypto(plugin);
+            current = crypto;
+        }
+        return crypto;
+    }
+
+    private boolean isCurrentFor(VotifierPlugin plugin) {
+        return this.plugin == plugin &&
+                this.v1Key == plugin.getProtocolV1Key() &&
+                this.tokens.equals(plugin.getTokens());
+    }
+
+    /**
+     * Returns the verifier for a service, falling back to the {@code default} token.
+     *
+     * @param serviceName the service name sent with the vote
+     * @return the verifier to use, or {@code null} if no token applies
+     */
+    public TokenVerifier getVerifier(String serviceName) {
+        TokenVerifier verifier = verifiers.get(serviceName);
+        return verifier != null ? verifier : defaultVerifier;
+    }
+
+    /**
+     * Decrypts a protocol v1 block with the plugin's private key.
+     *
+     * @param block the encrypted block
+     * @return the decrypted data
+     */
+    public byte[] decryptV1(byte[] block) throws GeneralSecurityException {
+        return v1Cipher.get().doFinal(block);
+    }
+}
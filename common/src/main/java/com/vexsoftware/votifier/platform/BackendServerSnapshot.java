@@ -0,0 +1,56 @@
+package com.vexsoftware.votifier.platform;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * An immutable list of backend servers, as they were when the snapshot was taken.
+ * <p>
+ * Proxies hand out the same snapshot until their servers change, so callers may cache whatever they derive from one
+ * for as long as they are handed the same instance.
+ */
+public final class BackendServerSnapshot {
+    public static final BackendServerSnapshot EMPTY = new BackendServerSnapshot(new BackendServer[0]);
+
+    private final BackendServer[] servers;
+
+    private BackendServerSnapshot(BackendServer[] servers) {
+        this.servers = servers;
+    }
+
+    public static BackendServerSnapshot of(Collection<? extends BackendServer> servers) {
+        return servers.isEmpty() ? EMPTY : new BackendServerSnapshot(servers.toArray(new BackendServer[0]));
+    }
+
+    public int size() {
+        return servers.length;
+    }
+
+    public BackendServer get(int index) {
+        return servers[index];
+    }
+
+    /**
+     * Returns a snapshot of just the servers whose names are accepted by {@code names}, in the same order.
+     */
+    public BackendServerSnapshot filter(Predicate<String> names) {
+        BackendServer[] accepted = new BackendServer[servers.length];
+        int count = 0;
+        for (BackendServer server : servers) {
+            if (names.test(server.getName())) {
+                accepted[count++] = server;
+            }
+        }
+        if (count == servers.length) {
+            return this;
+        }
+        return count == 0 ? EMPTY : new BackendServerSnapshot(Arrays.copyOf(accepted, count));
+    }
+
+    public List<BackendServer> asList() {
+        return Collections.unmodifiableList(Arrays.asList(servers));
+    }
+}
@@ -0,0 +1,90 @@
+package com.vexsoftware.votifier.platform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps a {@link BackendServerSnapshot} of a proxy's servers, and only rebuilds it when servers have been registered
+ * or removed.
+ * <p>
+ * Neither proxy tells plugins about servers coming and going, so every {@link #update} compares the proxy's current
+ * servers against the ones of the last snapshot by identity. That costs a walk over the servers without creating any
+ * objects, instead of wrapping every server again. Wrappers of servers that remain are reused when the snapshot is
+ * rebuilt.
+ *
+ * @param <T> the proxy's own type for a server
+ */
+public final class BackendServerTracker<T> {
+    private final Function<T, BackendServer> wrapper;
+    private volatile Tracked<T> tracked = new Tracked<>(new Object[0], BackendServerSnapshot.EMPTY);
+
+    /**
+     * @param wrapper wraps one of the proxy's servers
+     */
+    public BackendServerTracker(Function<T, BackendServer> wrapper) {
+        this.wrapper = wrapper;
+    }
+
+    /**
+     * Returns the snapshot for the proxy's current servers, which is the previous one if they have not changed.
+     *
+     * @param current the proxy's servers, in an order that stays the same while they don't change
+     */
+    public BackendServerSnapshot update(Collection<? extends T> current) {
+        Tracked<T> last = tracked;
+        if (!last.matches(current)) {
+            last = rebuild(last, current);
+        }
+        return last.snapshot;
+    }
+
+    private synchronized Tracked<T> rebuild(Tracked<T> last, Collection<? extends T> current) {
+        Map<Object, BackendServer> previous = new IdentityHashMap<>();
+        for (int i = 0; i < last.servers.length; i++) {
+            previous.put(last.servers[i], last.snapshot.get(i));
+        }
+
+        Object[] servers = current.toArray();
+        List<BackendServer> wrapped = new ArrayList<>(servers.length);
+        for (Object server : servers) {
+            BackendServer backendServer = previous.get(server);
+            if (backendServer == null) {
+                @SuppressWarnings("unchecked")
+                T platformServer = (T) server;
+                backendServer = wrapper.apply(platformServer);
+            }
+            wrapped.add(backendServer);
+        }
+
+        Tracked<T> rebuilt = new Tracked<>(servers, BackendServerSnapshot.of(wrapped));
+        tracked = rebuilt;
+        return rebuilt;
+    }
+
+    private static final class Tracked<T> {
+        private final Object[] servers;
+        private final BackendServerSnapshot snapshot;
+
+        private Tracked(Object[] servers, BackendServerSnapshot snapshot) {
+            this.servers = servers;
+            this.snapshot = snapshot;
+        }
+
+        private boolean matches(Collection<? extends T> current) {
+            if (current.size() != servers.length) {
+                return false;
+            }
+            int i = 0;
+            for (T server : current) {
+                if (server != servers[i++]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -7,4 +7,12 @@ public interface ProxyVotifierPlugin extends VotifierPlugin {
     Collection<BackendServer> getAllBackendServers();
 
     Optional<BackendServer> getServer(String name);
+
+    /**
+     * Returns the backend servers as an immutable snapshot. The same snapshot is returned for as long as no servers
+     * are registered or removed.
+     */
+    default BackendServerSnapshot getBackendServerSnapshot() {
+        return BackendServerSnapshot.of(getAllBackendServers());
+    }
 }
@@ -9,16 +9,63 @@ import com.vexsoftware.votifier.model.Vote;
 import java.io.CharArrayReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class AbstractPluginMessagingForwardingSink implements ForwardingVoteSink {
+    /**
+     * How many of the most recent vote IDs are remembered. A vote whose acknowledgement got lost is sent again once
+     * the proxy's acknowledgement timeout has passed, so this has to cover the votes a proxy sends in that time.
+     */
+    static final int RECENT_ID_WINDOW = 16384;
 
     public AbstractPluginMessagingForwardingSink(ForwardedVoteListener listener) {
         this.listener = listener;
     }
 
     private final ForwardedVoteListener listener;
+    // The IDs of the votes handled most recently, oldest first.
+    private final Map<Long, Boolean> recentIds = new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > RECENT_ID_WINDOW;
+        }
+    };
+
+    /**
+     * Handles a message of forwarded votes, in either the {@link PluginMessageVoteCodec binary format} or the legacy
+     * JSON format.
+     * <p>
+     * A vote whose ID was handled recently is acknowledged again without being handled a second time, as it was only
+     * sent again because its first acknowledgement did not reach the proxy.
+     *
+     * @return the acknowledgement to send back to the proxy once all votes were handled, or {@code null} if the message
+     * did not ask for one
+     * @throws IllegalArgumentException if a binary message is malformed; none of its votes are handled then
+     */
+    public byte[] handlePluginMessage(byte[] message) {
+        if (PluginMessageVoteCodec.isBinary(message)) {
+            List<Long> ids = new ArrayList<>();
+            List<Vote> votes = PluginMessageVoteCodec.decode(message, ids::add);
+            if (ids.isEmpty()) {
+                for (Vote v : votes) {
+                    listener.onForward(v);
+                }
+                return null;
+            }
+            long[] acknowledged = new long[ids.size()];
+            for (int i = 0; i < acknowledged.length; i++) {
+                acknowledged[i] = ids.get(i);
+                if (!seen(acknowledged[i])) {
+                    listener.onForward(votes.get(i));
+                    remember(acknowledged[i]);
+                }
+            }
+            return PluginMessageVoteCodec.encodeAck(acknowledged);
+        }
 
-    public void handlePluginMessage(byte[] message) {
         String strMessage = new String(message, StandardCharsets.UTF_8);
         try (CharArrayReader reader = new CharArrayReader(strMessage.toCharArray())) {
             JsonReader r = new JsonReader(reader);
@@ -42,5 +89,18 @@ public abstract class AbstractPluginMessagingForwardingSink implements Forwardin
         } catch (IOException e) {
             e.printStackTrace(); // Should never happen.
         }
+        return null;
+    }
+
+    private boolean seen(long id) {
+        synchronized (recentIds) {
+            return recentIds.containsKey(id);
+        }
+    }
+
+    private void remember(long id) {
+        synchronized (recentIds) {
+            recentIds.put(id, Boolean.TRUE);
+        }
     }
 }
@@ -2,7 +2,9 @@ package com.vexsoftware.votifier.support.forwarding;
 
 import com.vexsoftware.votifier.model.Vote;
 import com.vexsoftware.votifier.platform.BackendServer;
+import com.vexsoftware.votifier.platform.BackendServerSnapshot;
 import com.vexsoftware.votifier.platform.ProxyVotifierPlugin;
+import com.vexsoftware.votifier.platform.scheduler.ScheduledVotifierTask;
 import com.vexsoftware.votifier.support.forwarding.cache.FileVoteCache;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
 
@@ -10,12 +12,59 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 
 public abstract class AbstractPluginMessagingForwardingSource implements ForwardingVoteSource {
 
+    public enum MessageFormat {
+        /**
+         * Votes are sent as JSON objects, which every version of NuVotifier understands.
+         */
+        JSON,
+        /**
+         * Votes are sent in the compact {@link PluginMessageVoteCodec binary format}, which needs NuVotifier 3.0 or
+         * newer on the backend servers.
+         */
+        BINARY;
+
+        /**
+         * Parses a format name from configuration, such as {@code json} or {@code binary}.
+         *
+         * @throws IllegalArgumentException if the name is not known
+         */
+        public static MessageFormat fromConfig(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * The default for how large a message of dumped votes may get. Minecraft servers don't take plugin messages larger
+     * than 32767 bytes.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 32000;
+    /**
+     * The fastest cached votes are dumped to a server, in votes per second.
+     */
+    public static final int MAX_DUMP_RATE = 500;
+    private static final int MAX_FAILED_MESSAGES = 3;
+    private static final long FIRST_MESSAGE_DELAY_MILLIS = 3000;
+    private static final long MIN_MESSAGE_DELAY_MILLIS = 50;
+    /**
+     * Dumps of at least this many votes are logged.
+     */
+    private static final int LARGE_DUMP = 100;
+    /**
+     * How many votes a drain takes out of the cache at a time.
+     */
+    private static final int DRAIN_BATCH = MAX_DUMP_RATE;
+
     public AbstractPluginMessagingForwardingSource(String channel, ServerFilter serverFilter, ProxyVotifierPlugin plugin, VoteCache cache, int dumpRate) {
         this.channel = channel;
         this.plugin = plugin;
@@ -33,26 +82,96 @@ public abstract class AbstractPluginMessagingForwardingSource implements Forward
     protected final VoteCache cache;
     protected final ServerFilter serverFilter;
     private final int dumpRate;
+    private final Map<String, ServerDump> dumps = new ConcurrentHashMap<>();
+    private volatile int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+    private volatile int queueCapacity = BoundedSendQueue.DEFAULT_CAPACITY;
+    private volatile BoundedSendQueue.OverflowPolicy overflowPolicy = BoundedSendQueue.OverflowPolicy.SPILL;
+    private volatile Targets targets;
+    private volatile MessageFormat messageFormat = MessageFormat.JSON;
+    private volatile AckTracker<CachedVote> acks;
+    private ScheduledVotifierTask ackSweep;
 
     @Override
     public void forward(Vote v) {
-        byte[] rawData = v.serialize().toString().getBytes(StandardCharsets.UTF_8);
-        for (BackendServer server : plugin.getAllBackendServers()) {
-            if (!serverFilter.isAllowed(server.getName())) continue;
+        AckTracker<CachedVote> acks = this.acks;
+        long id = acks == null ? 0 : acks.nextId();
+        byte[] rawData = acks == null ? encode(v) : PluginMessageVoteCodec.encode(v, id);
+        BackendServerSnapshot servers = getTargetServers();
+        for (int i = 0; i < servers.size(); i++) {
+            BackendServer server = servers.get(i);
             if (!forwardSpecific(server, rawData)) {
                 attemptToAddToCache(v, server.getName());
-            } else if (plugin.isDebug()) {
+                continue;
+            }
+            if (acks != null) {
+                acks.track(server.getName(), id, new CachedVote(v, null, id), nowMillis());
+            }
+            if (plugin.isDebug()) {
                 plugin.getPluginLogger().info("Successfully forwarded vote " + v + " to server " + server.getName());
             }
         }
     }
 
+    /**
+     * Returns the servers votes are forwarded to, which are the proxy's servers that pass the server filter. They are
+     * only filtered again once the proxy hands out a new snapshot.
+     */
+    private BackendServerSnapshot getTargetServers() {
+        BackendServerSnapshot all = plugin.getBackendServerSnapshot();
+        Targets current = targets;
+        if (current == null || current.all != all) {
+            current = new Targets(all, serverFilter == null ? all : all.filter(serverFilter::isAllowed));
+            targets = current;
+        }
+        return current.allowed;
+    }
+
     protected boolean forwardSpecific(BackendServer connection, Vote vote) {
-        byte[] rawData = vote.serialize().toString().getBytes(StandardCharsets.UTF_8);
-        return forwardSpecific(connection, rawData);
+        return forwardSpecific(connection, vote, null);
+    }
+
+    /**
+     * Sends a vote to a server that {@code player} is on. If the server does not acknowledge the vote in time, it goes
+     * to the player's cache instead of the server's.
+     */
+    protected boolean forwardSpecific(BackendServer connection, Vote vote, String player) {
+        AckTracker<CachedVote> acks = this.acks;
+        if (acks == null) {
+            return forwardSpecific(connection, encode(vote));
+        }
+        long id = acks.nextId();
+        if (!forwardSpecific(connection, PluginMessageVoteCodec.encode(vote, id))) {
+            return false;
+        }
+        acks.track(connection.getName(), id, new CachedVote(vote, player, id), nowMillis());
+        return true;
     }
 
     protected boolean forwardSpecific(BackendServer connection, Collection<Vote> votes) {
+        AckTracker<CachedVote> acks = this.acks;
+        if (acks != null) {
+            List<byte[]> records = new ArrayList<>(votes.size());
+            long[] ids = new long[votes.size()];
+            int i = 0;
+            for (Vote v : votes) {
+                ids[i] = acks.nextId();
+                records.add(PluginMessageVoteCodec.encodeRecord(v, ids[i++]));
+            }
+            if (!forwardSpecific(connection, PluginMessageVoteCodec.frame(records, true))) {
+                return false;
+            }
+            long now = nowMillis();
+            i = 0;
+            for (Vote v : votes) {
+                acks.track(connection.getName(), ids[i], new CachedVote(v, null, ids[i]), now);
+                i++;
+            }
+            return true;
+        }
+        if (messageFormat == MessageFormat.BINARY) {
+            return forwardSpecific(connection, PluginMessageVoteCodec.encode(votes));
+        }
+
         StringBuilder data = new StringBuilder();
         for (Vote v : votes) {
             data.append(v.serialize().toString());
@@ -61,12 +180,29 @@ public abstract class AbstractPluginMessagingForwardingSource implements Forward
         return forwardSpecific(connection, data.toString().getBytes(StandardCharsets.UTF_8));
     }
 
+    private byte[] encode(Vote vote) {
+        if (messageFormat == MessageFormat.BINARY) {
+            return PluginMessageVoteCodec.encode(vote);
+        }
+        return vote.serialize().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     private boolean forwardSpecific(BackendServer connection, byte[] data) {
         return connection.sendPluginMessage(channel, data);
     }
 
     @Override
     public void halt() {
+        if (ackSweep != null) {
+            ackSweep.cancel();
+        }
+        AckTracker<CachedVote> acks = this.acks;
+        if (acks != null && cache != null) {
+            // Votes that were never acknowledged are cached, so they get sent again after a restart.
+            for (Map.Entry<String, List<CachedVote>> entry : acks.clear().entrySet()) {
+                returnToCache(entry.getValue(), entry.getKey());
+            }
+        }
         if (cache instanceof FileVoteCache) {
             try {
                 ((FileVoteCache) cache).halt();
@@ -76,13 +212,21 @@ public abstract class AbstractPluginMessagingForwardingSource implements Forward
         }
     }
 
+    /**
+     * Starts draining the votes cached for a server. If a drain is already in flight for the server, it is told that
+     * more votes may have been cached and picks them up before it finishes.
+     */
     protected void onServerConnect(BackendServer server) {
         if (cache == null) return;
-        final Collection<Vote> cachedVotes = cache.evict(server.getName());
-        dumpVotesToServer(cachedVotes, server, "server '" + server + "'", failedVotes -> {
-            for (Vote v : failedVotes)
-                cache.addToCache(v, server.getName());
-        });
+        ServerDump dump = dumpFor(server);
+        boolean start;
+        synchronized (dump) {
+            dump.cacheRequests++;
+            start = dump.startDrain();
+        }
+        if (start) {
+            new DumpRun(dump, server).schedule(FIRST_MESSAGE_DELAY_MILLIS);
+        }
     }
 
     protected void attemptToAddToCache(Vote v, String server) {
@@ -104,46 +248,435 @@ public abstract class AbstractPluginMessagingForwardingSource implements Forward
 
     }
 
-    // returns a collection of failed votes
-    private void dumpVotesToServer(Collection<Vote> cachedVotes, BackendServer target, String identifier, Consumer<Collection<Vote>> cb) {
-        dumpVotesToServer(cachedVotes, target, identifier, 0, cb);
+    /**
+     * Changes the format votes are sent in. Backend servers recognize either format by themselves.
+     */
+    public void setMessageFormat(MessageFormat messageFormat) {
+        this.messageFormat = messageFormat;
     }
-    private void dumpVotesToServer(Collection<Vote> cachedVotes, BackendServer target, String identifier, int evictedAlready, Consumer<Collection<Vote>> cb) {
-        if (!cachedVotes.isEmpty()) {
-            plugin.getScheduler().delayedOnPool(() -> {
-                int evicted = 0;
-                Iterator<Vote> vi = cachedVotes.iterator();
-                Collection<Vote> chunk = new ArrayList<>(dumpRate);
-                while (vi.hasNext() && evicted < dumpRate) {
-                    chunk.add(vi.next());
-                    vi.remove();
+
+    /**
+     * Changes how many cached votes may wait to be dumped to each server, and what happens to votes that don't fit.
+     * Votes that spill over simply stay in the cache until the next dump.
+     */
+    public void setQueueLimits(int capacity, BoundedSendQueue.OverflowPolicy policy) {
+        this.queueCapacity = capacity;
+        this.overflowPolicy = policy;
+        for (ServerDump dump : dumps.values()) {
+            synchronized (dump) {
+                dump.queue.setLimits(capacity, policy);
+            }
+        }
+    }
+
+    /**
+     * Changes how large a message of dumped votes may get, in bytes. A single vote that is larger still gets a message
+     * of its own.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        if (maxMessageSize < 1) {
+            throw new IllegalArgumentException("The maximum message size must be positive");
+        }
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Makes backend servers acknowledge the votes they are sent. Votes are tracked until they are acknowledged; those
+     * that aren't within {@code timeoutMillis} go back to the vote cache, to be sent again the next time votes are
+     * dumped to the server.
+     * <p>
+     * Votes are then always sent in the binary format, which needs NuVotifier 3.0 or newer on the backend servers. This
+     * can only be turned on once, before votes are forwarded.
+     */
+    public void enableAcks(long timeoutMillis) {
+        if (cache == null) {
+            throw new IllegalStateException("Acknowledgements need a vote cache");
+        }
+        if (acks != null) {
+            throw new IllegalStateException("Acknowledgements are already enabled");
+        }
+        acks = new AckTracker<>(timeoutMillis);
+        int sweepSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis) / 4);
+        ackSweep = plugin.getScheduler().repeatOnPool(this::expireAcks, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Handles an acknowledgement that came back from {@code server} on the channel. Anything else is ignored.
+     */
+    protected void handleAck(String server, byte[] message) {
+        AckTracker<CachedVote> acks = this.acks;
+        if (acks == null || !PluginMessageVoteCodec.isAck(message)) {
+            return;
+        }
+        try {
+            int acknowledged = acks.acknowledge(server, PluginMessageVoteCodec.decodeAck(message));
+            if (plugin.isDebug()) {
+                plugin.getPluginLogger().info("Server " + server + " acknowledged " + acknowledged + " vote(s).");
+            }
+        } catch (IllegalArgumentException e) {
+            plugin.getPluginLogger().warn("Server " + server + " sent a malformed vote acknowledgement: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Caches the votes whose acknowledgement has timed out again.
+     */
+    void expireAcks() {
+        AckTracker<CachedVote> acks = this.acks;
+        if (acks == null) {
+            return;
+        }
+        for (Map.Entry<String, List<CachedVote>> entry : acks.expire(nowMillis()).entrySet()) {
+            // The server may have handled these votes and only lost the acknowledgements, so they keep their IDs.
+            ServerDump dump = dumpFor(entry.getKey());
+            synchronized (dump) {
+                for (CachedVote vote : entry.getValue()) {
+                    dump.resendIds.put(vote.vote, vote.id);
+                }
+            }
+            returnToCache(entry.getValue(), entry.getKey());
+            plugin.getPluginLogger().warn(entry.getValue().size() + " vote(s) sent to " + entry.getKey() + " were not " +
+                    "acknowledged in time. They have been cached to be sent again.");
+        }
+    }
+
+    /**
+     * Returns how many votes are waiting to be acknowledged by each server, by name. This is empty unless
+     * acknowledgements are enabled.
+     */
+    public Map<String, Integer> getPendingAcks() {
+        AckTracker<CachedVote> acks = this.acks;
+        return acks == null ? Collections.emptyMap() : acks.getPendingCounts();
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Returns the dump queue counters of each server that has had votes dumped to it, by name.
+     */
+    public Map<String, BoundedSendQueue.Stats> getQueueStats() {
+        Map<String, BoundedSendQueue.Stats> stats = new HashMap<>();
+        for (Map.Entry<String, ServerDump> entry : dumps.entrySet()) {
+            synchronized (entry.getValue()) {
+                stats.put(entry.getKey(), entry.getValue().queue.getStats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns how far dumping cached votes has come for each server that has had votes dumped to it, by name.
+     */
+    public Map<String, DumpProgress> getDumpProgress() {
+        Map<String, DumpProgress> progress = new HashMap<>();
+        for (Map.Entry<String, ServerDump> entry : dumps.entrySet()) {
+            ServerDump dump = entry.getValue();
+            synchronized (dump) {
+                progress.put(entry.getKey(), new DumpProgress(dump.queue.size(), dump.sent, dump.failedMessages,
+                        dump.votesPerSecond, dump.draining, dump.mergedDrains));
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * Returns the drain coordinator of a server, creating it the first time votes are sent to the server.
+     */
+    private ServerDump dumpFor(BackendServer target) {
+        return dumpFor(target.getName());
+    }
+
+    private ServerDump dumpFor(String server) {
+        return dumps.computeIfAbsent(server,
+                name -> new ServerDump(new BoundedSendQueue<>(queueCapacity, overflowPolicy), dumpRate));
+    }
+
+    /**
+     * Queues votes evicted from a player's cache for a server, and makes sure a drain is sending them.
+     *
+     * @param player the player whose cache the votes came from
+     */
+    private void dumpVotesToServer(Collection<Vote> cachedVotes, BackendServer target, String player) {
+        if (cachedVotes.isEmpty()) {
+            return;
+        }
+        ServerDump dump = dumpFor(target);
+
+        List<CachedVote> overflow = new ArrayList<>();
+        BoundedSendQueue.OverflowPolicy policy;
+        int waiting;
+        boolean start;
+        synchronized (dump) {
+            policy = dump.queue.getPolicy();
+            for (Vote vote : cachedVotes) {
+                CachedVote rejected = dump.queue.offer(new CachedVote(vote, player));
+                if (rejected != null) {
+                    overflow.add(rejected);
                 }
+            }
+            waiting = dump.queue.size();
+            start = dump.startDrain();
+        }
+        handleOverflow(overflow, policy, target, "player '" + player + "'");
+        if (waiting >= LARGE_DUMP) {
+            plugin.getPluginLogger().info("Sending " + waiting + " cached vote(s) to " + target.getName() + ".");
+        }
 
-                if (forwardSpecific(target, chunk)) {
-                    evicted += chunk.size();
+        if (start) {
+            new DumpRun(dump, target).schedule(FIRST_MESSAGE_DELAY_MILLIS);
+        }
+    }
 
-                    if (evicted >= dumpRate && !cachedVotes.isEmpty()) {
-                        // if we evicted everything we could but still need to evict more
-                        dumpVotesToServer(cachedVotes, target, identifier, evictedAlready + evicted, cb);
-                        return;
+    private void handleOverflow(List<CachedVote> overflow, BoundedSendQueue.OverflowPolicy policy,
+                                BackendServer target, String identifier) {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        if (policy == BoundedSendQueue.OverflowPolicy.SPILL) {
+            returnToCache(overflow, target.getName());
+            plugin.getPluginLogger().warn("Too many votes are waiting to be sent to " + target.getName() + ". " +
+                    overflow.size() + " vote(s) for " + identifier + " stay cached until the next time.");
+        } else {
+            plugin.getPluginLogger().error("Too many votes are waiting to be sent to " + target.getName() + ". " +
+                    overflow.size() + " vote(s) have been dropped!");
+        }
+    }
+
+    /**
+     * The one drain in flight for a server. It takes the server's cached votes out of the cache a batch at a time, as
+     * the queue runs low, and sends what is queued in messages of up to the maximum message size. Votes that can't be
+     * sent go back to the cache they came from, ahead of anything cached since.
+     * <p>
+     * Sending starts at {@code dumpRate} votes per second. Each message the server takes doubles the rate, up to
+     * {@link #MAX_DUMP_RATE}, and each one it doesn't take halves it again. The message is then tried again, until
+     * {@link #MAX_FAILED_MESSAGES} in a row have failed.
+     */
+    private final class DumpRun {
+        private final ServerDump dump;
+        private final BackendServer target;
+        private final String identifier;
+        private final long startedAt = System.nanoTime();
+        private int evicted;
+        private int failures;
+        private boolean announced;
+
+        private DumpRun(ServerDump dump, BackendServer target) {
+            this.dump = dump;
+            this.target = target;
+            this.identifier = "server '" + target.getName() + "'";
+        }
+
+        private void schedule(long delayMillis) {
+            plugin.getScheduler().delayedOnPool(this::sendMessage, (int) delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Tops up the queue from the server's cache if it runs low and votes may still be cached.
+         */
+        private void refill() {
+            long requests;
+            int room;
+            synchronized (dump) {
+                if (!dump.cachePending() || dump.queue.size() >= DRAIN_BATCH) {
+                    return;
+                }
+                requests = dump.cacheRequests;
+                room = Math.min(DRAIN_BATCH, dump.queue.remainingCapacity());
+            }
+            if (room <= 0) {
+                // The queue is full of votes from players' caches; come back once it has drained.
+                return;
+            }
+
+            Collection<Vote> votes = cache.evict(target.getName(), room);
+            List<CachedVote> overflow = new ArrayList<>();
+            BoundedSendQueue.OverflowPolicy policy;
+            int waiting;
+            synchronized (dump) {
+                policy = dump.queue.getPolicy();
+                for (Vote vote : votes) {
+                    CachedVote rejected = dump.queue.offer(new CachedVote(vote, null));
+                    if (rejected != null) {
+                        overflow.add(rejected);
+                    }
+                }
+                if (votes.size() < room) {
+                    // Everything cached by the time of these requests has been taken out.
+                    dump.cacheRequestsDone = Math.max(dump.cacheRequestsDone, requests);
+                }
+                waiting = dump.queue.size();
+            }
+            handleOverflow(overflow, policy, target, identifier);
+            if (!announced && evicted + waiting >= LARGE_DUMP) {
+                announced = true;
+                plugin.getPluginLogger().info("Sending cached votes to " + target.getName() + ", " + waiting +
+                        " vote(s) waiting so far.");
+            }
+        }
+
+        private void sendMessage() {
+            refill();
+
+            AckTracker<CachedVote> acks = AbstractPluginMessagingForwardingSource.this.acks;
+            boolean binary = acks != null || messageFormat == MessageFormat.BINARY;
+            int budget = maxMessageSize - (binary ? PluginMessageVoteCodec.MAX_OVERHEAD : 0);
+            List<CachedVote> chunk = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            List<Long> ids = new ArrayList<>();
+            int size = 0;
+            boolean more = false;
+            synchronized (dump) {
+                CachedVote next;
+                while ((next = dump.queue.poll()) != null) {
+                    Long resendId = dump.resendIds.get(next.vote);
+                    long id = acks == null ? 0 : resendId != null ? resendId : acks.nextId();
+                    byte[] record = acks != null ? PluginMessageVoteCodec.encodeRecord(next.vote, id) :
+                            binary ? PluginMessageVoteCodec.encodeRecord(next.vote) :
+                                    next.vote.serialize().toString().getBytes(StandardCharsets.UTF_8);
+                    if (!chunk.isEmpty() && size + record.length > budget) {
+                        dump.queue.addFirst(next);
+                        break;
                     }
+                    chunk.add(next);
+                    records.add(record);
+                    ids.add(id);
+                    size += record.length;
+                }
+                if (chunk.isEmpty()) {
+                    // Votes may have been cached after the last refill, by the connection that made this request.
+                    more = dump.cachePending();
+                    if (!more) {
+                        dump.draining = false;
+                    }
+                }
+            }
+            if (chunk.isEmpty()) {
+                if (more) {
+                    schedule(MIN_MESSAGE_DELAY_MILLIS);
                 } else {
-                    // so since our forwarding failed, break like we are done
-                    cachedVotes.addAll(chunk);
+                    finished();
                 }
+                return;
+            }
+            if (size > budget) {
+                plugin.getPluginLogger().warn("A cached vote for " + identifier + " takes " + size + " bytes, which " +
+                        "is more than the maximum message size. The server may refuse it.");
+            }
 
-                if (plugin.isDebug()) {
-                    plugin.getPluginLogger().info("Successfully evicted " + (evictedAlready + evicted) + " votes to " + identifier + ".");
-                    if (!cachedVotes.isEmpty()) {
-                        plugin.getPluginLogger().info("Held " + cachedVotes.size() + " votes for " + identifier + ".");
+            byte[] message = binary ? PluginMessageVoteCodec.frame(records, acks != null) : concat(records, size);
+            if (forwardSpecific(target, message)) {
+                if (acks != null) {
+                    long now = nowMillis();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        CachedVote sent = chunk.get(i);
+                        acks.track(target.getName(), ids.get(i), new CachedVote(sent.vote, sent.player, ids.get(i)), now);
+                    }
+                    synchronized (dump) {
+                        for (CachedVote sent : chunk) {
+                            dump.resendIds.remove(sent.vote);
+                        }
                     }
                 }
+                onSent(chunk);
+            } else {
+                onFailed(chunk);
+            }
+        }
 
-                // cachedVotes contains any votes which have yet to be evicted
-                cb.accept(cachedVotes);
-            }, evictedAlready == 0 ? 3 : 1, TimeUnit.SECONDS);
-        } else {
-            cb.accept(cachedVotes);
+        private void onSent(List<CachedVote> chunk) {
+            evicted += chunk.size();
+            failures = 0;
+            double votesPerSecond;
+            boolean more;
+            synchronized (dump) {
+                dump.sent += chunk.size();
+                dump.votesPerSecond = Math.min(MAX_DUMP_RATE, dump.votesPerSecond * 2);
+                votesPerSecond = dump.votesPerSecond;
+                more = !dump.queue.isEmpty() || dump.cachePending();
+                if (!more) {
+                    dump.draining = false;
+                }
+            }
+
+            if (more) {
+                // Pace the next message by how long this one should have taken at the current rate.
+                schedule(Math.max(MIN_MESSAGE_DELAY_MILLIS, (long) (chunk.size() * 1000 / votesPerSecond)));
+            } else {
+                finished();
+            }
+        }
+
+        private void finished() {
+            if (evicted >= LARGE_DUMP) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                plugin.getPluginLogger().info("Sent " + evicted + " cached vote(s) to " + identifier + " in " +
+                        Math.max(1, Math.round(millis / 1000.0)) + " second(s).");
+            } else if (evicted > 0 && plugin.isDebug()) {
+                plugin.getPluginLogger().info("Successfully evicted " + evicted + " votes to " + identifier + ".");
+            }
+        }
+
+        private void onFailed(List<CachedVote> chunk) {
+            failures++;
+            double votesPerSecond;
+            synchronized (dump) {
+                dump.failedMessages++;
+                dump.votesPerSecond = Math.max(dumpRate, dump.votesPerSecond / 2);
+                votesPerSecond = dump.votesPerSecond;
+                if (failures < MAX_FAILED_MESSAGES) {
+                    for (int i = chunk.size() - 1; i >= 0; i--) {
+                        dump.queue.addFirst(chunk.get(i));
+                    }
+                } else {
+                    // Since our forwarding keeps failing, everything still waiting goes back to the cache. What is
+                    // still cached stays there until the server is connected to again.
+                    CachedVote next;
+                    while ((next = dump.queue.poll()) != null) {
+                        chunk.add(next);
+                    }
+                    dump.cacheRequestsDone = dump.cacheRequests;
+                    dump.draining = false;
+                }
+            }
+
+            if (failures < MAX_FAILED_MESSAGES) {
+                schedule(Math.max(MIN_MESSAGE_DELAY_MILLIS, (long) (chunk.size() * 1000 / votesPerSecond)));
+                return;
+            }
+            returnToCache(chunk, target.getName());
+            if (plugin.isDebug()) {
+                plugin.getPluginLogger().info("Successfully evicted " + evicted + " votes to " + identifier + ".");
+                plugin.getPluginLogger().info("Held " + chunk.size() + " votes for " + identifier + ".");
+            }
+        }
+    }
+
+    private static byte[] concat(List<byte[]> records, int size) {
+        byte[] message = new byte[size];
+        int position = 0;
+        for (byte[] record : records) {
+            System.arraycopy(record, 0, message, position, record.length);
+            position += record.length;
+        }
+        return message;
+    }
+
+    /**
+     * Puts votes back into the cache they came from, keeping the server's votes in order ahead of those cached since.
+     */
+    private void returnToCache(List<CachedVote> votes, String server) {
+        List<Vote> serverVotes = new ArrayList<>(votes.size());
+        for (CachedVote cachedVote : votes) {
+            if (cachedVote.player == null) {
+                serverVotes.add(cachedVote.vote);
+            } else {
+                cache.addToCachePlayer(cachedVote.vote, cachedVote.player);
+            }
+        }
+        if (!serverVotes.isEmpty()) {
+            cache.returnToCache(serverVotes, server);
         }
     }
 
@@ -152,9 +685,148 @@ public abstract class AbstractPluginMessagingForwardingSource implements Forward
         if (!serverFilter.isAllowed(server.getName())) return;
 
         final Collection<Vote> cachedVotes = cache.evictPlayer(playerName);
-        dumpVotesToServer(cachedVotes, server, "player '" + playerName + "'", failedVotes -> {
-            for (Vote v : failedVotes)
-                cache.addToCachePlayer(v, playerName);
-        });
+        dumpVotesToServer(cachedVotes, server, playerName);
+    }
+
+    private static final class Targets {
+        private final BackendServerSnapshot all;
+        private final BackendServerSnapshot allowed;
+
+        private Targets(BackendServerSnapshot all, BackendServerSnapshot allowed) {
+            this.all = all;
+            this.allowed = allowed;
+        }
+    }
+
+    /**
+     * Coordinates the drains to one server: the cached votes waiting to be sent, whether a drain is in flight, and how
+     * that has gone so far. Guarded by itself.
+     */
+    private static final class ServerDump {
+        private final BoundedSendQueue<CachedVote> queue;
+        private double votesPerSecond;
+        private long sent;
+        private long failedMessages;
+        private boolean draining;
+        private long mergedDrains;
+        // Requests to drain the server's cache, and how many of those the drain in flight has caught up with.
+        private long cacheRequests;
+        private long cacheRequestsDone;
+        // The IDs of votes that went unacknowledged, by vote, so they are sent again under the same ID. Older ones than
+        // the backend servers remember are of no use.
+        private final Map<Vote, Long> resendIds = new LinkedHashMap<Vote, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Vote, Long> eldest) {
+                return size() > AbstractPluginMessagingForwardingSink.RECENT_ID_WINDOW;
+            }
+        };
+
+        private ServerDump(BoundedSendQueue<CachedVote> queue, double votesPerSecond) {
+            this.queue = queue;
+            this.votesPerSecond = votesPerSecond;
+        }
+
+        /**
+         * Returns whether the caller should start a drain, which is only the case if none is in flight.
+         */
+        private boolean startDrain() {
+            if (draining) {
+                mergedDrains++;
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        private boolean cachePending() {
+            return cacheRequestsDone < cacheRequests;
+        }
+    }
+
+    /**
+     * A snapshot of how far dumping cached votes to a server has come.
+     */
+    public static final class DumpProgress {
+        private final int waiting;
+        private final long sent;
+        private final long failedMessages;
+        private final double votesPerSecond;
+        private final boolean draining;
+        private final long mergedDrains;
+
+        public DumpProgress(int waiting, long sent, long failedMessages, double votesPerSecond, boolean draining,
+                            long mergedDrains) {
+            this.waiting = waiting;
+            this.sent = sent;
+            this.failedMessages = failedMessages;
+            this.votesPerSecond = votesPerSecond;
+            this.draining = draining;
+            this.mergedDrains = mergedDrains;
+        }
+
+        /**
+         * Returns how many votes were still waiting to be sent.
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * Returns how many cached votes have been sent to the server in total.
+         */
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * Returns how many messages of votes the server did not take.
+         */
+        public long getFailedMessages() {
+            return failedMessages;
+        }
+
+        /**
+         * Returns the rate votes were being sent at.
+         */
+        public double getVotesPerSecond() {
+            return votesPerSecond;
+        }
+
+        /**
+         * Returns whether a drain was in flight.
+         */
+        public boolean isDraining() {
+            return draining;
+        }
+
+        /**
+         * Returns how many requests to drain were folded into a drain that was already in flight.
+         */
+        public long getMergedDrains() {
+            return mergedDrains;
+        }
+
+        @Override
+        public String toString() {
+            return "waiting=" + waiting + ", sent=" + sent + ", failedMessages=" + failedMessages +
+                    ", votesPerSecond=" + votesPerSecond + ", draining=" + draining + ", mergedDrains=" + mergedDrains;
+        }
+    }
+
+    private static final class CachedVote {
+        private final Vote vote;
+        private final String player;
+        // The ID the vote was last sent under, or 0 if it has none yet.
+        private final long id;
+
+        private CachedVote(Vote vote, String player) {
+            this(vote, player, 0);
+        }
+
+        private CachedVote(Vote vote, String player, long id) {
+            this.vote = vote;
+            this.player = player;
+            this.id = id;
+        }
     }
 }
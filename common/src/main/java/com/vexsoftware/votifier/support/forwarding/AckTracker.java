@@ -0,0 +1,144 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of votes that were sent to backend servers but not acknowledged yet.
+ * <p>
+ * Every vote gets an ID, which the backend server sends back once it has handled the vote. Votes that go without an
+ * acknowledgement for longer than the timeout are handed back by {@link #expire(long)}, so they can be cached again.
+ * <p>
+ * IDs start with a prefix picked at random for each tracker, so that a backend server that remembers the IDs it has
+ * handled recently won't mistake the votes of a restarted proxy for votes it has already seen.
+ *
+ * @param <E> the type of the tracked votes
+ */
+public final class AckTracker<E> {
+    private static final int COUNTER_BITS = 40;
+    private static final int PREFIX_BITS = 23;
+
+    private final long prefix = (long) ThreadLocalRandom.current().nextInt(1 << PREFIX_BITS) << COUNTER_BITS;
+    private final AtomicLong nextId = new AtomicLong();
+    private final long timeoutMillis;
+    // Pending votes by server, then by ID, in the order they were sent.
+    private final Map<String, LinkedHashMap<Long, Pending<E>>> pending = new HashMap<>();
+
+    public AckTracker(long timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("The acknowledgement timeout must be positive");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns a new vote ID. A vote sent to several servers can use the same ID for each of them.
+     */
+    public long nextId() {
+        return prefix | (nextId.incrementAndGet() & ((1L << COUNTER_BITS) - 1));
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Starts waiting for {@code server} to acknowledge a vote it was sent at {@code now}.
+     */
+    public synchronized void track(String server, long id, E vote, long now) {
+        pending.computeIfAbsent(server, k -> new LinkedHashMap<>()).put(id, new Pending<>(vote, now));
+    }
+
+    /**
+     * Stops waiting for the votes {@code server} has acknowledged.
+     *
+     * @return how many of the IDs belonged to votes that were still waiting
+     */
+    public synchronized int acknowledge(String server, long[] ids) {
+        Map<Long, Pending<E>> votes = pending.get(server);
+        if (votes == null) {
+            return 0;
+        }
+        int acknowledged = 0;
+        for (long id : ids) {
+            if (votes.remove(id) != null) {
+                acknowledged++;
+            }
+        }
+        if (votes.isEmpty()) {
+            pending.remove(server);
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Stops waiting for the votes that were sent before {@code now} minus the timeout.
+     *
+     * @return the expired votes by server, oldest first
+     */
+    public synchronized Map<String, List<E>> expire(long now) {
+        Map<String, List<E>> expired = new HashMap<>();
+        Iterator<Map.Entry<String, LinkedHashMap<Long, Pending<E>>>> servers = pending.entrySet().iterator();
+        while (servers.hasNext()) {
+            Map.Entry<String, LinkedHashMap<Long, Pending<E>>> entry = servers.next();
+            Iterator<Pending<E>> votes = entry.getValue().values().iterator();
+            while (votes.hasNext()) {
+                Pending<E> vote = votes.next();
+                if (now - vote.sentAt < timeoutMillis) {
+                    break;
+                }
+                expired.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(vote.vote);
+                votes.remove();
+            }
+            if (entry.getValue().isEmpty()) {
+                servers.remove();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Stops waiting for any vote.
+     *
+     * @return the votes that were still waiting by server, oldest first
+     */
+    public synchronized Map<String, List<E>> clear() {
+        Map<String, List<E>> cleared = new HashMap<>();
+        for (Map.Entry<String, LinkedHashMap<Long, Pending<E>>> entry : pending.entrySet()) {
+            List<E> votes = new ArrayList<>(entry.getValue().size());
+            for (Pending<E> vote : entry.getValue().values()) {
+                votes.add(vote.vote);
+            }
+            cleared.put(entry.getKey(), votes);
+        }
+        pending.clear();
+        return cleared;
+    }
+
+    /**
+     * Returns how many votes are waiting to be acknowledged by each server, by name.
+     */
+    public synchronized Map<String, Integer> getPendingCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, LinkedHashMap<Long, Pending<E>>> entry : pending.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    private static final class Pending<E> {
+        private final E vote;
+        private final long sentAt;
+
+        private Pending(E vote, long sentAt) {
+            this.vote = vote;
+            this.sentAt = sentAt;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * A FIFO queue of votes waiting to be sent to one destination, holding at most {@code capacity} of them.
+ * <p>
+ * What happens to votes that don't fit is up to the {@link OverflowPolicy}. The queue tracks its deepest point and
+ * how many votes overflowed, so operators can tell how close a destination came to its limit.
+ * <p>
+ * This class is not thread-safe; callers guard it with their own lock.
+ *
+ * @param <E> the type of the queued votes
+ */
+public final class BoundedSendQueue<E> implements Iterable<E> {
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    public enum OverflowPolicy {
+        /**
+         * Votes that don't fit go to the vote cache (or outbox) instead, to be sent later.
+         */
+        SPILL,
+        /**
+         * The oldest waiting vote is dropped to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Votes that don't fit are dropped.
+         */
+        REJECT;
+
+        /**
+         * Parses a policy name from configuration, such as {@code spill} or {@code drop-oldest}.
+         *
+         * @throws IllegalArgumentException if the name is not known
+         */
+        public static OverflowPolicy fromConfig(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final ArrayDeque<E> queue = new ArrayDeque<>();
+    private int capacity;
+    private OverflowPolicy policy;
+    private int highWatermark;
+    private long overflowed;
+
+    public BoundedSendQueue(int capacity, OverflowPolicy policy) {
+        setLimits(capacity, policy);
+    }
+
+    /**
+     * Changes the capacity and overflow policy. Votes already queued beyond a lower capacity stay queued.
+     */
+    public void setLimits(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a vote to the end of the queue.
+     *
+     * @return {@code null} if the vote was queued without overflowing; otherwise the vote that did not make it, which
+     * is the oldest vote for {@link OverflowPolicy#DROP_OLDEST}, and {@code vote} itself for the other policies
+     */
+    public E offer(E vote) {
+        if (queue.size() < capacity) {
+            add(vote);
+            return null;
+        }
+        overflowed++;
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            E oldest = queue.poll();
+            queue.add(vote);
+            return oldest;
+        }
+        return vote;
+    }
+
+    /**
+     * Puts a vote that was taken from this queue back at its head. This never overflows, since the vote already had a
+     * place in the queue.
+     */
+    public void addFirst(E vote) {
+        queue.addFirst(vote);
+        highWatermark = Math.max(highWatermark, queue.size());
+    }
+
+    private void add(E vote) {
+        queue.add(vote);
+        highWatermark = Math.max(highWatermark, queue.size());
+    }
+
+    public E poll() {
+        return queue.poll();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Returns how many more votes fit before the queue overflows.
+     */
+    public int remainingCapacity() {
+        return Math.max(0, capacity - queue.size());
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return queue.iterator();
+    }
+
+    /**
+     * Returns a snapshot of the queue's counters.
+     */
+    public Stats getStats() {
+        return new Stats(queue.size(), highWatermark, capacity, overflowed);
+    }
+
+    /**
+     * A snapshot of a {@link BoundedSendQueue}'s counters.
+     */
+    public static final class Stats {
+        private final int depth;
+        private final int highWatermark;
+        private final int capacity;
+        private final long overflowed;
+
+        public Stats(int depth, int highWatermark, int capacity, long overflowed) {
+            this.depth = depth;
+            this.highWatermark = highWatermark;
+            this.capacity = capacity;
+            this.overflowed = overflowed;
+        }
+
+        /**
+         * Returns how many votes were waiting.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the most votes that have ever been waiting at once.
+         */
+        public int getHighWatermark() {
+            return highWatermark;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Returns how many votes did not fit into the queue.
+         */
+        public long getOverflowed() {
+            return overflowed;
+        }
+
+        @Override
+        public String toString() {
+            return "depth=" + depth + ", highWatermark=" + highWatermark + ", capacity=" + capacity +
+                    ", overflowed=" + overflowed;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import com.vexsoftware.votifier.model.Vote;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * The compact binary format for votes sent over plugin messaging.
+ * <p>
+ * A message starts with a magic number and a version byte, followed by the number of votes. Each vote is its service
+ * name, username, address and timestamp as UTF-8, then its additional data as raw bytes. Every field is prefixed with
+ * a varint of its length plus one, where zero stands for a missing field.
+ * <p>
+ * Version 2 puts a vote ID, as a varint, in front of each vote. The backend server replies to such a message with an
+ * acknowledgement: its own magic number and a version byte, followed by the number of IDs and the IDs themselves.
+ * <p>
+ * The first byte of the magic number never appears in UTF-8, so a message in this format can't be mistaken for the
+ * legacy format, which is JSON.
+ */
+public final class PluginMessageVoteCodec {
+    private static final byte[] MAGIC = {(byte) 0xF5, 'N', 'V'};
+    private static final byte[] ACK_MAGIC = {(byte) 0xF5, 'N', 'A'};
+    private static final byte VERSION = 1;
+    private static final byte VERSION_WITH_IDS = 2;
+    private static final byte ACK_VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    /**
+     * The most a message adds on top of its encoded votes: the header and the vote count.
+     */
+    public static final int MAX_OVERHEAD = HEADER_SIZE + 5;
+
+    private PluginMessageVoteCodec() {
+    }
+
+    /**
+     * Returns whether {@code message} starts like a message in the binary format, of any version.
+     */
+    public static boolean isBinary(byte[] message) {
+        return startsWith(message, MAGIC);
+    }
+
+    /**
+     * Returns whether {@code message} is an acknowledgement sent back by a backend server.
+     */
+    public static boolean isAck(byte[] message) {
+        return startsWith(message, ACK_MAGIC);
+    }
+
+    private static boolean startsWith(byte[] message, byte[] magic) {
+        if (message.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (message[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] encode(Vote vote) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeHeader(out, VERSION, 1);
+        writeVote(out, vote);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a single vote that the backend server should acknowledge under {@code id}.
+     */
+    public static byte[] encode(Vote vote, long id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeHeader(out, VERSION_WITH_IDS, 1);
+        writeVarLong(out, id);
+        writeVote(out, vote);
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(Collection<Vote> votes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + votes.size() * 64);
+        writeHeader(out, VERSION, votes.size());
+        for (Vote vote : votes) {
+            writeVote(out, vote);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a single vote without a header, to be put into a message with {@link #frame}.
+     */
+    public static byte[] encodeRecord(Vote vote) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVote(out, vote);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a single vote and its ID without a header, to be put into a message with {@link #frame}.
+     */
+    public static byte[] encodeRecord(Vote vote, long id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarLong(out, id);
+        writeVote(out, vote);
+        return out.toByteArray();
+    }
+
+    /**
+     * Puts votes encoded with {@link #encodeRecord} into one message.
+     *
+     * @param withIds whether the records were encoded with their IDs
+     */
+    public static byte[] frame(List<byte[]> records, boolean withIds) {
+        int size = MAX_OVERHEAD;
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        writeHeader(out, withIds ? VERSION_WITH_IDS : VERSION, records.size());
+        for (byte[] record : records) {
+            out.write(record, 0, record.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the acknowledgement of the votes with the given IDs.
+     */
+    public static byte[] encodeAck(long[] ids) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + 5 + ids.length * 3);
+        out.write(ACK_MAGIC, 0, ACK_MAGIC.length);
+        out.write(ACK_VERSION);
+        writeVarInt(out, ids.length);
+        for (long id : ids) {
+            writeVarLong(out, id);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, byte version, int count) {
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(version);
+        writeVarInt(out, count);
+    }
+
+    private static void writeVote(ByteArrayOutputStream out, Vote vote) {
+        writeString(out, vote.getServiceName());
+        writeString(out, vote.getUsername());
+        writeString(out, vote.getAddress());
+        writeString(out, vote.getTimeStamp());
+        writeBytes(out, vote.getAdditionalData());
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, value.length + 1);
+            out.write(value, 0, value.length);
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Decodes a message in the binary format.
+     *
+     * @throws IllegalArgumentException if the message is cut short or malformed, or its version is not supported
+     */
+    public static List<Vote> decode(byte[] message) {
+        return decode(message, id -> {
+        });
+    }
+
+    /**
+     * Decodes a message in the binary format, and passes the ID of each vote to {@code ids} in order. Messages of the
+     * first version have no IDs.
+     *
+     * @throws IllegalArgumentException if the message is cut short or malformed, or its version is not supported
+     */
+    public static List<Vote> decode(byte[] message, LongConsumer ids) {
+        if (!isBinary(message)) {
+            throw new IllegalArgumentException("Not a binary vote message");
+        }
+        byte version = message[MAGIC.length];
+        if (version != VERSION && version != VERSION_WITH_IDS) {
+            throw new IllegalArgumentException("Unsupported binary vote message version " + version);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(message, HEADER_SIZE, message.length - HEADER_SIZE);
+        try {
+            int count = readVarInt(in);
+            // Each vote takes at least five bytes, which bounds what a corrupt count can make us allocate.
+            if (count < 0 || count > in.remaining() / 5) {
+                throw new IllegalArgumentException("Invalid vote count " + count);
+            }
+            List<Vote> votes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (version == VERSION_WITH_IDS) {
+                    ids.accept(readVarLong(in));
+                }
+                votes.add(new Vote(readString(in), readString(in), readString(in), readString(in), readBytes(in)));
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException(in.remaining() + " unexpected byte(s) after the last vote");
+            }
+            return votes;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Binary vote message is cut short", e);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.get(value);
+        return value;
+    }
+
+    // Returns -1 for a missing field.
+    private static int readLength(ByteBuffer in) {
+        int length = readVarInt(in) - 1;
+        if (length < -1) {
+            throw new IllegalArgumentException("Invalid field length");
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+
+    /**
+     * Decodes an acknowledgement into the IDs of the votes it acknowledges.
+     *
+     * @throws IllegalArgumentException if the acknowledgement is cut short or malformed, or its version is not
+     *                                  supported
+     */
+    public static long[] decodeAck(byte[] message) {
+        if (!isAck(message)) {
+            throw new IllegalArgumentException("Not a vote acknowledgement");
+        }
+        if (message[ACK_MAGIC.length] != ACK_VERSION) {
+            throw new IllegalArgumentException("Unsupported vote acknowledgement version " + message[ACK_MAGIC.length]);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(message, HEADER_SIZE, message.length - HEADER_SIZE);
+        try {
+            int count = readVarInt(in);
+            if (count < 0 || count > in.remaining()) {
+                throw new IllegalArgumentException("Invalid ID count " + count);
+            }
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = readVarLong(in);
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException(in.remaining() + " unexpected byte(s) after the last ID");
+            }
+            return ids;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Vote acknowledgement is cut short", e);
+        }
+    }
+}
@@ -103,7 +103,7 @@ public class FileVoteCache extends MemoryVoteCache {
     }
 
     private Collection<VoteWithRecordedTimestamp> readVotes(JsonArray voteArray) {
-        Collection<VoteWithRecordedTimestamp> votes = new HashSet<>(voteArray.size());
+        Collection<VoteWithRecordedTimestamp> votes = new LinkedHashSet<>(voteArray.size());
         for (int i = 0; i < voteArray.size(); i++) {
             JsonObject voteObject = voteArray.get(i).getAsJsonObject();
             VoteWithRecordedTimestamp v = new VoteWithRecordedTimestamp(voteObject);
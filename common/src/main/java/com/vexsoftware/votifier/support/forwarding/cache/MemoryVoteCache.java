@@ -50,7 +50,7 @@ public class MemoryVoteCache implements VoteCache {
         if (server == null) throw new NullPointerException();
         cacheLock.lock();
         try {
-            voteCache.computeIfAbsent(server, k -> new HashSet<>()).add(new VoteWithRecordedTimestamp(v));
+            voteCache.computeIfAbsent(server, k -> new LinkedHashSet<>()).add(new VoteWithRecordedTimestamp(v));
         } finally {
             cacheLock.unlock();
         }
@@ -61,7 +61,7 @@ public class MemoryVoteCache implements VoteCache {
         if (player == null) throw new NullPointerException();
         cacheLock.lock();
         try {
-            playerVoteCache.computeIfAbsent(player, k -> new HashSet<>()).add(new VoteWithRecordedTimestamp(v));
+            playerVoteCache.computeIfAbsent(player, k -> new LinkedHashSet<>()).add(new VoteWithRecordedTimestamp(v));
         } finally {
             cacheLock.unlock();
         }
@@ -74,7 +74,7 @@ public class MemoryVoteCache implements VoteCache {
         try {
             Collection<VoteWithRecordedTimestamp> playerVotes = playerVoteCache.remove(player);
             if (playerVotes != null) {
-                return new HashSet<>(playerVotes);
+                return new ArrayList<>(playerVotes);
             } else {
                 return Collections.emptySet();
             }
@@ -90,7 +90,7 @@ public class MemoryVoteCache implements VoteCache {
         try {
             Collection<VoteWithRecordedTimestamp> serverVotes = voteCache.remove(server);
             if (serverVotes != null) {
-                return new HashSet<>(serverVotes);
+                return new ArrayList<>(serverVotes);
             } else {
                 return Collections.emptySet();
             }
@@ -99,6 +99,51 @@ public class MemoryVoteCache implements VoteCache {
         }
     }
 
+    @Override
+    public Collection<Vote> evict(String server, int max) {
+        if (server == null) throw new NullPointerException();
+        cacheLock.lock();
+        try {
+            Collection<VoteWithRecordedTimestamp> serverVotes = voteCache.get(server);
+            if (serverVotes == null) {
+                return Collections.emptySet();
+            }
+            List<Vote> evicted = new ArrayList<>(Math.min(max, serverVotes.size()));
+            Iterator<VoteWithRecordedTimestamp> it = serverVotes.iterator();
+            while (evicted.size() < max && it.hasNext()) {
+                evicted.add(it.next());
+                it.remove();
+            }
+            if (serverVotes.isEmpty()) {
+                voteCache.remove(server);
+            }
+            return evicted;
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    @Override
+    public void returnToCache(List<Vote> votes, String server) {
+        if (server == null) throw new NullPointerException();
+        cacheLock.lock();
+        try {
+            Collection<VoteWithRecordedTimestamp> returned = new LinkedHashSet<>();
+            for (Vote vote : votes) {
+                // Votes that came out of this cache keep the time they were first recorded.
+                returned.add(vote instanceof VoteWithRecordedTimestamp ? (VoteWithRecordedTimestamp) vote :
+                        new VoteWithRecordedTimestamp(vote));
+            }
+            Collection<VoteWithRecordedTimestamp> serverVotes = voteCache.get(server);
+            if (serverVotes != null) {
+                returned.addAll(serverVotes);
+            }
+            voteCache.put(server, returned);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
     public void sweep() {
         cacheLock.lock();
         try {
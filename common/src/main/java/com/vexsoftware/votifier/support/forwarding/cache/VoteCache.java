@@ -4,6 +4,7 @@ import com.vexsoftware.votifier.model.Vote;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a method of caching votes for forwarding to a server that it was not previously capable of sending.
@@ -43,6 +44,31 @@ public interface VoteCache {
      */
     Collection<Vote> evict(String server);
 
+    /**
+     * Evicts the oldest votes cached under a server, up to a limit. Caches that can't evict part of their votes evict
+     * all of them, as {@link #evict(String)} does.
+     *
+     * @param server Server name of which to evict the votes from the cache
+     * @param max    The most votes to evict
+     * @return The evicted votes, oldest first
+     */
+    default Collection<Vote> evict(String server, int max) {
+        return evict(server);
+    }
+
+    /**
+     * Puts votes that were evicted but could not be sent back into the cache, ahead of the votes still cached under
+     * the server so that they keep their place.
+     *
+     * @param votes  Votes to put back, oldest first
+     * @param server Server name to put the votes back under
+     */
+    default void returnToCache(List<Vote> votes, String server) {
+        for (Vote vote : votes) {
+            addToCache(vote, server);
+        }
+    }
+
     /**
      * Evicts all votes from the vote cache for a specific player not assigned to a server and returns a collection of
      * vote objects
@@ -0,0 +1,102 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks whether a backend server is worth connecting to.
+ * <p>
+ * After {@code failureThreshold} failures in a row the breaker opens, and no connections should be made until the
+ * backoff delay it returns has passed. Then a single probe connection is allowed: if it gets through the handshake,
+ * the breaker closes again, otherwise it reopens with twice the delay. Delays are jittered, so that proxies that lost
+ * a backend at the same moment don't all come back at once.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private int opens;
+
+    CircuitBreaker(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis) {
+        if (failureThreshold < 1 || baseBackoffMillis < 1 || maxBackoffMillis < baseBackoffMillis) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.failureThreshold = failureThreshold;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * Returns how many times the breaker has opened since a vote last got through.
+     */
+    int getConsecutiveOpens() {
+        return opens;
+    }
+
+    /**
+     * Records a failed connection or vote.
+     *
+     * @return how long to wait before probing the server, if the breaker opened; otherwise -1
+     */
+    long onFailure() {
+        if (state == State.OPEN) {
+            return -1;
+        }
+        failures++;
+        if (state == State.CLOSED && failures < failureThreshold) {
+            return -1;
+        }
+
+        state = State.OPEN;
+        long backoff = baseBackoffMillis << Math.min(opens, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+        opens++;
+        // Wait somewhere between half and all of the backoff.
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Lets a single probe connection through, once the backoff delay has passed.
+     */
+    void allowProbe() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+        }
+    }
+
+    /**
+     * Records a connection that got through the handshake. A probe that does so closes the breaker, but the server is
+     * only given one more chance until a vote actually succeeds.
+     */
+    void onConnected() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            failures = failureThreshold - 1;
+        }
+    }
+
+    /**
+     * Records a vote that was delivered successfully.
+     */
+    void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        opens = 0;
+    }
+}
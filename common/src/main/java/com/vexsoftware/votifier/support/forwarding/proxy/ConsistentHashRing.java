@@ -0,0 +1,110 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable consistent-hash ring that assigns keys to named nodes.
+ * <p>
+ * Each node is placed on the ring at {@code virtualNodes} points, derived only from its name. A key belongs to the
+ * node of the first point at or after the key's hash, and its replicas to the next distinct nodes going around the
+ * ring. Since the points of a node never depend on the other nodes, adding or removing a node only moves the keys that
+ * node gains or loses.
+ *
+ * @param <T> the type of the nodes
+ */
+public final class ConsistentHashRing<T> {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final List<T> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodes        the nodes by name; names must be unique and should stay the same across restarts
+     * @param virtualNodes how many points each node gets on the ring
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Each node needs at least one virtual node");
+        }
+        this.nodes = new ArrayList<>(nodes.size());
+
+        int count = nodes.size() * virtualNodes;
+        long[] unsortedPoints = new long[count];
+        int i = 0;
+        for (Map.Entry<String, T> entry : nodes.entrySet()) {
+            for (int v = 0; v < virtualNodes; v++) {
+                unsortedPoints[i++] = hash(entry.getKey() + "#" + v);
+            }
+            this.nodes.add(entry.getValue());
+        }
+
+        // Sort the points together with their owners by sorting indices, then unpack them into parallel arrays.
+        Integer[] order = new Integer[count];
+        for (int j = 0; j < count; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int j = 0; j < count; j++) {
+            points[j] = unsortedPoints[order[j]];
+            owners[j] = order[j] / virtualNodes;
+        }
+    }
+
+    /**
+     * Returns the nodes that own {@code key}: its primary node first, then up to {@code replicas - 1} other nodes.
+     */
+    public List<T> lookup(String key, int replicas) {
+        if (points.length == 0) {
+            return Collections.emptyList();
+        }
+        int wanted = Math.min(replicas, nodes.size());
+        if (wanted == 1) {
+            return Collections.singletonList(nodes.get(owners[firstPointFor(hash(key))]));
+        }
+
+        List<T> result = new ArrayList<>(wanted);
+        boolean[] seen = new boolean[nodes.size()];
+        for (int i = firstPointFor(hash(key)); result.size() < wanted; i = (i + 1) % points.length) {
+            int owner = owners[i];
+            if (!seen[owner]) {
+                seen[owner] = true;
+                result.add(nodes.get(owner));
+            }
+        }
+        return result;
+    }
+
+    private int firstPointFor(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the UTF-8 bytes, with the MurmurHash3 finalizer to spread similar names across the ring.
+     * This must never change, or keys would move to other nodes after an update.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
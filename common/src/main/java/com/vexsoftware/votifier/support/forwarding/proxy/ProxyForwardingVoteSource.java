@@ -1,117 +1,273 @@
 package com.vexsoftware.votifier.support.forwarding.proxy;
 
 import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.support.forwarding.BoundedSendQueue;
 import com.vexsoftware.votifier.support.forwarding.ForwardingVoteSource;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
+import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierProtocol2ClientHandler;
+import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierProtocol2ClientInitializer;
 import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierProtocol2Encoder;
-import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierProtocol2HandshakeHandler;
-import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierResponseHandler;
+import com.vexsoftware.votifier.support.forwarding.proxy.client.VotifierSessionHandler;
 import com.vexsoftware.votifier.model.Vote;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.ReadTimeoutException;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.Key;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class ProxyForwardingVoteSource implements ForwardingVoteSource {
     private static final int MAX_RETRIES = 5;
+    /**
+     * How many connections may be open to a single backend server at once, whether they are sending votes or idle.
+     */
+    private static final int MAX_CONNECTIONS_PER_SERVER = 4;
+    /**
+     * How long to wait for a response before the round trip time to a server is known. After that, the timeout follows
+     * the round trip time, between the minimum and maximum.
+     */
+    private static final long RESPONSE_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_RESPONSE_TIMEOUT_MILLIS = 1000;
+    private static final long MAX_RESPONSE_TIMEOUT_MILLIS = 10000;
+    /**
+     * How many failures in a row make us stop connecting to a server for a while, starting at the base backoff and
+     * doubling up to the maximum while the server stays unreachable.
+     */
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    /**
+     * How long an idle connection is kept by default before it is replaced. This is a second below the default read
+     * timeout of the backend servers, so that they don't close it first.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 4000;
+    /**
+     * Vote rates are averaged over roughly this many seconds to decide how many idle connections to keep.
+     */
+    private static final double RATE_WINDOW_SECONDS = 60;
+    private static final double VOTES_PER_SECOND_PER_IDLE_CONNECTION = 2;
+    /**
+     * Below about one vote every five minutes, no idle connections are kept.
+     */
+    private static final double MIN_RATE_FOR_IDLE_CONNECTIONS = 1.0 / 300;
+
     private final VotifierPlugin plugin;
     private final Supplier<Bootstrap> nettyBootstrap;
     private final List<BackendServer> backendServers;
+    private final List<ConnectionPool> pools;
     private final VoteCache voteCache;
-
-    private static final StringDecoder STRING_DECODER = new StringDecoder(StandardCharsets.US_ASCII);
+    private volatile Sharding sharding;
+    private volatile boolean halted;
+    private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
 
     public ProxyForwardingVoteSource(VotifierPlugin plugin, Supplier<Bootstrap> nettyBootstrap, List<BackendServer> backendServers, VoteCache voteCache) {
+        this(plugin, nettyBootstrap, backendServers, voteCache, null);
+    }
+
+    /**
+     * @param outboxDirectory where to keep a {@link VoteOutbox} for each backend server, or {@code null} to keep votes
+     *                        that are still being sent in memory only
+     */
+    public ProxyForwardingVoteSource(VotifierPlugin plugin, Supplier<Bootstrap> nettyBootstrap, List<BackendServer> backendServers,
+                                     VoteCache voteCache, Path outboxDirectory) {
         this.plugin = plugin;
         this.nettyBootstrap = nettyBootstrap;
         this.backendServers = backendServers;
         this.voteCache = voteCache;
+        this.pools = new ArrayList<>(backendServers.size());
+        for (BackendServer server : backendServers) {
+            VoteOutbox outbox = null;
+            if (outboxDirectory != null) {
+                Path file = outboxDirectory.resolve(server.name.replaceAll("[^A-Za-z0-9._-]", "_") + ".log");
+                try {
+                    outbox = VoteOutbox.open(file, r -> plugin.getScheduler().onPool(r));
+                } catch (IOException e) {
+                    plugin.getPluginLogger().error("Unable to open the vote outbox " + file + ". Votes for " +
+                            server.name + " will only be kept in memory until they are sent.", e);
+                }
+            }
+            pools.add(new ConnectionPool(server, outbox));
+        }
+
+        for (ConnectionPool pool : pools) {
+            if (pool.outbox != null && !pool.outbox.getRecovered().isEmpty()) {
+                plugin.getPluginLogger().info("Resending " + pool.outbox.getRecovered().size() + " vote(s) to " +
+                        pool.server.name + " that had not been delivered before the last shutdown.");
+                // Only as many as fit into the queue are read back now; the rest wait in the outbox.
+                for (long id : pool.outbox.getRecovered()) {
+                    pool.outbox.park(id);
+                }
+                pool.refill();
+            }
+        }
+    }
+
+    /**
+     * Sends each vote only to the backend servers that own its voter, instead of to every server. Owners are looked up
+     * by lowercased username on a {@link ConsistentHashRing} of the servers' names, so a voter keeps the same servers
+     * for as long as those stay configured.
+     *
+     * @param virtualNodes how many points each server gets on the ring
+     * @param replicas     how many servers each vote is sent to
+     */
+    public void setSharding(int virtualNodes, int replicas) {
+        if (replicas < 1) {
+            throw new IllegalArgumentException("Votes must be sent to at least one server");
+        }
+        Map<String, ConnectionPool> byName = new LinkedHashMap<>();
+        for (ConnectionPool pool : pools) {
+            byName.put(pool.server.name, pool);
+        }
+        this.sharding = new Sharding(new ConsistentHashRing<>(byName, virtualNodes), replicas);
+    }
+
+    /**
+     * Sends every vote to every backend server again. This is the default.
+     */
+    public void setBroadcast() {
+        this.sharding = null;
     }
 
     @Override
     public void forward(Vote v) {
-        for (final BackendServer server : backendServers) {
-            forwardVote(server, v, 0);
-        }
-    }
-
-    private int fib(int t) {
-        if (t <= 1) return 1;
-        return fib(t - 2) + fib(t - 1);
-    }
-
-    private void forwardVote(final BackendServer server, final Vote v, final int tries) {
-        nettyBootstrap.get()
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel channel) {
-                        channel.pipeline().addLast(new DelimiterBasedFrameDecoder(256, true, Delimiters.lineDelimiter()));
-                        channel.pipeline().addLast(new ReadTimeoutHandler(5, TimeUnit.SECONDS));
-                        channel.pipeline().addLast(STRING_DECODER);
-                        channel.pipeline().addLast(new VotifierProtocol2Encoder(server.key));
-                        channel.pipeline().addLast(new VotifierProtocol2HandshakeHandler(v, new VotifierResponseHandler() {
-                            @Override
-                            public void onSuccess() {
-                                if (plugin.isDebug()) {
-                                    plugin.getPluginLogger().info("Successfully forwarded vote " + v + " to " + server.address + ".");
-                                }
-                            }
-
-                            @Override
-                            public void onFailure(Throwable error) {
-                                handleFailure(server, v, error, tries);
-                            }
-                        }, plugin));
-                    }
-                })
-                .connect(server.address)
-                .addListener((ChannelFutureListener) future -> {
-                    if (!future.isSuccess()) {
-                        handleFailure(server, v, future.cause(), tries);
-                    }
-                });
+        Sharding sharding = this.sharding;
+        List<ConnectionPool> targets = sharding == null ? pools :
+                sharding.ring.lookup(String.valueOf(v.getUsername()).toLowerCase(Locale.ROOT), sharding.replicas);
+        for (final ConnectionPool pool : targets) {
+            if (pool.outbox == null) {
+                pool.submit(new PendingVote(v, -1), true);
+                continue;
+            }
+            pool.outbox.append(v).whenComplete((id, error) -> {
+                if (error != null) {
+                    plugin.getPluginLogger().error("Unable to write a vote for " + pool.server.name +
+                            " to its outbox. It will be sent, but will be lost if the proxy stops first.", error);
+                    pool.submit(new PendingVote(v, -1), true);
+                } else {
+                    pool.submit(new PendingVote(v, id), true);
+                }
+            });
+        }
     }
 
-    private void handleFailure(final BackendServer server, final Vote v, Throwable cause, final int tries) {
-        int nextDelay = fib(tries + 1);
-        boolean willRetry = tries < MAX_RETRIES;
+    private void logFailure(ConnectionPool pool, Throwable cause, long backoffMillis, int waiting) {
+        String msg = "Unable to send vote to " + pool.server.address + ".";
+        if (backoffMillis >= 0) {
+            msg += " Holding " + waiting + " vote(s) and trying again in " +
+                    Math.max(1, Math.round(backoffMillis / 1000.0)) + " second(s).";
+        }
 
-        String msg = "Unable to send vote to " + server.address + ".";
-        if (willRetry) {
-            msg += " Will retry sending in " + nextDelay + " second(s).";
+        if (plugin.isDebug()) {
+            plugin.getPluginLogger().error(msg, cause);
         } else {
+            plugin.getPluginLogger().error(msg);
+        }
+    }
+
+    private void giveUp(ConnectionPool pool, List<PendingVote> expired, int spilled) {
+        String msg = "Unable to send " + (expired.size() + spilled) + " vote(s) to " + pool.server.address + " after " +
+                MAX_RETRIES + " retries.";
+        if (spilled > 0) {
+            msg += " " + spilled + " of them are kept in the outbox, and will be sent once the server takes votes again.";
+        }
+        if (!expired.isEmpty()) {
             if (voteCache == null) {
-                msg += " This vote will be lost!";
+                msg += " " + expired.size() + " of them will be lost!";
             } else {
-                voteCache.addToCache(v, server.name);
+                for (PendingVote pending : expired) {
+                    voteCache.addToCache(pending.vote, pool.server.name);
+                    if (pending.outboxId >= 0) {
+                        pool.outbox.ack(pending.outboxId);
+                    }
+                }
+                msg += " " + expired.size() + " of them have been cached.";
             }
         }
+        plugin.getPluginLogger().error(msg);
+    }
 
-        if (plugin.isDebug()) {
-            plugin.getPluginLogger().error(msg, cause);
-        } else {
-            plugin.getPluginLogger().error(msg);
+    /**
+     * Handles a vote that did not fit into its server's queue.
+     */
+    private void overflowed(ConnectionPool pool, PendingVote vote, BoundedSendQueue.OverflowPolicy policy, boolean firstOverflow) {
+        boolean cached = policy == BoundedSendQueue.OverflowPolicy.SPILL && voteCache != null;
+        if (cached) {
+            voteCache.addToCache(vote.vote, pool.server.name);
+        }
+        if (vote.outboxId >= 0) {
+            pool.outbox.ack(vote.outboxId);
         }
 
-        if (willRetry) {
-            plugin.getScheduler().delayedOnPool(() -> forwardVote(server, v, tries + 1), nextDelay, TimeUnit.SECONDS);
+        if (firstOverflow) {
+            plugin.getPluginLogger().warn("Too many votes are waiting to be sent to " + pool.server.name + ". " +
+                    (cached ? "Further votes will be cached" : "Votes will be dropped") + " until it catches up.");
+        } else if (!cached && plugin.isDebug()) {
+            plugin.getPluginLogger().warn("Dropped vote " + vote.vote + " for " + pool.server.name + ".");
+        }
+    }
+
+    /**
+     * Changes how many votes may wait for each backend server, and what happens to votes that don't fit. Votes that
+     * spill over go to the vote cache, or stay in the outbox until the server catches up, if there is one.
+     */
+    public void setQueueLimits(int capacity, BoundedSendQueue.OverflowPolicy policy) {
+        for (ConnectionPool pool : pools) {
+            synchronized (pool) {
+                pool.queue.setLimits(capacity, policy);
+            }
         }
     }
 
+    /**
+     * Changes how long connections are kept open without a vote to send, or turns idle connections off if 0. This has
+     * to be shorter than the read timeout of the backend servers, or they will close idle connections first. Only
+     * connections opened from now on are affected.
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("The idle timeout must not be negative");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Returns the queue counters of each backend server, by name.
+     */
+    public Map<String, BoundedSendQueue.Stats> getQueueStats() {
+        Map<String, BoundedSendQueue.Stats> stats = new LinkedHashMap<>();
+        for (ConnectionPool pool : pools) {
+            synchronized (pool) {
+                stats.put(pool.server.name, pool.queue.getStats());
+            }
+        }
+        return stats;
+    }
+
     @Override
     public void halt() {
-
+        halted = true;
+        for (ConnectionPool pool : pools) {
+            pool.closeIdle();
+            if (pool.outbox != null) {
+                try {
+                    pool.outbox.close();
+                } catch (IOException e) {
+                    plugin.getPluginLogger().error("Unable to close the vote outbox for " + pool.server.name + ".", e);
+                }
+            }
+        }
     }
 
     public static class BackendServer {
@@ -125,4 +281,458 @@ public class ProxyForwardingVoteSource implements ForwardingVoteSource {
             this.key = key;
         }
     }
+
+    private static final class Sharding {
+        private final ConsistentHashRing<ConnectionPool> ring;
+        private final int replicas;
+
+        private Sharding(ConsistentHashRing<ConnectionPool> ring, int replicas) {
+            this.ring = ring;
+            this.replicas = replicas;
+        }
+    }
+
+    private static final class PendingVote {
+        private final Vote vote;
+        private final long outboxId;
+        // Guarded by the lock of the pool the vote is waiting in.
+        private int tries;
+
+        /**
+         * @param outboxId the ID of the vote in its server's outbox, or -1 if it isn't in one
+         */
+        private PendingVote(Vote vote, long outboxId) {
+            this.vote = vote;
+            this.outboxId = outboxId;
+        }
+    }
+
+    /**
+     * The connections to one backend server, and the votes waiting for one of them.
+     * <p>
+     * Every connection is made from one {@link Bootstrap} set up for the server, whose pipeline shares the handlers that
+     * hold no state.
+     * <p>
+     * Connections that have received a challenge but have no vote to send are kept idle, so that the next vote can be
+     * sent without first waiting for a connection and a greeting. How many are kept follows the recent vote rate.
+     * <p>
+     * Failures go through a {@link CircuitBreaker}: while it is open, votes just wait in the queue. Each time it opens
+     * again without a vote getting through in between, every waiting vote uses up one of its retries.
+     */
+    private final class ConnectionPool {
+        private final BackendServer server;
+        private final VoteOutbox outbox;
+        private final Bootstrap bootstrap;
+        private final BoundedSendQueue<PendingVote> queue = new BoundedSendQueue<>(BoundedSendQueue.DEFAULT_CAPACITY,
+                BoundedSendQueue.OverflowPolicy.SPILL);
+        // Votes that run out of retries or spill over but are safe in the outbox are parked there, so that memory only
+        // holds the votes in the queue. They are read back by refill() once the queue has room again.
+        private boolean refillScheduled;
+        private boolean overflowing;
+        private final Deque<Connection> idle = new ArrayDeque<>();
+        private final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, BASE_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+        private final RttEstimator rtt = new RttEstimator(RESPONSE_TIMEOUT_MILLIS, MIN_RESPONSE_TIMEOUT_MILLIS,
+                MAX_RESPONSE_TIMEOUT_MILLIS);
+        private int open;
+        private int connecting;
+        private double rate;
+        private long rateUpdatedAt = System.nanoTime();
+
+        private ConnectionPool(BackendServer server, VoteOutbox outbox) {
+            this.server = server;
+            this.outbox = outbox;
+            this.bootstrap = nettyBootstrap.get()
+                    .remoteAddress(server.address)
+                    .handler(new VotifierProtocol2ClientInitializer(plugin, new VotifierProtocol2Encoder(server.key),
+                            rtt::getTimeoutMillis, () -> idleTimeoutMillis, () -> new Connection(this)));
+        }
+
+        /**
+         * @param fresh whether the vote just arrived, rather than coming back from the outbox; only those count towards
+         *              the vote rate
+         */
+        void submit(PendingVote vote, boolean fresh) {
+            Connection connection = null;
+            boolean connect = false;
+            PendingVote overflow = null;
+            BoundedSendQueue.OverflowPolicy policy = null;
+            boolean firstOverflow = false;
+            synchronized (this) {
+                if (fresh) {
+                    long now = System.nanoTime();
+                    rate = rateAt(now) + 1 / RATE_WINDOW_SECONDS;
+                    rateUpdatedAt = now;
+                }
+
+                if (breaker.getState() == CircuitBreaker.State.CLOSED) {
+                    // Prefer the connection that went idle most recently; the others may then expire.
+                    connection = idle.pollLast();
+                }
+                if (connection != null) {
+                    connection.start(vote);
+                } else {
+                    overflow = queue.offer(vote);
+                    if (overflow != null) {
+                        policy = queue.getPolicy();
+                        firstOverflow = !overflowing;
+                        overflowing = true;
+                        if (policy == BoundedSendQueue.OverflowPolicy.SPILL && voteCache == null && overflow.outboxId >= 0) {
+                            outbox.park(overflow.outboxId);
+                            overflow = null;
+                        }
+                    }
+                    connect = reserveConnection(false);
+                }
+            }
+
+            if (connection != null) {
+                connection.handler.send(vote.vote);
+            } else if (connect) {
+                connect();
+            }
+            if (overflow != null) {
+                overflowed(this, overflow, policy, firstOverflow);
+            } else if (firstOverflow) {
+                plugin.getPluginLogger().warn("Too many votes are waiting to be sent to " + server.name + ". Further " +
+                        "votes will be kept in the outbox until it catches up.");
+            }
+        }
+
+        private boolean hasParked() {
+            return outbox != null && outbox.getParkedCount() > 0;
+        }
+
+        /**
+         * Decides whether parked votes should be read back, and if so, leaves that to the caller. Must be called while
+         * holding the lock.
+         */
+        private boolean reserveRefill() {
+            if (refillScheduled || halted || queue.remainingCapacity() == 0 || !hasParked()) {
+                return false;
+            }
+            refillScheduled = true;
+            return true;
+        }
+
+        /**
+         * Queues parked votes again, as far as the queue has room. This reads from the outbox, so it must not run on an
+         * event loop.
+         */
+        void refill() {
+            List<Long> ids;
+            synchronized (this) {
+                refillScheduled = false;
+                if (halted) {
+                    return;
+                }
+                ids = outbox.unpark(queue.remainingCapacity());
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                Vote vote;
+                try {
+                    vote = outbox.getPending(ids.get(i));
+                } catch (IOException e) {
+                    plugin.getPluginLogger().error("Unable to read votes for " + server.name + " back from the " +
+                            "outbox. They will be tried again later.", e);
+                    for (; i < ids.size(); i++) {
+                        outbox.park(ids.get(i));
+                    }
+                    return;
+                }
+                // Votes acknowledged in the meantime are gone.
+                if (vote != null) {
+                    submit(new PendingVote(vote, ids.get(i)), false);
+                }
+            }
+        }
+
+        private double rateAt(long now) {
+            return rate * Math.exp(-(now - rateUpdatedAt) / 1e9 / RATE_WINDOW_SECONDS);
+        }
+
+        private int idleTarget() {
+            double currentRate = rateAt(System.nanoTime());
+            if (halted || idleTimeoutMillis == 0 || currentRate < MIN_RATE_FOR_IDLE_CONNECTIONS) {
+                return 0;
+            }
+            return (int) Math.min(MAX_CONNECTIONS_PER_SERVER, Math.ceil(currentRate / VOTES_PER_SECOND_PER_IDLE_CONNECTION));
+        }
+
+        /**
+         * Decides whether to open another connection, either for the votes waiting in the queue, or to keep enough
+         * idle connections around. Must be called while holding the lock.
+         */
+        private boolean reserveConnection(boolean toKeepIdle) {
+            if (open >= MAX_CONNECTIONS_PER_SERVER) {
+                return false;
+            }
+            boolean wanted;
+            switch (breaker.getState()) {
+                case OPEN:
+                    return false;
+                case HALF_OPEN:
+                    // Only a single probe, and only once there is a vote to send with it.
+                    wanted = connecting == 0 && (!queue.isEmpty() || hasParked());
+                    break;
+                default:
+                    wanted = queue.size() > connecting || toKeepIdle && idle.size() + connecting < idleTarget();
+                    break;
+            }
+            if (wanted) {
+                open++;
+                connecting++;
+            }
+            return wanted;
+        }
+
+        private void connect() {
+            bootstrap.connect().addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    // The session handler is missing if the channel could not even be registered.
+                    VotifierSessionHandler connection =
+                            future.channel().attr(VotifierProtocol2ClientInitializer.SESSION_HANDLER).get();
+                    (connection != null ? connection : new Connection(this)).onClosed(future.cause());
+                }
+            });
+        }
+
+        /**
+         * Handles a failed vote, or a connection that failed before it could send one.
+         *
+         * @param failed the vote that failed, or {@code null} if it was the connection
+         */
+        void onFailure(PendingVote failed, Throwable cause) {
+            List<PendingVote> expired = new ArrayList<>();
+            int spilledNow = 0;
+            long backoff;
+            int waiting;
+            boolean connect;
+            synchronized (this) {
+                if (cause instanceof ReadTimeoutException) {
+                    rtt.onTimeout();
+                }
+                if (failed != null) {
+                    queue.addFirst(failed);
+                }
+
+                backoff = breaker.onFailure();
+                if (backoff >= 0 && breaker.getConsecutiveOpens() > 1) {
+                    // Nothing got through since the breaker last opened, so the server counts as still down.
+                    for (PendingVote pending : queue) {
+                        pending.tries++;
+                    }
+                } else if (failed != null) {
+                    failed.tries++;
+                }
+                for (Iterator<PendingVote> it = queue.iterator(); it.hasNext(); ) {
+                    PendingVote pending = it.next();
+                    if (pending.tries > MAX_RETRIES) {
+                        it.remove();
+                        if (voteCache == null && pending.outboxId >= 0) {
+                            outbox.park(pending.outboxId);
+                            spilledNow++;
+                        } else {
+                            expired.add(pending);
+                        }
+                    }
+                }
+                waiting = queue.size();
+                connect = reserveConnection(false);
+            }
+
+            logFailure(this, cause, backoff, waiting);
+            if (backoff >= 0) {
+                plugin.getScheduler().delayedOnPool(this::probe, (int) backoff, TimeUnit.MILLISECONDS);
+            }
+            if (!expired.isEmpty() || spilledNow > 0) {
+                giveUp(this, expired, spilledNow);
+            }
+            if (connect) {
+                connect();
+            }
+        }
+
+        /**
+         * Puts back a vote that was handed to an idle connection which closed before it could be sent. The server never
+         * saw the vote, so this is not a failure and costs no retry.
+         */
+        void requeue(PendingVote vote) {
+            Connection connection = null;
+            boolean connect = false;
+            synchronized (this) {
+                if (breaker.getState() == CircuitBreaker.State.CLOSED) {
+                    connection = idle.pollLast();
+                }
+                if (connection != null) {
+                    connection.start(vote);
+                } else {
+                    queue.addFirst(vote);
+                    connect = reserveConnection(false);
+                }
+            }
+
+            if (connection != null) {
+                connection.handler.send(vote.vote);
+            } else if (connect) {
+                connect();
+            }
+        }
+
+        private void probe() {
+            boolean connect;
+            synchronized (this) {
+                breaker.allowProbe();
+            }
+            // Votes that ran out of retries while the server was down are parked, so the queue may well be empty.
+            if (outbox != null) {
+                refill();
+            }
+            synchronized (this) {
+                connect = reserveConnection(false);
+            }
+            if (connect) {
+                connect();
+            }
+        }
+
+        void closeIdle() {
+            List<Connection> toClose;
+            synchronized (this) {
+                toClose = new ArrayList<>(idle);
+                idle.clear();
+            }
+            for (Connection connection : toClose) {
+                connection.handler.close();
+            }
+        }
+    }
+
+    /**
+     * Sends votes from a {@link ConnectionPool} over a single connection.
+     */
+    private final class Connection implements VotifierSessionHandler {
+        private final ConnectionPool pool;
+        private VotifierProtocol2ClientHandler handler;
+        private PendingVote current;
+        private long sentAt;
+        private boolean greeted;
+
+        private Connection(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        private void start(PendingVote vote) {
+            current = vote;
+            sentAt = System.nanoTime();
+        }
+
+        @Override
+        public Vote nextVote() {
+            boolean connect = false;
+            boolean refill;
+            synchronized (pool) {
+                if (!greeted) {
+                    greeted = true;
+                    pool.connecting--;
+                    pool.breaker.onConnected();
+                    // If this was a probe, the rest of the queue may now use more connections.
+                    connect = pool.reserveConnection(false);
+                }
+                PendingVote next = pool.queue.poll();
+                if (next != null) {
+                    start(next);
+                } else {
+                    current = null;
+                    pool.overflowing = false;
+                }
+                refill = pool.reserveRefill();
+            }
+            if (refill) {
+                plugin.getScheduler().onPool(pool::refill);
+            }
+            if (connect) {
+                pool.connect();
+            }
+            return current == null ? null : current.vote;
+        }
+
+        @Override
+        public boolean onIdle(VotifierProtocol2ClientHandler connection) {
+            synchronized (pool) {
+                if (pool.idle.size() >= pool.idleTarget()) {
+                    return false;
+                }
+                handler = connection;
+                pool.idle.addLast(this);
+                return true;
+            }
+        }
+
+        @Override
+        public boolean onIdleExpired() {
+            synchronized (pool) {
+                return pool.idle.remove(this);
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            boolean refill;
+            synchronized (pool) {
+                pool.rtt.sample(System.nanoTime() - sentAt);
+                pool.breaker.onSuccess();
+                refill = pool.reserveRefill();
+            }
+            if (current.outboxId >= 0) {
+                pool.outbox.ack(current.outboxId);
+            }
+            if (refill) {
+                plugin.getScheduler().onPool(pool::refill);
+            }
+            if (plugin.isDebug()) {
+                plugin.getPluginLogger().info("Successfully forwarded vote " + current.vote + " to " + pool.server.address + ".");
+            }
+            current = null;
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            if (current != null) {
+                PendingVote failed = current;
+                current = null;
+                pool.onFailure(failed, error);
+            }
+        }
+
+        @Override
+        public void onNotSent(Vote vote) {
+            if (current != null) {
+                PendingVote notSent = current;
+                current = null;
+                pool.requeue(notSent);
+            }
+        }
+
+        @Override
+        public void onClosed(Throwable error) {
+            boolean failedToConnect = !greeted && error != null;
+            boolean connect = false;
+            synchronized (pool) {
+                pool.open--;
+                pool.idle.remove(this);
+                if (!greeted) {
+                    pool.connecting--;
+                }
+                if (!failedToConnect) {
+                    connect = pool.reserveConnection(error == null);
+                }
+            }
+
+            if (failedToConnect) {
+                pool.onFailure(null, error);
+            } else if (connect) {
+                pool.connect();
+            }
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how long to wait for a backend server's response, from the round trip times seen so far.
+ * <p>
+ * This follows the retransmission timeout calculation of RFC 6298: the timeout is the smoothed round trip time plus
+ * four times its variation, kept between a lower and an upper bound. Every timeout doubles it until the next sample.
+ * <p>
+ * Samples must be recorded by one thread at a time; the timeout may be read from any thread.
+ */
+final class RttEstimator {
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    private double smoothedMillis = -1;
+    private double variationMillis;
+    private volatile long timeoutMillis;
+
+    RttEstimator(long initialTimeoutMillis, long minTimeoutMillis, long maxTimeoutMillis) {
+        if (minTimeoutMillis < 1 || maxTimeoutMillis < minTimeoutMillis) {
+            throw new IllegalArgumentException("Invalid timeout bounds");
+        }
+        this.minTimeoutMillis = minTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.timeoutMillis = clamp(initialTimeoutMillis);
+    }
+
+    void sample(long rttNanos) {
+        double rtt = rttNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        if (smoothedMillis < 0) {
+            smoothedMillis = rtt;
+            variationMillis = rtt / 2;
+        } else {
+            variationMillis = (1 - BETA) * variationMillis + BETA * Math.abs(smoothedMillis - rtt);
+            smoothedMillis = (1 - ALPHA) * smoothedMillis + ALPHA * rtt;
+        }
+        timeoutMillis = clamp((long) Math.ceil(smoothedMillis + 4 * variationMillis));
+    }
+
+    void onTimeout() {
+        timeoutMillis = clamp(timeoutMillis * 2);
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, millis));
+    }
+}
@@ -0,0 +1,536 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.util.GsonInst;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the votes that still have to be delivered to one backend server.
+ * <p>
+ * Every vote is appended before it is sent, and an acknowledgement is appended once the server has accepted it. Appends
+ * are group committed: records that arrive while the log is being written are collected, and written and synced
+ * together by the next flush, so one sync covers many votes. When the log is opened, votes that were appended but never
+ * acknowledged are recovered, so they can be sent again.
+ * <p>
+ * Only the ID of each pending vote and where its record is in the log are kept in memory; the vote itself is read back
+ * from the log by {@link #getPending(long)}. Votes that can't be sent for a while can be {@linkplain #park(long) parked},
+ * so that nothing but the log has to hold on to them.
+ * <p>
+ * Once every vote has been acknowledged, the log is truncated. If it keeps growing while votes remain unacknowledged,
+ * it is rewritten to hold only those votes. A flush that fails is cut back off the log, and the log is rewritten by the
+ * next flush, so that a torn record never ends up in front of later ones.
+ * <p>
+ * Each record is a type byte, the vote's ID, for appends the length and UTF-8 JSON of the vote, and a CRC32 of all of
+ * that. A record that is cut short or fails its checksum ends the log, as it can only be the result of a crash while it
+ * was being written.
+ */
+public final class VoteOutbox implements AutoCloseable {
+    private static final int MAGIC = 0x4E564F42; // NVOB
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    // The type, ID and length that come before the JSON of an append.
+    private static final int APPEND_PREFIX_SIZE = 1 + 8 + 4;
+
+    private static final byte APPEND = 1;
+    private static final byte ACK = 2;
+
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+    private static final int REWRITE_CHUNK_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final Executor executor;
+    private FileChannel channel;
+    private long compactAt;
+
+    private final Object lock = new Object();
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private int parked;
+    private final List<Long> recovered;
+    private long nextId;
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private List<Commit> commits = new ArrayList<>();
+    private boolean flushScheduled;
+    private boolean closed;
+    // Set when a flush failed, until the log has been rewritten. Guarded by this object's monitor, like the channel.
+    private boolean damaged;
+
+    private VoteOutbox(Path file, Executor executor) {
+        this.file = file;
+        this.executor = executor;
+        this.recovered = new ArrayList<>();
+    }
+
+    /**
+     * Opens the outbox stored in {@code file}, creating it if it doesn't exist yet.
+     *
+     * @param executor runs group commits; they do blocking file I/O
+     * @throws IOException if the log could not be read or created
+     */
+    public static VoteOutbox open(Path file, Executor executor) throws IOException {
+        VoteOutbox outbox = new VoteOutbox(file, executor);
+        outbox.recover();
+        return outbox;
+    }
+
+    private void recover() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        ByteBuffer log = ByteBuffer.wrap(Files.exists(file) ? Files.readAllBytes(file) : new byte[0]);
+        replay(log);
+        recovered.addAll(pending.keySet());
+        // Start over with a log that only holds what is still pending. This also drops any torn record at the end.
+        rewrite(snapshot(), offset -> {
+            byte[] json = new byte[log.getInt((int) offset + 1 + 8)];
+            System.arraycopy(log.array(), (int) offset + APPEND_PREFIX_SIZE, json, 0, json.length);
+            return json;
+        });
+    }
+
+    private void replay(ByteBuffer log) throws IOException {
+        if (log.remaining() < HEADER_SIZE) {
+            return;
+        }
+        if (log.getInt() != MAGIC || log.get() != VERSION) {
+            throw new IOException("Not a vote outbox, or written by a newer version: " + file);
+        }
+
+        CRC32 crc = new CRC32();
+        while (log.remaining() >= 1 + 8 + 4) {
+            int start = log.position();
+            byte type = log.get();
+            long id = log.getLong();
+            if (type == APPEND) {
+                int length = log.getInt();
+                if (length < 0 || log.remaining() < length + 4) {
+                    break;
+                }
+                log.position(log.position() + length);
+            } else if (type != ACK || log.remaining() < 4) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(log.array(), start, log.position() - start);
+            if (log.getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            if (type == APPEND) {
+                pending.put(id, new Entry(start));
+            } else {
+                pending.remove(id);
+            }
+            nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    /**
+     * Returns the IDs of the votes that were pending when the outbox was opened, in the order they were appended.
+     * Each must eventually be passed to {@link #ack(long)}.
+     */
+    public List<Long> getRecovered() {
+        return Collections.unmodifiableList(recovered);
+    }
+
+    /**
+     * Reads a vote that is still waiting for its acknowledgement back from the log.
+     *
+     * @return the vote, or {@code null} if it was acknowledged or its append has not completed yet
+     * @throws IOException if the log could not be read
+     */
+    public Vote getPending(long id) throws IOException {
+        synchronized (this) {
+            long offset;
+            synchronized (lock) {
+                Entry entry = pending.get(id);
+                if (entry == null || entry.offset < 0) {
+                    return null;
+                }
+                offset = entry.offset;
+            }
+            byte[] json = readJson(channel, offset);
+            return new Vote(GsonInst.gson.fromJson(new String(json, StandardCharsets.UTF_8), JsonObject.class));
+        }
+    }
+
+    /**
+     * Returns how many votes are waiting for their acknowledgement.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Leaves a pending vote to the log alone, until {@link #unpark(int)} hands it out again.
+     */
+    public void park(long id) {
+        synchronized (lock) {
+            Entry entry = pending.get(id);
+            if (entry != null && !entry.parked) {
+                entry.parked = true;
+                parked++;
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code max} votes out of the parked ones, oldest first.
+     *
+     * @return the IDs of the votes, which are no longer parked
+     */
+    public List<Long> unpark(int max) {
+        List<Long> ids = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<Long, Entry> entry : pending.entrySet()) {
+                if (ids.size() >= max || ids.size() >= parked) {
+                    break;
+                }
+                if (entry.getValue().parked) {
+                    entry.getValue().parked = false;
+                    ids.add(entry.getKey());
+                }
+            }
+            parked -= ids.size();
+        }
+        return ids;
+    }
+
+    /**
+     * Returns how many of the pending votes are parked.
+     */
+    public int getParkedCount() {
+        synchronized (lock) {
+            return parked;
+        }
+    }
+
+    /**
+     * Appends a vote to the log.
+     *
+     * @return a future completed with the ID of the vote once it has been synced to disk
+     */
+    public CompletableFuture<Long> append(Vote vote) {
+        byte[] json = GsonInst.gson.toJson(vote.serialize()).getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(new IOException("The vote outbox has been closed"));
+                return future;
+            }
+            long id = nextId++;
+            pending.put(id, new Entry(-1));
+            commits.add(new Commit(id, batch.size(), future));
+            writeRecord(batch, APPEND, id, json);
+            scheduleFlush();
+        }
+        return future;
+    }
+
+    /**
+     * Records that a vote has been delivered, so it won't be recovered again.
+     */
+    public void ack(long id) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            Entry entry = pending.remove(id);
+            if (entry == null) {
+                return;
+            }
+            if (entry.parked) {
+                parked--;
+            }
+            writeRecord(batch, ACK, id, null);
+            scheduleFlush();
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream target, byte type, long id, byte[] json) {
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + (json == null ? 0 : 4 + json.length) + 4);
+        record.put(type);
+        record.putLong(id);
+        if (json != null) {
+            record.putInt(json.length);
+            record.put(json);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        target.write(record.array(), 0, record.position());
+    }
+
+    private static byte[] readJson(FileChannel from, long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(from, length, offset + 1 + 8);
+        ByteBuffer json = ByteBuffer.allocate(length.getInt(0));
+        readFully(from, json, offset + APPEND_PREFIX_SIZE);
+        return json.array();
+    }
+
+    private static void readFully(FileChannel from, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (from.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("The vote outbox ends in the middle of a record");
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        // Flushes run one at a time and in order, but appends only wait for the short critical sections on the lock.
+        synchronized (this) {
+            byte[] records;
+            List<Commit> committing;
+            boolean empty;
+            synchronized (lock) {
+                records = batch.toByteArray();
+                committing = commits;
+                batch = new ByteArrayOutputStream();
+                commits = new ArrayList<>();
+                flushScheduled = false;
+                empty = pending.isEmpty();
+            }
+            if (records.length == 0 && !damaged) {
+                return;
+            }
+
+            IOException error = null;
+            long start = -1;
+            try {
+                if (damaged) {
+                    // An earlier flush failed, so the log may lack acknowledgements. Start over from what is pending.
+                    compact();
+                    damaged = false;
+                }
+                if (empty) {
+                    // Everything has been acknowledged, so the log can simply start over.
+                    channel.truncate(HEADER_SIZE);
+                    channel.position(HEADER_SIZE);
+                } else {
+                    start = channel.position();
+                    writeFully(channel, ByteBuffer.wrap(records));
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+                discard(start, committing);
+            }
+
+            if (error == null && start >= 0) {
+                synchronized (lock) {
+                    for (Commit commit : committing) {
+                        Entry entry = pending.get(commit.id);
+                        if (entry != null) {
+                            entry.offset = start + commit.position;
+                        }
+                    }
+                }
+            }
+            if (error == null) {
+                try {
+                    if (channel.size() >= compactAt) {
+                        compact();
+                    }
+                } catch (IOException e) {
+                    // The log we have is still whole; compacting is tried again after the next flush.
+                }
+            }
+
+            for (Commit commit : committing) {
+                if (error == null) {
+                    commit.future.complete(commit.id);
+                } else {
+                    commit.future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Undoes a flush that failed. Whatever part of the batch made it into the log is cut off again, so that later
+     * records don't end up behind a torn one, and the votes it appended are no longer pending; their appends fail.
+     */
+    private void discard(long start, List<Commit> committing) {
+        damaged = true;
+        try {
+            if (start >= 0) {
+                channel.truncate(start);
+                channel.position(start);
+            }
+        } catch (IOException e) {
+            // The next flush rewrites the log from scratch anyway.
+        }
+        synchronized (lock) {
+            for (Commit commit : committing) {
+                Entry entry = pending.remove(commit.id);
+                if (entry != null && entry.parked) {
+                    parked--;
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel to, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            to.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces the log with one that only holds the votes that are pending. Which votes those are is decided under the
+     * lock, but they are copied without holding it, so appends and acknowledgements don't wait for the disk. Records
+     * added to the batch in the meantime are written after the new log; any of them that repeat what it holds are
+     * harmless when replayed. Must be called while holding this object's monitor.
+     */
+    private void compact() throws IOException {
+        FileChannel from = channel;
+        rewrite(snapshot(), offset -> readJson(from, offset));
+    }
+
+    /**
+     * Returns the IDs and offsets of the pending votes that have been written to the log.
+     */
+    private long[][] snapshot() {
+        synchronized (lock) {
+            long[] ids = new long[pending.size()];
+            long[] offsets = new long[pending.size()];
+            int count = 0;
+            for (Map.Entry<Long, Entry> entry : pending.entrySet()) {
+                if (entry.getValue().offset >= 0) {
+                    ids[count] = entry.getKey();
+                    offsets[count] = entry.getValue().offset;
+                    count++;
+                }
+            }
+            long[][] snapshot = {new long[count], new long[count]};
+            System.arraycopy(ids, 0, snapshot[0], 0, count);
+            System.arraycopy(offsets, 0, snapshot[1], 0, count);
+            return snapshot;
+        }
+    }
+
+    private void rewrite(long[][] snapshot, JsonSource source) throws IOException {
+        long[] ids = snapshot[0];
+        long[] offsets = snapshot[1];
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION);
+            chunk.write(header.array(), 0, HEADER_SIZE);
+            long written = 0;
+            for (int i = 0; i < ids.length; i++) {
+                byte[] json = source.read(offsets[i]);
+                // From here on, the offsets are where the votes are in the new log.
+                offsets[i] = written + chunk.size();
+                writeRecord(chunk, APPEND, ids[i], json);
+                if (chunk.size() >= REWRITE_CHUNK_BYTES) {
+                    written += chunk.size();
+                    writeFully(out, ByteBuffer.wrap(chunk.toByteArray()));
+                    chunk.reset();
+                }
+            }
+            writeFully(out, ByteBuffer.wrap(chunk.toByteArray()));
+            out.force(true);
+            // The new log stays open across the rename, so the old one is only given up once this has worked.
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            out.close();
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        synchronized (lock) {
+            for (int i = 0; i < ids.length; i++) {
+                Entry entry = pending.get(ids[i]);
+                if (entry != null) {
+                    entry.offset = offsets[i];
+                }
+            }
+        }
+        FileChannel old = channel;
+        channel = out;
+        compactAt = Math.max(COMPACT_THRESHOLD_BYTES, channel.size() * 2);
+        if (old != null) {
+            try {
+                old.close();
+            } catch (IOException e) {
+                // The new log is in place already.
+            }
+        }
+    }
+
+    /**
+     * Writes out anything not yet written, and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        synchronized (this) {
+            flush();
+            channel.close();
+        }
+    }
+
+    private interface JsonSource {
+        byte[] read(long offset) throws IOException;
+    }
+
+    private static final class Entry {
+        // Where the record of the vote starts in the log, or -1 until it has been written.
+        private long offset;
+        private boolean parked;
+
+        private Entry(long offset) {
+            this.offset = offset;
+        }
+    }
+
+    private static final class Commit {
+        private final long id;
+        private final int position;
+        private final CompletableFuture<Long> future;
+
+        private Commit(long id, int position, CompletableFuture<Long> future) {
+            this.id = id;
+            this.position = position;
+            this.future = future;
+        }
+    }
+}
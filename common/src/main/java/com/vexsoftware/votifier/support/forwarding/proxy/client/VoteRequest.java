@@ -5,10 +5,19 @@ import com.vexsoftware.votifier.model.Vote;
 public class VoteRequest {
     private final String challenge;
     private final Vote vote;
+    private final boolean multiVote;
 
     public VoteRequest(String challenge, Vote vote) {
+        this(challenge, vote, false);
+    }
+
+    /**
+     * @param multiVote whether to ask the server to keep the connection open for more votes
+     */
+    public VoteRequest(String challenge, Vote vote, boolean multiVote) {
         this.challenge = challenge;
         this.vote = vote;
+        this.multiVote = multiVote;
     }
 
     public String getChallenge() {
@@ -19,11 +28,16 @@ public class VoteRequest {
         return vote;
     }
 
+    public boolean isMultiVote() {
+        return multiVote;
+    }
+
     @Override
     public String toString() {
         return "VoteRequest{" +
                 "challenge='" + challenge + '\'' +
                 ", vote=" + vote +
+                ", multiVote=" + multiVote +
                 '}';
     }
 }
@@ -0,0 +1,214 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.util.GsonInst;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.timeout.ReadTimeoutException;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives a protocol v2 connection that can carry several votes, for a {@link VotifierSessionHandler}.
+ * <p>
+ * Once the greeting arrives, votes are sent one at a time for as long as the session handler has any and the server
+ * keeps handing out challenges. When there is nothing to send, the connection may be kept open with its unused
+ * challenge, so that the next vote can be signed and sent without waiting for a connection and a greeting. Idle
+ * connections are closed before the server's read timeout would close them.
+ */
+public class VotifierProtocol2ClientHandler extends SimpleChannelInboundHandler<String> {
+    private enum State {
+        GREETING,
+        SENDING,
+        IDLE,
+        CLOSED
+    }
+
+    private final VotifierSessionHandler sessionHandler;
+    private final VotifierPlugin nuVotifier;
+    private final LongSupplier responseTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    private ChannelHandlerContext ctx;
+    private State state = State.GREETING;
+    private String challenge;
+    private ScheduledFuture<?> timeout;
+    private Throwable handshakeError;
+
+    /**
+     * @param responseTimeoutMillis how long to wait for the greeting, and for the response to each vote
+     * @param idleTimeoutMillis     how long to keep the connection open without a vote to send
+     */
+    public VotifierProtocol2ClientHandler(VotifierSessionHandler sessionHandler, VotifierPlugin nuVotifier,
+                                          long responseTimeoutMillis, long idleTimeoutMillis) {
+        this(sessionHandler, nuVotifier, () -> responseTimeoutMillis, idleTimeoutMillis);
+    }
+
+    /**
+     * @param responseTimeoutMillis supplies how long to wait for the greeting, and for the response to each vote; it
+     *                              is asked again for every vote
+     * @param idleTimeoutMillis     how long to keep the connection open without a vote to send
+     */
+    public VotifierProtocol2ClientHandler(VotifierSessionHandler sessionHandler, VotifierPlugin nuVotifier,
+                                          LongSupplier responseTimeoutMillis, long idleTimeoutMillis) {
+        this.sessionHandler = sessionHandler;
+        this.nuVotifier = nuVotifier;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        scheduleTimeout(responseTimeoutMillis.getAsLong(), this::responseTimedOut);
+        ctx.fireChannelActive();
+    }
+
+    /**
+     * Sends a vote over this connection, which must have been handed to {@link VotifierSessionHandler#onIdle}. This
+     * may be called from any thread. If the connection has been closed in the meantime, the vote is handed back
+     * through {@link VotifierSessionHandler#onNotSent(Vote)}.
+     */
+    public void send(Vote vote) {
+        ctx.executor().execute(() -> {
+            if (state != State.IDLE || !ctx.channel().isActive()) {
+                sessionHandler.onNotSent(vote);
+                return;
+            }
+            sendVote(vote);
+        });
+    }
+
+    /**
+     * Closes this connection. This may be called from any thread.
+     */
+    public void close() {
+        ctx.close();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+        switch (state) {
+            case GREETING:
+                String[] handshakeContents = msg.split(" ");
+                if (handshakeContents.length != 3) {
+                    throw new CorruptedFrameException("Handshake is not valid.");
+                }
+                challenge = handshakeContents[2];
+                offerChallenge();
+                break;
+            case SENDING:
+                JsonObject object = GsonInst.gson.fromJson(msg, JsonObject.class);
+                String status = object.get("status").getAsString();
+                if (!status.equals("ok")) {
+                    state = State.CLOSED;
+                    sessionHandler.onFailure(new Exception("Remote server error: " + object.get("cause").getAsString() +
+                            (object.has("error") ? ": " + object.get("error").getAsString() : "")));
+                    ctx.close();
+                    return;
+                }
+
+                sessionHandler.onSuccess();
+                // A server that takes more than one vote per connection tells us the challenge for the next one.
+                JsonElement next = object.get("challenge");
+                if (next == null) {
+                    state = State.CLOSED;
+                    ctx.close();
+                } else {
+                    challenge = next.getAsString();
+                    offerChallenge();
+                }
+                break;
+            default:
+                throw new CorruptedFrameException("Unexpected message from server");
+        }
+    }
+
+    private void offerChallenge() {
+        cancelTimeout();
+        Vote vote = sessionHandler.nextVote();
+        if (vote != null) {
+            sendVote(vote);
+        } else if (sessionHandler.onIdle(this)) {
+            state = State.IDLE;
+            scheduleTimeout(idleTimeoutMillis, this::idleTimedOut);
+        } else {
+            state = State.CLOSED;
+            ctx.close();
+        }
+    }
+
+    private void sendVote(Vote vote) {
+        cancelTimeout();
+        VoteRequest request = new VoteRequest(challenge, vote, true);
+        challenge = null;
+        state = State.SENDING;
+        if (nuVotifier.isDebug()) {
+            nuVotifier.getPluginLogger().info("Sent request: " + request.toString());
+        }
+        ctx.writeAndFlush(request);
+        scheduleTimeout(responseTimeoutMillis.getAsLong(), this::responseTimedOut);
+    }
+
+    private void responseTimedOut() {
+        ctx.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+    }
+
+    private void idleTimedOut() {
+        if (state == State.IDLE && sessionHandler.onIdleExpired()) {
+            state = State.CLOSED;
+            ctx.close();
+        }
+    }
+
+    private void scheduleTimeout(long delayMillis, Runnable task) {
+        timeout = ctx.executor().schedule(() -> {
+            timeout = null;
+            task.run();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelTimeout();
+        Throwable error = handshakeError;
+        if (state == State.SENDING) {
+            sessionHandler.onFailure(new IOException("Connection closed before the vote was acknowledged"));
+        } else if (state == State.GREETING) {
+            error = new IOException("Connection closed during handshake");
+        }
+        state = State.CLOSED;
+        sessionHandler.onClosed(error);
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        cancelTimeout();
+        if (state == State.SENDING) {
+            sessionHandler.onFailure(cause);
+        } else if (state == State.GREETING) {
+            handshakeError = cause;
+        }
+        state = State.CLOSED;
+        ctx.close();
+    }
+}
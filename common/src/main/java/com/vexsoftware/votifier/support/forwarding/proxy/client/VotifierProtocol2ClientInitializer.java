@@ -0,0 +1,69 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.AttributeKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sets up the pipeline of protocol v2 client connections to one server.
+ * <p>
+ * One initializer is meant to be set on a {@link io.netty.bootstrap.Bootstrap} that is reused for every connection to
+ * the server. The string decoder and the encoder are shared by all connections; only the frame decoder and the
+ * {@link VotifierProtocol2ClientHandler} hold state, and are created for each connection. The session handler created
+ * for a connection is kept in the {@link #SESSION_HANDLER} attribute of its channel, so that a failure to connect can
+ * be reported to it.
+ */
+@ChannelHandler.Sharable
+public class VotifierProtocol2ClientInitializer extends ChannelInitializer<Channel> {
+    public static final AttributeKey<VotifierSessionHandler> SESSION_HANDLER = AttributeKey.valueOf("votifier_session_handler");
+
+    private static final StringDecoder STRING_DECODER = new StringDecoder(StandardCharsets.US_ASCII);
+    // Each frame decoder only reads these through its own slices.
+    private static final ByteBuf[] LINE_DELIMITERS = Delimiters.lineDelimiter();
+
+    private final VotifierPlugin plugin;
+    private final VotifierProtocol2Encoder encoder;
+    private final LongSupplier responseTimeoutMillis;
+    private final LongSupplier idleTimeoutMillis;
+    private final Supplier<? extends VotifierSessionHandler> sessionHandlers;
+
+    /**
+     * @param encoder               the encoder for the server's key
+     * @param responseTimeoutMillis supplies how long to wait for the greeting, and for the response to each vote
+     * @param idleTimeoutMillis     supplies how long to keep a new connection open without a vote to send
+     * @param sessionHandlers       creates the session handler of each new connection
+     */
+    public VotifierProtocol2ClientInitializer(VotifierPlugin plugin, VotifierProtocol2Encoder encoder,
+                                              LongSupplier responseTimeoutMillis, LongSupplier idleTimeoutMillis,
+                                              Supplier<? extends VotifierSessionHandler> sessionHandlers) {
+        this.plugin = plugin;
+        this.encoder = encoder;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.sessionHandlers = sessionHandlers;
+    }
+
+    @Override
+    protected void initChannel(Channel channel) {
+        VotifierSessionHandler sessionHandler = sessionHandlers.get();
+        channel.attr(SESSION_HANDLER).set(sessionHandler);
+
+        ChannelPipeline pipeline = channel.pipeline();
+        pipeline.addLast(new DelimiterBasedFrameDecoder(256, true, LINE_DELIMITERS));
+        pipeline.addLast(STRING_DECODER);
+        pipeline.addLast(encoder);
+        pipeline.addLast(new VotifierProtocol2ClientHandler(sessionHandler, plugin, responseTimeoutMillis,
+                idleTimeoutMillis.getAsLong()));
+    }
+}
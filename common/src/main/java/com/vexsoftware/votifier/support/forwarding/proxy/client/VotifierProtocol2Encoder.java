@@ -1,46 +1,179 @@
 package com.vexsoftware.votifier.support.forwarding.proxy.client;
 
-import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import javax.crypto.Mac;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Base64;
 
+/**
+ * Encodes protocol 2 votes.
+ * <p>
+ * The payload is written as UTF-8 JSON into a scratch buffer, which is what gets signed, and then copied into the
+ * envelope with the escaping it needs as a JSON string. Nothing is built up as a {@code String} on the way, so the frame
+ * length is the real length in bytes. One encoder can be shared by all connections to the same server; each thread
+ * keeps its own {@link Mac} initialized with the server's key.
+ */
+@ChannelHandler.Sharable
 public class VotifierProtocol2Encoder extends MessageToByteEncoder<VoteRequest> {
     private static final short MAGIC = 0x733A;
+    private static final int MAX_FRAME_LENGTH = 0xFFFF;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
 
-    private final Key key;
+    private final FastThreadLocal<Mac> mac;
 
     public VotifierProtocol2Encoder(Key key) {
-        this.key = key;
+        this.mac = new FastThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() throws Exception {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            }
+        };
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, VoteRequest req, ByteBuf buf) throws Exception {
-        JsonObject object = new JsonObject();
-        JsonObject payloadObject = req.getVote().serialize();
-        payloadObject.addProperty("challenge", req.getChallenge());
-        String payload = payloadObject.toString();
-        object.addProperty("payload", payload);
-
-        // Generate the MAC
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(key);
-        mac.update(payload.getBytes(StandardCharsets.UTF_8));
-        String computed = Base64.getEncoder().encodeToString(mac.doFinal());
-        object.addProperty("signature", computed);
-
-        // JSON message is ready for encoding.
-        String finalMessage = object.toString();
-        buf.writeShort(MAGIC);
-        buf.writeShort(finalMessage.length());
-        ByteBuf messageBytes = Unpooled.copiedBuffer(finalMessage, StandardCharsets.UTF_8);
-        buf.writeBytes(messageBytes);
-        messageBytes.release();
+        ByteBuf payload = ctx.alloc().heapBuffer(256);
+        try {
+            writePayload(payload, req.getVote(), req.getChallenge());
+
+            // Generate the MAC. doFinal() resets it for the next vote on this thread.
+            Mac mac = this.mac.get();
+            mac.update(payload.nioBuffer());
+            byte[] signature = Base64.getEncoder().encode(mac.doFinal());
+
+            int start = buf.writerIndex();
+            buf.writeShort(MAGIC);
+            buf.writeShort(0); // length, filled in below
+            buf.writeCharSequence("{\"payload\":\"", StandardCharsets.US_ASCII);
+            writeEscapedJson(buf, payload);
+            buf.writeCharSequence("\",\"signature\":\"", StandardCharsets.US_ASCII);
+            buf.writeBytes(signature);
+            buf.writeByte('"');
+            if (req.isMultiVote()) {
+                buf.writeCharSequence(",\"multiVote\":true", StandardCharsets.US_ASCII);
+            }
+            buf.writeByte('}');
+
+            int length = buf.writerIndex() - start - 4;
+            if (length > MAX_FRAME_LENGTH) {
+                throw new EncoderException("Vote is too large to send (" + length + " bytes)");
+            }
+            buf.setShort(start + 2, length);
+        } finally {
+            payload.release();
+        }
+    }
+
+    // Same fields, in the same order, as Vote.serialize() followed by the challenge.
+    private static void writePayload(ByteBuf out, Vote vote, String challenge) {
+        out.writeByte('{');
+        writeField(out, "serviceName", vote.getServiceName());
+        out.writeByte(',');
+        writeField(out, "username", vote.getUsername());
+        out.writeByte(',');
+        writeField(out, "address", vote.getAddress());
+        out.writeByte(',');
+        writeField(out, "timestamp", vote.getTimeStamp());
+        byte[] additionalData = vote.getAdditionalData();
+        if (additionalData != null) {
+            out.writeCharSequence(",\"additionalData\":\"", StandardCharsets.US_ASCII);
+            out.writeBytes(Base64.getEncoder().encode(additionalData));
+            out.writeByte('"');
+        }
+        out.writeByte(',');
+        writeField(out, "challenge", challenge);
+        out.writeByte('}');
+    }
+
+    private static void writeField(ByteBuf out, String name, String value) {
+        out.writeByte('"');
+        out.writeCharSequence(name, StandardCharsets.US_ASCII);
+        out.writeByte('"');
+        out.writeByte(':');
+        writeString(out, value);
+    }
+
+    /**
+     * Writes a JSON string as UTF-8, escaping what JSON requires plus U+2028 and U+2029, like Gson does.
+     */
+    private static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            out.writeCharSequence("null", StandardCharsets.US_ASCII);
+            return;
+        }
+        out.writeByte('"');
+        int run = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            if (run < i) {
+                ByteBufUtil.writeUtf8(out, value, run, i);
+            }
+            run = i + 1;
+            out.writeByte('\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    out.writeByte(c);
+                    break;
+                case '\b':
+                    out.writeByte('b');
+                    break;
+                case '\f':
+                    out.writeByte('f');
+                    break;
+                case '\n':
+                    out.writeByte('n');
+                    break;
+                case '\r':
+                    out.writeByte('r');
+                    break;
+                case '\t':
+                    out.writeByte('t');
+                    break;
+                default:
+                    out.writeByte('u');
+                    out.writeByte(HEX[c >> 12]);
+                    out.writeByte(HEX[(c >> 8) & 0xF]);
+                    out.writeByte(HEX[(c >> 4) & 0xF]);
+                    out.writeByte(HEX[c & 0xF]);
+                    break;
+            }
+        }
+        if (run < value.length()) {
+            ByteBufUtil.writeUtf8(out, value, run, value.length());
+        }
+        out.writeByte('"');
+    }
+
+    /**
+     * Copies UTF-8 JSON into a JSON string. Control characters have already been escaped, so only quotes and
+     * backslashes are left to escape, and multi-byte characters can be copied as they are.
+     */
+    private static void writeEscapedJson(ByteBuf out, ByteBuf json) {
+        int run = json.readerIndex();
+        int end = json.writerIndex();
+        for (int i = run; i < end; i++) {
+            byte b = json.getByte(i);
+            if (b == '"' || b == '\\') {
+                out.writeBytes(json, run, i - run);
+                out.writeByte('\\');
+                run = i;
+            }
+        }
+        out.writeBytes(json, run, end - run);
     }
 }
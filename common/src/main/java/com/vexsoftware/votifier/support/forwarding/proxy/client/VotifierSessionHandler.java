@@ -0,0 +1,51 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.vexsoftware.votifier.model.Vote;
+
+import java.io.IOException;
+
+/**
+ * Feeds votes to a {@link VotifierProtocol2ClientHandler}, which drives a connection that may carry more than one
+ * vote. Every method is called on the connection's event loop.
+ * <p>
+ * {@link #onSuccess()} and {@link #onFailure(Throwable)} refer to the vote most recently sent over the connection.
+ */
+public interface VotifierSessionHandler extends VotifierResponseHandler {
+    /**
+     * Returns the next vote to send now that the connection holds an unused challenge, or {@code null} if there is
+     * none.
+     */
+    Vote nextVote();
+
+    /**
+     * Called when there is no vote to send. Returns whether to keep the connection open; if so, a vote may be sent
+     * over it later with {@link VotifierProtocol2ClientHandler#send}.
+     */
+    default boolean onIdle(VotifierProtocol2ClientHandler connection) {
+        return false;
+    }
+
+    /**
+     * Called when the connection has been idle for too long. Returns whether it may be closed, which is not the case
+     * if a vote has already been handed to it.
+     */
+    default boolean onIdleExpired() {
+        return true;
+    }
+
+    /**
+     * Called instead of {@link #onFailure(Throwable)} when a vote handed to an idle connection could not be sent,
+     * because the connection was closed first. The vote never reached the server, so this says nothing about whether
+     * the server is healthy. By default, it is reported as a failure all the same.
+     */
+    default void onNotSent(Vote vote) {
+        onFailure(new IOException("Connection closed before the vote could be sent"));
+    }
+
+    /**
+     * Called once the connection has been closed, after the outcome of every vote sent over it has been reported.
+     *
+     * @param error why the connection failed before it could carry a vote, or {@code null} if it didn't
+     */
+    void onClosed(Throwable error);
+}
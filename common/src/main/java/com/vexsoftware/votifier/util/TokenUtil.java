@@ -2,15 +2,21 @@ package com.vexsoftware.votifier.util;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.Random;
 
 public class TokenUtil {
     private TokenUtil() {
 
     }
 
-    private static final SecureRandom RANDOM = new SecureRandom();
+    // One generator per thread, so that threads creating tokens at the same time don't contend on it.
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
 
     public static String newToken() {
-        return new BigInteger(130, RANDOM).toString(32);
+        return newToken(RANDOM.get());
+    }
+
+    public static String newToken(Random random) {
+        return new BigInteger(130, random).toString(32);
     }
 }
@@ -0,0 +1,67 @@
+package com.vexsoftware.votifier.util;
+
+import com.vexsoftware.votifier.net.VotifierServerBootstrap;
+import com.vexsoftware.votifier.support.forwarding.AbstractPluginMessagingForwardingSource;
+import com.vexsoftware.votifier.support.forwarding.BoundedSendQueue;
+import com.vexsoftware.votifier.support.forwarding.ForwardingVoteSource;
+import com.vexsoftware.votifier.support.forwarding.proxy.ProxyForwardingVoteSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Describes what the Votifier server and vote forwarding are up to, for the status commands of the proxy platforms.
+ */
+public class VotifierStatus {
+
+    /**
+     * Returns one line for each thing worth reporting.
+     *
+     * @param bootstrap  the running Votifier server, or {@code null} if there is none
+     * @param forwarding the vote forwarding method, or {@code null} if votes aren't forwarded
+     */
+    public static List<String> describe(VotifierServerBootstrap bootstrap, ForwardingVoteSource forwarding) {
+        List<String> lines = new ArrayList<>();
+        if (bootstrap == null) {
+            lines.add("The Votifier server is not running.");
+        } else {
+            lines.add("Open connections: " + bootstrap.getOpenConnections());
+            lines.add("Connections refused: " + bootstrap.getRejectedConnectionCount() + " over the limit, " +
+                    bootstrap.getRateLimitedConnectionCount() + " rate limited, " +
+                    bootstrap.getFilteredConnectionCount() + " filtered");
+            lines.add("Timeouts: " + bootstrap.getHandshakeTimeoutCount() + " handshake, " +
+                    bootstrap.getReadTimeoutCount() + " read, " + bootstrap.getHandlerTimeoutCount() + " handler");
+        }
+
+        if (forwarding instanceof ProxyForwardingVoteSource) {
+            describeQueues(lines, ((ProxyForwardingVoteSource) forwarding).getQueueStats());
+        } else if (forwarding instanceof AbstractPluginMessagingForwardingSource) {
+            AbstractPluginMessagingForwardingSource source = (AbstractPluginMessagingForwardingSource) forwarding;
+            describeQueues(lines, source.getQueueStats());
+            Map<String, Integer> pendingAcks = source.getPendingAcks();
+            for (Map.Entry<String, AbstractPluginMessagingForwardingSource.DumpProgress> entry :
+                    new TreeMap<>(source.getDumpProgress()).entrySet()) {
+                AbstractPluginMessagingForwardingSource.DumpProgress progress = entry.getValue();
+                lines.add("Cached votes for " + entry.getKey() + ": " + progress.getSent() + " sent, " +
+                        progress.getFailedMessages() + " failed message(s)" + (progress.isDraining() ?
+                        String.format(Locale.ROOT, ", sending at %.0f vote(s)/s", progress.getVotesPerSecond()) : ""));
+            }
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(pendingAcks).entrySet()) {
+                lines.add("Awaiting acknowledgement from " + entry.getKey() + ": " + entry.getValue() + " vote(s)");
+            }
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    private static void describeQueues(List<String> lines, Map<String, BoundedSendQueue.Stats> queues) {
+        for (Map.Entry<String, BoundedSendQueue.Stats> entry : new TreeMap<>(queues).entrySet()) {
+            BoundedSendQueue.Stats stats = entry.getValue();
+            lines.add("Queue for " + entry.getKey() + ": " + stats.getDepth() + "/" + stats.getCapacity() +
+                    " waiting, peak " + stats.getHighWatermark() + ", " + stats.getOverflowed() + " overflowed");
+        }
+    }
+}
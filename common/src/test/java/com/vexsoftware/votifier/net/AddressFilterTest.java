@@ -0,0 +1,53 @@
+package com.vexsoftware.votifier.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AddressFilterTest {
+    private static boolean allowed(AddressFilter filter, String address) throws Exception {
+        return filter.isAllowed(InetAddress.getByName(address));
+    }
+
+    @Test
+    public void testEmptyAllowsEverything() throws Exception {
+        AddressFilter filter = AddressFilter.compile(Collections.emptyList(), Collections.emptyList());
+        assertTrue(filter.isAllowAll());
+        assertTrue(allowed(filter, "203.0.113.7"));
+        assertTrue(allowed(filter, "2001:db8::1"));
+    }
+
+    @Test
+    public void testDenyList() throws Exception {
+        AddressFilter filter = AddressFilter.compile(Collections.emptyList(),
+                Arrays.asList("203.0.113.0/24", "2001:db8::/32"));
+        assertFalse(allowed(filter, "203.0.113.7"));
+        assertTrue(allowed(filter, "203.0.114.7"));
+        assertFalse(allowed(filter, "2001:db8:1::1"));
+        assertTrue(allowed(filter, "2001:db9::1"));
+    }
+
+    @Test
+    public void testMostSpecificBlockWins() throws Exception {
+        AddressFilter filter = AddressFilter.compile(Arrays.asList("10.0.0.0/8", "10.1.2.3"),
+                Collections.singletonList("10.1.0.0/16"));
+        assertTrue(allowed(filter, "10.2.0.1"));
+        assertFalse(allowed(filter, "10.1.0.1"));
+        assertTrue(allowed(filter, "10.1.2.3"));
+        // Not on the allow list at all.
+        assertFalse(allowed(filter, "192.0.2.1"));
+        assertFalse(allowed(filter, "::1"));
+    }
+
+    @Test
+    public void testInvalidBlocks() {
+        for (String block : Arrays.asList("10.0.0.0/33", "10.0.0.0/x", "example.com", "10.0.0.0/", "::1/129", "")) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> AddressFilter.compile(Collections.singletonList(block), Collections.emptyList()), block);
+        }
+    }
+}
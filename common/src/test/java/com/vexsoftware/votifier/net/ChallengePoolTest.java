@@ -0,0 +1,55 @@
+package com.vexsoftware.votifier.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChallengePoolTest {
+    @Test
+    public void testServesFromPool() {
+        ChallengePool pool = new ChallengePool(16, Runnable::run);
+        assertEquals(16, pool.size());
+
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(tokens.add(pool.next()));
+        }
+        assertEquals(100, pool.getServedCount());
+        assertEquals(0, pool.getMissCount());
+        assertTrue(pool.getRefillCount() > 1);
+    }
+
+    @Test
+    public void testFallsBackWhenDry() {
+        List<Runnable> pending = new ArrayList<>();
+        ChallengePool pool = new ChallengePool(4, pending::add);
+        assertEquals(0, pool.size());
+
+        assertNotNull(pool.next());
+        assertEquals(1, pool.getMissCount());
+        // Only one refill is ever queued at a time.
+        pool.next();
+        assertEquals(1, pending.size());
+
+        pending.remove(0).run();
+        assertEquals(4, pool.size());
+        pool.next();
+        assertEquals(1, pool.getServedCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void testRejectedRefill() {
+        ChallengePool pool = new ChallengePool(4, task -> {
+            throw new RejectedExecutionException();
+        });
+        assertNotNull(pool.next());
+        assertEquals(1, pool.getMissCount());
+    }
+}
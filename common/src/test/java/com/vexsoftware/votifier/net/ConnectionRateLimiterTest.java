@@ -0,0 +1,51 @@
+package com.vexsoftware.votifier.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionRateLimiterTest {
+    private static InetAddress address(int last) throws Exception {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last});
+    }
+
+    @Test
+    public void testBurstThenRefill() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        ConnectionRateLimiter limiter = new ConnectionRateLimiter(3, 1, 16, clock::get);
+        InetAddress a = address(1);
+
+        assertTrue(limiter.tryAcquire(a));
+        assertTrue(limiter.tryAcquire(a));
+        assertTrue(limiter.tryAcquire(a));
+        assertFalse(limiter.tryAcquire(a));
+        // Other addresses have their own bucket.
+        assertTrue(limiter.tryAcquire(address(2)));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire(a));
+        assertFalse(limiter.tryAcquire(a));
+    }
+
+    @Test
+    public void testBoundedTable() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        ConnectionRateLimiter limiter = new ConnectionRateLimiter(1, 1, 2, clock::get);
+
+        assertTrue(limiter.tryAcquire(address(1)));
+        assertTrue(limiter.tryAcquire(address(2)));
+        // The table is full, so the next addresses share the overflow bucket.
+        assertTrue(limiter.tryAcquire(address(3)));
+        assertFalse(limiter.tryAcquire(address(4)));
+        assertEquals(2, limiter.getTrackedAddresses());
+
+        // Once the buckets have been idle long enough to refill, they are forgotten.
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(limiter.tryAcquire(address(4)));
+        assertEquals(1, limiter.getTrackedAddresses());
+    }
+}
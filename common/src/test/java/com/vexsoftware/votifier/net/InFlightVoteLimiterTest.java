@@ -0,0 +1,55 @@
+package com.vexsoftware.votifier.net;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InFlightVoteLimiterTest {
+    @Test
+    public void testPauseAndResume() {
+        InFlightVoteLimiter limiter = new InFlightVoteLimiter(2, 0, InFlightVoteLimiter.OverloadAction.PAUSE);
+        EmbeddedChannel before = new EmbeddedChannel();
+        limiter.onChannelAccepted(before);
+        assertTrue(before.config().isAutoRead());
+
+        assertTrue(limiter.tryAcquire(VotifierSession.ProtocolVersion.TWO));
+        assertTrue(limiter.tryAcquire(VotifierSession.ProtocolVersion.TWO));
+        assertTrue(limiter.isOverloaded());
+        assertEquals(2, limiter.getInFlight());
+
+        EmbeddedChannel during = new EmbeddedChannel();
+        limiter.onChannelAccepted(during);
+        assertFalse(during.config().isAutoRead());
+        assertEquals(1, limiter.getPausedConnections());
+
+        // Still above the low watermark.
+        limiter.release();
+        assertTrue(limiter.isOverloaded());
+        assertFalse(during.config().isAutoRead());
+
+        limiter.release();
+        assertFalse(limiter.isOverloaded());
+        assertTrue(during.config().isAutoRead());
+        assertEquals(0, limiter.getPausedConnections());
+    }
+
+    @Test
+    public void testRejectV2WhenOverloaded() {
+        InFlightVoteLimiter limiter = new InFlightVoteLimiter(1, 0, InFlightVoteLimiter.OverloadAction.REJECT);
+        assertTrue(limiter.tryAcquire(VotifierSession.ProtocolVersion.TWO));
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        limiter.onChannelAccepted(channel);
+        assertTrue(channel.config().isAutoRead());
+
+        assertFalse(limiter.tryAcquire(VotifierSession.ProtocolVersion.TWO));
+        // Protocol v1 has no way of telling the client to retry, so those votes are still taken.
+        assertTrue(limiter.tryAcquire(VotifierSession.ProtocolVersion.ONE));
+        assertEquals(1, limiter.getRejectedCount());
+
+        limiter.release();
+        limiter.release();
+        assertTrue(limiter.tryAcquire(VotifierSession.ProtocolVersion.TWO));
+    }
+}
@@ -0,0 +1,138 @@
+package com.vexsoftware.votifier.net;
+
+import com.vexsoftware.votifier.ReceivedVote;
+import com.vexsoftware.votifier.VoteHandler;
+import com.vexsoftware.votifier.model.Vote;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteBatcherTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private static class RecordingHandler implements VoteHandler {
+        private final List<List<ReceivedVote>> batches = new ArrayList<>();
+        private final List<CompletableFuture<Void>> results = new ArrayList<>();
+        private boolean complete = true;
+
+        @Override
+        public synchronized List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+            batches.add(votes);
+            List<CompletionStage<Void>> handled = new ArrayList<>();
+            for (int i = 0; i < votes.size(); i++) {
+                CompletableFuture<Void> result = complete ? CompletableFuture.completedFuture(null) : new CompletableFuture<>();
+                results.add(result);
+                handled.add(result);
+            }
+            return handled;
+        }
+    }
+
+    private static Vote vote(int i) {
+        return new Vote("Test", "user" + i, "127.0.0.1", Integer.toString(i));
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDeliversFullBatch() {
+        RecordingHandler handler = new RecordingHandler();
+        VoteBatcher batcher = new VoteBatcher(handler, 3, TimeUnit.HOURS.toMillis(1), executor);
+
+        CompletionStage<Void> first = batcher.onVoteReceivedAsync(vote(0), VotifierSession.ProtocolVersion.TWO, "a");
+        batcher.onVoteReceivedAsync(vote(1), VotifierSession.ProtocolVersion.ONE, "b");
+        assertTrue(handler.batches.isEmpty());
+        assertFalse(first.toCompletableFuture().isDone());
+
+        batcher.onVoteReceivedAsync(vote(2), VotifierSession.ProtocolVersion.TWO, "c");
+        assertEquals(1, handler.batches.size());
+        List<ReceivedVote> batch = handler.batches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals(vote(1), batch.get(1).getVote());
+        assertEquals(VotifierSession.ProtocolVersion.ONE, batch.get(1).getProtocolVersion());
+        assertEquals("b", batch.get(1).getRemoteAddress());
+        assertTrue(first.toCompletableFuture().isDone());
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(3, batcher.getVoteCount());
+    }
+
+    @Test
+    public void testDeliversPartialBatchAfterDelay() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        VoteBatcher batcher = new VoteBatcher(handler, 64, 1, executor);
+
+        batcher.onVoteReceivedAsync(vote(0), VotifierSession.ProtocolVersion.TWO, "a").toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+        synchronized (handler) {
+            assertEquals(1, handler.batches.size());
+            assertEquals(1, handler.batches.get(0).size());
+        }
+    }
+
+    @Test
+    public void testFailedVoteOnlyFailsItself() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        handler.complete = false;
+        VoteBatcher batcher = new VoteBatcher(handler, 2, TimeUnit.HOURS.toMillis(1), executor);
+
+        CompletionStage<Void> first = batcher.onVoteReceivedAsync(vote(0), VotifierSession.ProtocolVersion.TWO, "a");
+        CompletionStage<Void> second = batcher.onVoteReceivedAsync(vote(1), VotifierSession.ProtocolVersion.TWO, "b");
+        IllegalStateException cause = new IllegalStateException();
+        handler.results.get(0).completeExceptionally(cause);
+        handler.results.get(1).complete(null);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> first.toCompletableFuture().get());
+        assertSame(cause, e.getCause());
+        assertNull(second.toCompletableFuture().get());
+    }
+
+    @Test
+    public void testThrowingHandlerFailsEveryVote() {
+        IllegalStateException cause = new IllegalStateException();
+        VoteHandler handler = new VoteHandler() {
+            @Override
+            public List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+                throw cause;
+            }
+        };
+        VoteBatcher batcher = new VoteBatcher(handler, 2, TimeUnit.HOURS.toMillis(1), executor);
+
+        CompletionStage<Void> first = batcher.onVoteReceivedAsync(vote(0), VotifierSession.ProtocolVersion.TWO, "a");
+        CompletionStage<Void> second = batcher.onVoteReceivedAsync(vote(1), VotifierSession.ProtocolVersion.TWO, "b");
+        for (CompletionStage<Void> stage : Arrays.asList(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> stage.toCompletableFuture().get());
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void testDefaultFansOutToSingleVotes() {
+        List<Vote> received = new ArrayList<>();
+        VoteHandler handler = new VoteHandler() {
+            @Override
+            public void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+                received.add(vote);
+            }
+        };
+        VoteBatcher batcher = new VoteBatcher(handler, 2, TimeUnit.HOURS.toMillis(1), executor);
+
+        batcher.onVoteReceivedAsync(vote(0), VotifierSession.ProtocolVersion.TWO, "a");
+        CompletionStage<Void> last = batcher.onVoteReceivedAsync(vote(1), VotifierSession.ProtocolVersion.TWO, "b");
+        assertTrue(last.toCompletableFuture().isDone());
+        assertEquals(2, received.size());
+    }
+}
@@ -0,0 +1,180 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.net.protocol.v1crypto.RSA;
+import com.vexsoftware.votifier.util.GsonInst;
+import com.vexsoftware.votifier.util.KeyCreator;
+import com.vexsoftware.votifier.util.QuietException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteDecodingTest {
+    private static final SocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 8192);
+    private static final VotifierSession SESSION = new VotifierSession();
+
+    private static Vote decodeBlock(byte[] block) throws Exception {
+        return VoteDecoding.decodeBlock(TestVotifierPlugin.getI(), ADDRESS, block);
+    }
+
+    private static Vote decodeFrame(String message) throws Exception {
+        ByteBuf frame = Unpooled.copiedBuffer(message, StandardCharsets.UTF_8);
+        try {
+            return VoteDecoding.decodeFrame(UnpooledByteBufAllocator.DEFAULT, frame, SESSION, TestVotifierPlugin.getI(), false);
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test
+    public void testSuccessfulBlockDecode() throws Exception {
+        Vote votePojo = new Vote("Test", "test", "test", "test");
+
+        assertEquals(votePojo, decodeBlock(VoteUtil.encodePOJOv1(votePojo)));
+    }
+
+    private void verifyBlockFailure(String bad) throws Exception {
+        byte[] encrypted = RSA.encrypt(bad.getBytes(StandardCharsets.UTF_8), TestVotifierPlugin.getI().getProtocolV1Key().getPublic());
+
+        assertThrows(QuietException.class, () -> decodeBlock(encrypted));
+    }
+
+    @Test
+    public void testFailureBlockDecodeMissingField() throws Exception {
+        verifyBlockFailure("VOTE\nTest\ntest\ntest"); // missing field
+    }
+
+    @Test
+    public void testFailureBlockDecodeBadOpcode() throws Exception {
+        verifyBlockFailure("TEST\nTest\ntest\ntest\ntest\n");
+    }
+
+    @Test
+    public void testFailureBlockDecodeBadRsa() throws Exception {
+        // Decode our bad RSA key
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(TestVotifierPlugin.r("/bad_public.key"));
+        PublicKey badPublicKey = keyFactory.generatePublic(publicKeySpec);
+
+        byte[] encrypted = VoteUtil.encodePOJOv1(new Vote("Test", "test", "test", "test"), badPublicKey);
+
+        // The test plugin runs in debug mode, so the cause is kept.
+        assertThrows(CorruptedFrameException.class, () -> decodeBlock(encrypted));
+    }
+
+    private void sendVote(Vote vote, Key key, boolean expectSuccess) throws Exception {
+        // Create a well-formed request
+        JSONObject object = new JSONObject();
+        JsonObject payload = vote.serialize();
+        payload.addProperty("challenge", SESSION.getChallenge());
+        String payloadEncoded = GsonInst.gson.toJson(payload);
+        object.put("payload", payloadEncoded);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        object.put("signature",
+                Base64.getEncoder().encodeToString(mac.doFinal(payloadEncoded.getBytes(StandardCharsets.UTF_8))));
+
+        if (expectSuccess) {
+            assertEquals(vote, decodeFrame(object.toString()));
+        } else {
+            decodeFrame(object.toString());
+        }
+    }
+
+    @Test
+    public void testSuccessfulFrameDecode() throws Exception {
+        sendVote(new Vote("Test", "test", "test", "0"), TestVotifierPlugin.getI().getTokens().get("default"), true);
+    }
+
+    @Test
+    public void testSuccessfulFrameDecodeEscapedPayload() throws Exception {
+        // Non-ASCII characters and Gson's escaping of '=' in the Base64 data both need unescaping before the HMAC.
+        byte[] additionalData = "extra data".getBytes(StandardCharsets.UTF_8);
+        sendVote(new Vote("T\u00e9st \u2713 \"site\"", "test", "test", "0", additionalData),
+                TestVotifierPlugin.getI().getTokens().get("default"), true);
+    }
+
+    @Test
+    public void testFailureFrameDecodeBadPacket() {
+        // Create a well-formed request
+        Vote vote = new Vote("Test", "test", "test", "0");
+        JSONObject object = new JSONObject();
+        JsonObject payload = vote.serialize();
+        payload.addProperty("challenge", SESSION.getChallenge());
+        object.put("payload", GsonInst.gson.toJson(payload));
+        // We "forget" the signature.
+
+        assertThrows(CorruptedFrameException.class, () -> decodeFrame(object.toString()));
+    }
+
+    @Test
+    public void testFailureFrameDecodeBadVoteField() throws Exception {
+        // Create a well-formed request
+        Vote vote = new Vote("Test", "test", "test", "0");
+        JSONObject object = new JSONObject();
+        JsonObject payload = vote.serialize();
+        String payloadEncoded = GsonInst.gson.toJson(payload);
+        // We "forget" the challenge.
+        object.put("payload", payloadEncoded);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(TestVotifierPlugin.getI().getTokens().get("default"));
+        object.put("signature",
+                Base64.getEncoder().encodeToString(mac.doFinal(payloadEncoded.getBytes(StandardCharsets.UTF_8))));
+
+        assertThrows(CorruptedFrameException.class, () -> decodeFrame(object.toString()));
+    }
+
+    @Test
+    public void testFailureFrameDecodeBadChallenge() throws Exception {
+        // Create a well-formed request
+        Vote vote = new Vote("Test", "test", "test", "0");
+        JSONObject object = new JSONObject();
+        JsonObject payload = vote.serialize();
+        // We provide the wrong challenge.
+        payload.addProperty("challenge", "not a challenge for me");
+        object.put("payload", payload.toString());
+        String payloadEncoded = GsonInst.gson.toJson(payload);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(TestVotifierPlugin.getI().getTokens().get("default"));
+        object.put("signature",
+                Base64.getEncoder().encode(mac.doFinal(payloadEncoded.getBytes(StandardCharsets.UTF_8))));
+
+        assertThrows(CorruptedFrameException.class, () -> decodeFrame(object.toString()));
+    }
+
+    @Test
+    public void testFailureFrameDecodeNonExistentKey() throws Exception {
+        TestVotifierPlugin.getI().specificKeysOnly();
+
+        Vote vote = new Vote("Bad Service", "test", "test", "0");
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> sendVote(vote, TestVotifierPlugin.getI().getTokens().get("Test"), false));
+        assertEquals("Unknown service 'Bad Service'", e.getMessage());
+
+        TestVotifierPlugin.getI().restoreDefault();
+    }
+
+    @Test
+    public void testFailureFrameDecodeBadSignature() {
+        Vote vote = new Vote("Bad Service", "test", "test", "0");
+        assertThrows(CorruptedFrameException.class, () -> sendVote(vote, KeyCreator.createKeyFrom("BadKey"), false));
+    }
+}
@@ -0,0 +1,104 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.vexsoftware.votifier.VoteHandler;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
+import com.vexsoftware.votifier.net.VotifierSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteInboundHandlerTest {
+    private static final Vote VOTE = new Vote("Test", "test", "test", "0");
+
+    private static class PendingVoteHandler implements VoteHandler {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Throwable error;
+
+        @Override
+        public CompletionStage<Void> onVoteReceivedAsync(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+            return future;
+        }
+
+        @Override
+        public void onError(Throwable throwable, boolean voteAlreadyCompleted, String remoteAddress) {
+            error = throwable;
+        }
+    }
+
+    private EmbeddedChannel createChannel(VoteInboundHandler handler) {
+        VotifierSession session = new VotifierSession();
+        session.setVersion(VotifierSession.ProtocolVersion.TWO);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(VotifierSession.KEY).set(session);
+        channel.pipeline().addLast(handler);
+        return channel;
+    }
+
+    @Test
+    public void testOkSentOnCompletion() {
+        PendingVoteHandler voteHandler = new PendingVoteHandler();
+        InFlightVoteLimiter limiter = new InFlightVoteLimiter(2, 1, InFlightVoteLimiter.OverloadAction.REJECT);
+        EmbeddedChannel channel = createChannel(new VoteInboundHandler(voteHandler, limiter));
+
+        channel.writeInbound(VOTE);
+        assertNull(channel.readOutbound());
+        assertEquals(1, limiter.getInFlight());
+
+        voteHandler.future.complete(null);
+        channel.runPendingTasks();
+        ByteBuf response = channel.readOutbound();
+        assertEquals("{\"status\":\"ok\"}\r\n", response.toString(StandardCharsets.UTF_8));
+        assertEquals(0, limiter.getInFlight());
+        assertFalse(channel.isOpen());
+        assertNull(voteHandler.error);
+    }
+
+    @Test
+    public void testErrorSentOnFailure() {
+        PendingVoteHandler voteHandler = new PendingVoteHandler();
+        EmbeddedChannel channel = createChannel(new VoteInboundHandler(voteHandler));
+
+        channel.writeInbound(VOTE);
+        IllegalStateException cause = new IllegalStateException("listener failed");
+        voteHandler.future.completeExceptionally(cause);
+        channel.runPendingTasks();
+
+        ByteBuf response = channel.readOutbound();
+        assertEquals("{\"status\":\"error\",\"cause\":\"IllegalStateException\",\"error\":\"listener failed\"}\r\n",
+                response.toString(StandardCharsets.UTF_8));
+        response.release();
+        assertFalse(channel.isOpen());
+        assertSame(cause, voteHandler.error);
+        assertFalse(channel.attr(VotifierSession.KEY).get().hasCompletedVote());
+    }
+
+    @Test
+    public void testErrorSentWhenHandlerTimesOut() throws InterruptedException {
+        PendingVoteHandler voteHandler = new PendingVoteHandler();
+        InFlightVoteLimiter limiter = new InFlightVoteLimiter(2, 1, InFlightVoteLimiter.OverloadAction.REJECT);
+        VoteInboundHandler handler = new VoteInboundHandler(voteHandler, limiter, 50);
+        EmbeddedChannel channel = createChannel(handler);
+
+        channel.writeInbound(VOTE);
+        assertEquals(1, limiter.getInFlight());
+        Thread.sleep(100);
+        channel.runScheduledPendingTasks();
+        channel.runPendingTasks();
+
+        ByteBuf response = channel.readOutbound();
+        assertTrue(response.toString(StandardCharsets.UTF_8).startsWith("{\"status\":\"error\""));
+        response.release();
+        assertFalse(channel.isOpen());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, handler.getHandlerTimeoutCount());
+        // The handler's own stage was failed as well.
+        assertTrue(voteHandler.future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,267 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.util.GsonInst;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VotifierProtocolHandlerTest {
+    private static final VotifierProtocolHandler HANDLER = new VotifierProtocolHandler(true, null);
+
+    private EmbeddedChannel createChannel(VotifierProtocolHandler handler, VotifierSession session) throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(false, false);
+        channel.attr(VotifierSession.KEY).set(session);
+        channel.attr(VotifierPlugin.KEY).set(TestVotifierPlugin.getI());
+        channel.pipeline().addLast("protocolHandler", handler);
+        channel.register();
+        return channel;
+    }
+
+    private static ByteBuf v2Frame(VotifierSession session, Vote vote) throws Exception {
+        return v2Frame(session, vote, false);
+    }
+
+    private static ByteBuf v2Frame(VotifierSession session, Vote vote, boolean multiVote) throws Exception {
+        JsonObject payload = vote.serialize();
+        payload.addProperty("challenge", session.getChallenge());
+        String payloadEncoded = GsonInst.gson.toJson(payload);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(TestVotifierPlugin.getI().getTokens().get("default"));
+        JSONObject object = new JSONObject();
+        object.put("payload", payloadEncoded);
+        object.put("signature",
+                Base64.getEncoder().encodeToString(mac.doFinal(payloadEncoded.getBytes(StandardCharsets.UTF_8))));
+        if (multiVote) {
+            object.put("multiVote", true);
+        }
+
+        byte[] message = object.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeShort(0x733A);
+        buf.writeShort(message.length);
+        buf.writeBytes(message);
+        return buf;
+    }
+
+    @Test
+    public void testGreeting() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+
+        ByteBuf prefix = channel.readOutbound();
+        ByteBuf challenge = channel.readOutbound();
+        assertEquals("VOTIFIER 2 " + session.getChallenge() + "\n",
+                prefix.toString(StandardCharsets.UTF_8) + challenge.toString(StandardCharsets.UTF_8));
+        prefix.release();
+        challenge.release();
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testSuccessfulV2Decode() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+        Vote vote = new Vote("Test", "test", "test", "0");
+
+        assertTrue(channel.writeInbound(v2Frame(session, vote)));
+        assertEquals(vote, channel.readInbound());
+        assertEquals(VotifierSession.ProtocolVersion.TWO, session.getVersion());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testSuccessfulFragmentedV2Decode() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+        Vote vote = new Vote("Test", "test", "test", "0");
+
+        ByteBuf frame = v2Frame(session, vote);
+        while (frame.readableBytes() > 7) {
+            assertFalse(channel.writeInbound(frame.readRetainedSlice(7)));
+        }
+        assertTrue(channel.writeInbound(frame));
+        assertEquals(vote, channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testSuccessfulV1Decode() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+        Vote vote = new Vote("Test", "test", "test", "test");
+
+        assertTrue(channel.writeInbound(Unpooled.wrappedBuffer(VoteUtil.encodePOJOv1(vote))));
+        assertEquals(vote, channel.readInbound());
+        assertEquals(VotifierSession.ProtocolVersion.ONE, session.getVersion());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testSuccessfulOffloadedV1Decode() throws Exception {
+        // Run the "crypto executor" inline, the vote still needs to come back through the event loop.
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(new VotifierProtocolHandler(true, Runnable::run), session);
+        Vote vote = new Vote("Test", "test", "test", "test");
+
+        channel.writeInbound(Unpooled.wrappedBuffer(VoteUtil.encodePOJOv1(vote)));
+        channel.runPendingTasks();
+        assertEquals(vote, channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testOffloadedV1DecodeClosesWhenSaturated() throws Exception {
+        Executor saturated = task -> {
+            throw new RejectedExecutionException();
+        };
+        EmbeddedChannel channel = createChannel(new VotifierProtocolHandler(true, saturated), new VotifierSession());
+
+        channel.writeInbound(Unpooled.wrappedBuffer(VoteUtil.encodePOJOv1(new Vote("Test", "test", "test", "test"))));
+        assertFalse(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testV1Disallowed() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(new VotifierProtocolHandler(false, null), session);
+        Vote vote = new Vote("Test", "test", "test", "test");
+
+        assertThrows(DecoderException.class, () -> channel.writeInbound(Unpooled.wrappedBuffer(VoteUtil.encodePOJOv1(vote))));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testBadPacketWithV1Disallowed() throws Exception {
+        EmbeddedChannel channel = createChannel(new VotifierProtocolHandler(false, null), new VotifierSession());
+
+        assertThrows(DecoderException.class, () -> channel.writeInbound(Unpooled.wrappedBuffer(new byte[3])));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testHandshakeTimeout() throws Exception {
+        VotifierProtocolHandler handler = new VotifierProtocolHandler(true, null, null, 1, 0);
+        EmbeddedChannel channel = createChannel(handler, new VotifierSession());
+
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{0x73, 0x3A, 0x00}));
+        Thread.sleep(20);
+        channel.runScheduledPendingTasks();
+        assertFalse(channel.isActive());
+        assertEquals(1, handler.getHandshakeTimeoutCount());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testNoHandshakeTimeoutWhilePaused() throws Exception {
+        VotifierProtocolHandler handler = new VotifierProtocolHandler(true, null, null, 100, 0);
+        EmbeddedChannel channel = createChannel(handler, new VotifierSession());
+
+        // The in-flight vote limiter stops reading from connections while the server is overloaded.
+        channel.config().setAutoRead(false);
+        Thread.sleep(200);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.isActive());
+        assertEquals(0, handler.getHandshakeTimeoutCount());
+
+        channel.config().setAutoRead(true);
+        Thread.sleep(200);
+        channel.runScheduledPendingTasks();
+        assertFalse(channel.isActive());
+        assertEquals(1, handler.getHandshakeTimeoutCount());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testNoTimeoutAfterVote() throws Exception {
+        VotifierProtocolHandler handler = new VotifierProtocolHandler(true, null, null, 200, 200);
+        VotifierSession session = new VotifierSession();
+        ByteBuf frame = v2Frame(session, new Vote("Test", "test", "test", "0"));
+        EmbeddedChannel channel = createChannel(handler, session);
+
+        assertTrue(channel.writeInbound(frame));
+        Thread.sleep(300);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.isActive());
+        assertEquals(0, handler.getHandshakeTimeoutCount() + handler.getReadTimeoutCount());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testMultiVoteSession() throws Exception {
+        VotifierProtocolHandler handler = new VotifierProtocolHandler(true, null, null, 0, 0, true);
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(handler, session);
+        channel.pipeline().addLast(new VoteInboundHandler(TestVotifierPlugin.getI()));
+        ((ByteBuf) channel.readOutbound()).release();
+        ((ByteBuf) channel.readOutbound()).release();
+
+        for (int i = 0; i < 3; i++) {
+            String challenge = session.getChallenge();
+            channel.writeInbound(v2Frame(session, new Vote("Test", "test", "test", Integer.toString(i)), true));
+            channel.runPendingTasks();
+
+            ByteBuf response = channel.readOutbound();
+            JsonObject object = GsonInst.gson.fromJson(response.toString(StandardCharsets.UTF_8), JsonObject.class);
+            response.release();
+            assertEquals("ok", object.get("status").getAsString());
+            assertEquals(session.getChallenge(), object.get("challenge").getAsString());
+            assertNotEquals(challenge, session.getChallenge());
+            assertTrue(channel.isActive());
+        }
+
+        ByteBuf badFrame = v2Frame(session, new Vote("Test", "test", "test", "3"), true);
+        badFrame.setShort(0, 0x1234);
+        channel.writeInbound(badFrame);
+        channel.runPendingTasks();
+
+        ByteBuf response = channel.readOutbound();
+        JsonObject object = GsonInst.gson.fromJson(response.toString(StandardCharsets.UTF_8), JsonObject.class);
+        response.release();
+        assertEquals("error", object.get("status").getAsString());
+        assertEquals("CorruptedFrameException", object.get("cause").getAsString());
+        assertFalse(channel.isActive());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testMultiVoteNotAllowed() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+        Vote vote = new Vote("Test", "test", "test", "0");
+
+        assertTrue(channel.writeInbound(v2Frame(session, vote, true)));
+        assertEquals(vote, channel.readInbound());
+        assertFalse(session.isMultiVote());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testOversizedV2Frame() throws Exception {
+        VotifierSession session = new VotifierSession();
+        EmbeddedChannel channel = createChannel(HANDLER, session);
+
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeShort(0x733A);
+        buf.writeShort(2048);
+        DecoderException e = assertThrows(DecoderException.class, () -> channel.writeInbound(buf));
+        assertTrue(e instanceof TooLongFrameException);
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,46 @@
+package com.vexsoftware.votifier.net.protocol;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.util.GsonInst;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VotifierResponsesTest {
+    private static String gsonError(Throwable cause) {
+        JsonObject object = new JsonObject();
+        object.addProperty("status", "error");
+        object.addProperty("cause", cause.getClass().getSimpleName());
+        object.addProperty("error", cause.getMessage());
+        return GsonInst.gson.toJson(object) + "\r\n";
+    }
+
+    private static void assertMatchesGson(Throwable cause) {
+        ByteBuf buf = VotifierResponses.error(ByteBufAllocator.DEFAULT, cause);
+        try {
+            assertEquals(gsonError(cause), buf.toString(StandardCharsets.UTF_8));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testOk() {
+        ByteBuf buf = VotifierResponses.ok();
+        assertEquals("{\"status\":\"ok\"}\r\n", buf.toString(StandardCharsets.UTF_8));
+        buf.release();
+        // The shared buffer must survive being released by the transport.
+        assertEquals("{\"status\":\"ok\"}\r\n", VotifierResponses.ok().toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrorMatchesGson() {
+        assertMatchesGson(new RuntimeException("Unknown service 'Test'"));
+        assertMatchesGson(new IllegalStateException("a \"quoted\" <b>&</b> = \\ \t\n\u0001 \u00e9\u2713 \u2028"));
+        assertMatchesGson(new IllegalStateException());
+    }
+}
@@ -0,0 +1,54 @@
+package com.vexsoftware.votifier.net.protocol.crypto;
+
+import com.vexsoftware.votifier.net.protocol.TestVotifierPlugin;
+import com.vexsoftware.votifier.net.protocol.v1crypto.RSA;
+import com.vexsoftware.votifier.util.KeyCreator;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VotifierCryptoTest {
+    @Test
+    public void snapshotIsReusedUntilTokensChange() {
+        TestVotifierPlugin plugin = TestVotifierPlugin.getI();
+        try {
+            VotifierCrypto first = VotifierCrypto.forPlugin(plugin);
+            assertSame(first, VotifierCrypto.forPlugin(plugin));
+            assertNotNull(first.getVerifier("Unknown Service"));
+
+            plugin.specificKeysOnly();
+            VotifierCrypto second = VotifierCrypto.forPlugin(plugin);
+            assertNotSame(first, second);
+            assertNotNull(second.getVerifier("Test"));
+            assertNull(second.getVerifier("Unknown Service"));
+        } finally {
+            plugin.restoreDefault();
+        }
+    }
+
+    @Test
+    public void verifierChecksSignatures() throws Exception {
+        byte[] message = "{\"username\":\"test\"}".getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(KeyCreator.createKeyFrom("test"));
+        byte[] signature = mac.doFinal(message);
+
+        TokenVerifier verifier = VotifierCrypto.forPlugin(TestVotifierPlugin.getI()).getVerifier("default");
+        assertTrue(verifier.verify(signature, message));
+        assertTrue(verifier.verify(signature, message));
+        assertFalse(verifier.verify(new byte[signature.length], message));
+    }
+
+    @Test
+    public void decryptsProtocolV1Blocks() throws Exception {
+        byte[] data = "VOTE\nTest\ntest\ntest\ntest\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] encrypted = RSA.encrypt(data, TestVotifierPlugin.getI().getProtocolV1Key().getPublic());
+
+        VotifierCrypto crypto = VotifierCrypto.forPlugin(TestVotifierPlugin.getI());
+        assertArrayEquals(data, crypto.decryptV1(encrypted));
+        assertArrayEquals(data, crypto.decryptV1(encrypted));
+    }
+}
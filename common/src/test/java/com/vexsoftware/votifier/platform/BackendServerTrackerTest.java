@@ -0,0 +1,73 @@
+package com.vexsoftware.votifier.platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackendServerTrackerTest {
+
+    private static final class TestServer implements BackendServer {
+        private final String name;
+
+        private TestServer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean sendPluginMessage(String channel, byte[] data) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testSnapshotKeptUntilServersChange() {
+        List<Object> wrapped = new ArrayList<>();
+        BackendServerTracker<String> tracker = new BackendServerTracker<>(name -> {
+            wrapped.add(name);
+            return new TestServer(name);
+        });
+        String hub = "hub";
+        String survival = "survival";
+        List<String> servers = new ArrayList<>(Arrays.asList(hub, survival));
+
+        BackendServerSnapshot first = tracker.update(servers);
+        assertEquals(2, first.size());
+        assertEquals("hub", first.get(0).getName());
+        assertSame(first, tracker.update(new ArrayList<>(servers)));
+        assertEquals(2, wrapped.size());
+
+        // Only the new server is wrapped, and the wrappers of the others are kept.
+        servers.add("creative");
+        BackendServerSnapshot second = tracker.update(servers);
+        assertNotSame(first, second);
+        assertEquals(3, second.size());
+        assertSame(first.get(1), second.get(1));
+        assertEquals(3, wrapped.size());
+
+        servers.remove(hub);
+        BackendServerSnapshot third = tracker.update(servers);
+        assertEquals(Arrays.asList(second.get(1), second.get(2)), third.asList());
+    }
+
+    @Test
+    public void testFilter() {
+        BackendServerSnapshot snapshot = BackendServerSnapshot.of(Arrays.asList(
+                new TestServer("hub"), new TestServer("survival"), new TestServer("creative")));
+        BackendServerSnapshot filtered = snapshot.filter(name -> !name.equals("survival"));
+        assertEquals(2, filtered.size());
+        assertEquals("hub", filtered.get(0).getName());
+        assertEquals("creative", filtered.get(1).getName());
+
+        assertSame(snapshot, snapshot.filter(name -> true));
+        assertSame(BackendServerSnapshot.EMPTY, snapshot.filter(name -> false));
+    }
+}
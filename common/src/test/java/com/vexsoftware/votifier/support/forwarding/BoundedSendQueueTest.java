@@ -0,0 +1,54 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedSendQueueTest {
+
+    @Test
+    public void testRejectKeepsQueuedVotes() {
+        BoundedSendQueue<Integer> queue = new BoundedSendQueue<>(2, BoundedSendQueue.OverflowPolicy.REJECT);
+        assertNull(queue.offer(1));
+        assertNull(queue.offer(2));
+        assertEquals(3, queue.offer(3));
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testDropOldest() {
+        BoundedSendQueue<Integer> queue = new BoundedSendQueue<>(2, BoundedSendQueue.OverflowPolicy.DROP_OLDEST);
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(1, queue.offer(3));
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+    }
+
+    @Test
+    public void testStats() {
+        BoundedSendQueue<Integer> queue = new BoundedSendQueue<>(3, BoundedSendQueue.OverflowPolicy.SPILL);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+        // Votes put back never overflow.
+        queue.addFirst(0);
+        queue.addFirst(-1);
+
+        BoundedSendQueue.Stats stats = queue.getStats();
+        assertEquals(4, stats.getDepth());
+        assertEquals(4, stats.getHighWatermark());
+        assertEquals(2, stats.getOverflowed());
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testPolicyFromConfig() {
+        assertEquals(BoundedSendQueue.OverflowPolicy.DROP_OLDEST, BoundedSendQueue.OverflowPolicy.fromConfig("drop-oldest"));
+        assertEquals(BoundedSendQueue.OverflowPolicy.SPILL, BoundedSendQueue.OverflowPolicy.fromConfig("Spill"));
+        assertThrows(IllegalArgumentException.class, () -> BoundedSendQueue.OverflowPolicy.fromConfig("block"));
+    }
+}
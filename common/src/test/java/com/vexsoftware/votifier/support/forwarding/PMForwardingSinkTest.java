@@ -8,7 +8,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class PMForwardingSinkTest {
 
@@ -46,4 +48,62 @@ public class PMForwardingSinkTest {
             assertEquals(sentVotes.get(i), receivedVotes.get(i));
         }
     }
+
+    @Test
+    public void testSuccessfulBinaryDecode() {
+        List<Vote> receivedVotes = new ArrayList<>();
+        AbstractPluginMessagingForwardingSink sink = new AbstractPluginMessagingForwardingSink(receivedVotes::add) {
+            @Override
+            public void halt() {
+
+            }
+        };
+
+        List<Vote> sentVotes = Arrays.asList(
+                new Vote("serviceA", "usernameA", "1.1.1.1", "1546300800"),
+                new Vote("serviceB", "usernameBBBBBBB", "1.2.23.4", "1514764800", new byte[]{1, 2, 3})
+        );
+        assertNull(sink.handlePluginMessage(PluginMessageVoteCodec.encode(sentVotes)));
+
+        assertEquals(sentVotes, receivedVotes);
+    }
+
+    @Test
+    public void testAcknowledgesVotesWithIds() {
+        List<Vote> receivedVotes = new ArrayList<>();
+        AbstractPluginMessagingForwardingSink sink = new AbstractPluginMessagingForwardingSink(receivedVotes::add) {
+            @Override
+            public void halt() {
+
+            }
+        };
+
+        Vote vote = new Vote("serviceA", "usernameA", "1.1.1.1", "1546300800");
+        byte[] ack = sink.handlePluginMessage(PluginMessageVoteCodec.frame(Arrays.asList(
+                PluginMessageVoteCodec.encodeRecord(vote, 7), PluginMessageVoteCodec.encodeRecord(vote, 300)), true));
+
+        assertEquals(Arrays.asList(vote, vote), receivedVotes);
+        assertArrayEquals(new long[]{7, 300}, PluginMessageVoteCodec.decodeAck(ack));
+    }
+
+    @Test
+    public void testDuplicateIdsAreAcknowledgedAgain() {
+        List<Vote> receivedVotes = new ArrayList<>();
+        AbstractPluginMessagingForwardingSink sink = new AbstractPluginMessagingForwardingSink(receivedVotes::add) {
+            @Override
+            public void halt() {
+
+            }
+        };
+
+        // The acknowledgement of the first message got lost, so the proxy sends vote 7 again.
+        Vote first = new Vote("serviceA", "usernameA", "1.1.1.1", "1546300800");
+        Vote second = new Vote("serviceB", "usernameB", "1.1.1.1", "1546300801");
+        sink.handlePluginMessage(PluginMessageVoteCodec.encode(first, 7));
+        byte[] ack = sink.handlePluginMessage(PluginMessageVoteCodec.frame(Arrays.asList(
+                PluginMessageVoteCodec.encodeRecord(first, 7), PluginMessageVoteCodec.encodeRecord(second, 8)), true));
+
+        assertEquals(Arrays.asList(first, second), receivedVotes);
+        assertArrayEquals(new long[]{7, 8}, PluginMessageVoteCodec.decodeAck(ack));
+    }
 }
@@ -0,0 +1,366 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import com.google.gson.JsonStreamParser;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.platform.BackendServer;
+import com.vexsoftware.votifier.platform.JavaUtilLogger;
+import com.vexsoftware.votifier.platform.LoggingAdapter;
+import com.vexsoftware.votifier.platform.ProxyVotifierPlugin;
+import com.vexsoftware.votifier.platform.scheduler.ScheduledVotifierTask;
+import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
+import com.vexsoftware.votifier.support.forwarding.cache.MemoryVoteCache;
+import com.vexsoftware.votifier.util.VotifierStatus;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PMForwardingSourceTest {
+
+    // Runs delayed tasks only when asked to, and remembers their delays.
+    private static final class ManualScheduler implements VotifierScheduler {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final List<Long> delaysMillis = new ArrayList<>();
+
+        @Override
+        public ScheduledVotifierTask sync(Runnable runnable) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledVotifierTask onPool(Runnable runnable) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledVotifierTask delayedSync(Runnable runnable, int delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledVotifierTask delayedOnPool(Runnable runnable, int delay, TimeUnit unit) {
+            tasks.add(runnable);
+            delaysMillis.add(unit.toMillis(delay));
+            return () -> {
+            };
+        }
+
+        @Override
+        public ScheduledVotifierTask repeatOnPool(Runnable runnable, int delay, int repeat, TimeUnit unit) {
+            return () -> {
+            };
+        }
+
+        private void runNext() {
+            tasks.remove().run();
+        }
+
+        private void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class TestProxyPlugin implements ProxyVotifierPlugin {
+        private final ManualScheduler scheduler = new ManualScheduler();
+        private final LoggingAdapter logger = new JavaUtilLogger(Logger.getLogger("PMForwardingSourceTest"));
+
+        @Override
+        public Collection<BackendServer> getAllBackendServers() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Optional<BackendServer> getServer(String name) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Map<String, Key> getTokens() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public KeyPair getProtocolV1Key() {
+            return null;
+        }
+
+        @Override
+        public LoggingAdapter getPluginLogger() {
+            return logger;
+        }
+
+        @Override
+        public VotifierScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public void onVoteReceived(Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        }
+    }
+
+    private static final class RecordingServer implements BackendServer {
+        private final List<byte[]> messages = new ArrayList<>();
+        private boolean accepting = true;
+
+        @Override
+        public String getName() {
+            return "hub";
+        }
+
+        @Override
+        public boolean sendPluginMessage(String channel, byte[] data) {
+            if (accepting) {
+                messages.add(data);
+            }
+            return accepting;
+        }
+    }
+
+    private static final class TestSource extends AbstractPluginMessagingForwardingSource {
+        private TestSource(TestProxyPlugin plugin, MemoryVoteCache cache) {
+            super("nuvotifier:votes", new ServerFilter(), plugin, cache, 5);
+        }
+
+        private void connect(BackendServer server) {
+            onServerConnect(server);
+        }
+
+        private void forwardTo(BackendServer server, Vote vote, String player) {
+            assertTrue(forwardSpecific(server, vote, player));
+        }
+    }
+
+    private static MemoryVoteCache cacheWithVotes(TestProxyPlugin plugin, int count) {
+        MemoryVoteCache cache = new MemoryVoteCache(plugin, -1);
+        for (int i = 0; i < count; i++) {
+            cache.addToCache(new Vote("Test", "player" + i, "127.0.0.1", Integer.toString(i)), "hub");
+        }
+        return cache;
+    }
+
+    @Test
+    public void testDumpIsPackedBySize() {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        TestSource source = new TestSource(plugin, cacheWithVotes(plugin, 1000));
+        source.setMaxMessageSize(2000);
+        source.setMessageFormat(AbstractPluginMessagingForwardingSource.MessageFormat.BINARY);
+        RecordingServer server = new RecordingServer();
+
+        source.connect(server);
+        plugin.scheduler.runAll();
+
+        List<Vote> received = new ArrayList<>();
+        for (byte[] message : server.messages) {
+            assertTrue(message.length <= 2000);
+            received.addAll(PluginMessageVoteCodec.decode(message));
+        }
+        assertEquals(1000, received.size());
+        // Far fewer messages than with a fixed five votes each.
+        assertTrue(server.messages.size() < 1000 / 20, "messages " + server.messages.size());
+
+        AbstractPluginMessagingForwardingSource.DumpProgress progress = source.getDumpProgress().get("hub");
+        assertEquals(0, progress.getWaiting());
+        assertEquals(1000, progress.getSent());
+        assertEquals(AbstractPluginMessagingForwardingSource.MAX_DUMP_RATE, progress.getVotesPerSecond());
+
+        // The rate went up with every message, so the pauses between messages got shorter.
+        List<Long> delays = plugin.scheduler.delaysMillis;
+        assertTrue(delays.get(delays.size() - 1) < delays.get(1));
+    }
+
+    @Test
+    public void testConnectsShareOneDrain() {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        MemoryVoteCache cache = cacheWithVotes(plugin, 1000);
+        TestSource source = new TestSource(plugin, cache);
+        RecordingServer server = new RecordingServer();
+
+        for (int i = 0; i < 50; i++) {
+            source.connect(server);
+        }
+        assertEquals(1, plugin.scheduler.tasks.size());
+        plugin.scheduler.runNext();
+
+        // Votes cached while the drain is in flight are picked up by it.
+        cache.addToCache(new Vote("Test", "late", "127.0.0.1", "1000"), "hub");
+        source.connect(server);
+        assertEquals(1, plugin.scheduler.tasks.size());
+        plugin.scheduler.runAll();
+
+        List<String> timestamps = new ArrayList<>();
+        for (byte[] message : server.messages) {
+            for (Vote vote : PluginMessageVoteCodec.isBinary(message) ? PluginMessageVoteCodec.decode(message) :
+                    decodeJson(message)) {
+                timestamps.add(vote.getTimeStamp());
+            }
+        }
+        assertEquals(1001, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(Integer.toString(i), timestamps.get(i));
+        }
+
+        AbstractPluginMessagingForwardingSource.DumpProgress progress = source.getDumpProgress().get("hub");
+        assertFalse(progress.isDraining());
+        assertEquals(50, progress.getMergedDrains());
+
+        // Once the drain is done, the next connect starts a new one.
+        source.connect(server);
+        assertEquals(1, plugin.scheduler.tasks.size());
+    }
+
+    @Test
+    public void testFailedDumpReturnsToCache() {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        MemoryVoteCache cache = cacheWithVotes(plugin, 300);
+        TestSource source = new TestSource(plugin, cache);
+        RecordingServer server = new RecordingServer();
+        server.accepting = false;
+
+        source.connect(server);
+        plugin.scheduler.runNext();
+        cache.addToCache(new Vote("Test", "late", "127.0.0.1", "300"), "hub");
+        plugin.scheduler.runAll();
+
+        AbstractPluginMessagingForwardingSource.DumpProgress progress = source.getDumpProgress().get("hub");
+        assertEquals(0, progress.getSent());
+        assertEquals(3, progress.getFailedMessages());
+        assertFalse(progress.isDraining());
+
+        // The votes go back ahead of the one cached in the meantime.
+        List<Vote> cached = new ArrayList<>(cache.evict("hub"));
+        assertEquals(301, cached.size());
+        for (int i = 0; i < cached.size(); i++) {
+            assertEquals(Integer.toString(i), cached.get(i).getTimeStamp());
+        }
+    }
+
+    private static List<Vote> decodeJson(byte[] message) {
+        List<Vote> votes = new ArrayList<>();
+        JsonStreamParser parser = new JsonStreamParser(new String(message, StandardCharsets.UTF_8));
+        while (parser.hasNext()) {
+            votes.add(new Vote(parser.next().getAsJsonObject()));
+        }
+        return votes;
+    }
+
+    @Test
+    public void testUnacknowledgedVotesAreCachedAgain() throws InterruptedException {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        MemoryVoteCache cache = cacheWithVotes(plugin, 10);
+        TestSource source = new TestSource(plugin, cache);
+        source.setMaxMessageSize(200);
+        source.enableAcks(1);
+        RecordingServer server = new RecordingServer();
+
+        source.connect(server);
+        plugin.scheduler.runAll();
+        assertTrue(server.messages.size() > 1);
+        assertEquals(10, source.getPendingAcks().get("hub"));
+
+        // The server only gets to handle the first message before the player carrying the rest leaves.
+        List<Vote> received = new ArrayList<>();
+        AbstractPluginMessagingForwardingSink sink = new AbstractPluginMessagingForwardingSink(received::add) {
+            @Override
+            public void halt() {
+            }
+        };
+        source.handleAck("hub", sink.handlePluginMessage(server.messages.get(0)));
+        assertEquals(10 - received.size(), source.getPendingAcks().get("hub"));
+
+        Thread.sleep(10);
+        source.expireAcks();
+        assertTrue(source.getPendingAcks().isEmpty());
+        List<Vote> cached = new ArrayList<>(cache.evict("hub"));
+        assertEquals(10 - received.size(), cached.size());
+        for (int i = 0; i < cached.size(); i++) {
+            assertEquals(Integer.toString(received.size() + i), cached.get(i).getTimeStamp());
+        }
+    }
+
+    @Test
+    public void testResentVotesKeepTheirIds() throws InterruptedException {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        MemoryVoteCache cache = cacheWithVotes(plugin, 3);
+        TestSource source = new TestSource(plugin, cache);
+        source.enableAcks(1);
+        RecordingServer server = new RecordingServer();
+        List<Vote> received = new ArrayList<>();
+        AbstractPluginMessagingForwardingSink sink = new AbstractPluginMessagingForwardingSink(received::add) {
+            @Override
+            public void halt() {
+            }
+        };
+
+        // The server handles the votes, but its acknowledgement never reaches the proxy.
+        source.connect(server);
+        plugin.scheduler.runAll();
+        assertEquals(1, server.messages.size());
+        sink.handlePluginMessage(server.messages.get(0));
+        Thread.sleep(10);
+        source.expireAcks();
+
+        source.connect(server);
+        plugin.scheduler.runAll();
+        assertEquals(2, server.messages.size());
+        List<Long> firstIds = new ArrayList<>();
+        List<Long> secondIds = new ArrayList<>();
+        PluginMessageVoteCodec.decode(server.messages.get(0), firstIds::add);
+        PluginMessageVoteCodec.decode(server.messages.get(1), secondIds::add);
+        assertEquals(firstIds, secondIds);
+
+        // The server recognizes the votes, acknowledges them and doesn't hand them out twice.
+        source.handleAck("hub", sink.handlePluginMessage(server.messages.get(1)));
+        assertEquals(3, received.size());
+        assertTrue(source.getPendingAcks().isEmpty());
+    }
+
+    @Test
+    public void testUnacknowledgedPlayerVoteGoesToPlayerCache() throws InterruptedException {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        MemoryVoteCache cache = new MemoryVoteCache(plugin, -1);
+        TestSource source = new TestSource(plugin, cache);
+        source.enableAcks(1);
+        Vote vote = new Vote("Test", "player", "127.0.0.1", "0");
+
+        source.forwardTo(new RecordingServer(), vote, "player");
+        Thread.sleep(10);
+        source.expireAcks();
+
+        assertTrue(cache.evict("hub").isEmpty());
+        assertEquals(Collections.singletonList(vote), new ArrayList<>(cache.evictPlayer("player")));
+    }
+
+    @Test
+    public void testStatusDescribesDumps() {
+        TestProxyPlugin plugin = new TestProxyPlugin();
+        TestSource source = new TestSource(plugin, cacheWithVotes(plugin, 10));
+        source.enableAcks(1000);
+        source.connect(new RecordingServer());
+        plugin.scheduler.runAll();
+
+        assertEquals(Arrays.asList(
+                "The Votifier server is not running.",
+                "Queue for hub: 0/" + BoundedSendQueue.DEFAULT_CAPACITY + " waiting, peak 10, 0 overflowed",
+                "Cached votes for hub: 10 sent, 0 failed message(s)",
+                "Awaiting acknowledgement from hub: 10 vote(s)"), VotifierStatus.describe(null, source));
+    }
+}
@@ -0,0 +1,80 @@
+package com.vexsoftware.votifier.support.forwarding;
+
+import com.vexsoftware.votifier.model.Vote;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PluginMessageVoteCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        List<Vote> votes = Arrays.asList(
+                new Vote("serviceA", "usernameA", "1.1.1.1", "1546300800"),
+                new Vote("T\u00e9st \u2713 \ud83d\ude00", "usernameB", "::1", "0", "extra".getBytes(StandardCharsets.UTF_8)),
+                new Vote("serviceC", "usernameC", "", "1514764800")
+        );
+        byte[] message = PluginMessageVoteCodec.encode(votes);
+        assertTrue(PluginMessageVoteCodec.isBinary(message));
+        assertEquals(votes, PluginMessageVoteCodec.decode(message));
+
+        assertEquals(Collections.singletonList(votes.get(1)),
+                PluginMessageVoteCodec.decode(PluginMessageVoteCodec.encode(votes.get(1))));
+    }
+
+    @Test
+    public void testIdsRoundTrip() {
+        Vote vote = new Vote("serviceA", "usernameA", "1.1.1.1", "1546300800");
+        List<Long> ids = new ArrayList<>();
+        assertEquals(Collections.singletonList(vote), PluginMessageVoteCodec.decode(
+                PluginMessageVoteCodec.encode(vote, Long.MAX_VALUE), ids::add));
+        assertEquals(Collections.singletonList(Long.MAX_VALUE), ids);
+
+        long[] acknowledged = {1, 127, 128, 1L << 40};
+        byte[] ack = PluginMessageVoteCodec.encodeAck(acknowledged);
+        assertTrue(PluginMessageVoteCodec.isAck(ack));
+        assertFalse(PluginMessageVoteCodec.isBinary(ack));
+        assertArrayEquals(acknowledged, PluginMessageVoteCodec.decodeAck(ack));
+        assertThrows(IllegalArgumentException.class,
+                () -> PluginMessageVoteCodec.decodeAck(Arrays.copyOf(ack, ack.length - 1)));
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+        List<Vote> votes = new ArrayList<>();
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            Vote vote = new Vote("MinecraftServers.org", "player" + i, "127.0.0.1", Long.toString(1546300800000L + i));
+            votes.add(vote);
+            json.append(vote.serialize());
+        }
+        byte[] message = PluginMessageVoteCodec.encode(votes);
+        assertTrue(message.length < json.toString().getBytes(StandardCharsets.UTF_8).length * 2 / 3);
+        assertEquals(200, PluginMessageVoteCodec.decode(message).size());
+    }
+
+    @Test
+    public void testJsonIsNotBinary() {
+        byte[] json = new Vote("serviceA", "usernameA", "1.1.1.1", "0").serialize().toString()
+                .getBytes(StandardCharsets.UTF_8);
+        assertFalse(PluginMessageVoteCodec.isBinary(json));
+        assertFalse(PluginMessageVoteCodec.isBinary(new byte[0]));
+    }
+
+    @Test
+    public void testTruncatedMessageRejected() {
+        byte[] message = PluginMessageVoteCodec.encode(Arrays.asList(
+                new Vote("serviceA", "usernameA", "1.1.1.1", "0"),
+                new Vote("serviceB", "usernameB", "1.1.1.1", "0")));
+        for (int length = 4; length < message.length; length++) {
+            byte[] truncated = Arrays.copyOf(message, length);
+            assertThrows(IllegalArgumentException.class, () -> PluginMessageVoteCodec.decode(truncated));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000);
+        assertEquals(-1, breaker.onFailure());
+        assertEquals(-1, breaker.onFailure());
+        long backoff = breaker.onFailure();
+        assertTrue(backoff >= 500 && backoff <= 1000, "backoff " + backoff);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // Further failures while open don't schedule another probe.
+        assertEquals(-1, breaker.onFailure());
+    }
+
+    @Test
+    public void testFailedProbeDoublesBackoff() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 3000);
+        breaker.onFailure();
+        breaker.allowProbe();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        long backoff = breaker.onFailure();
+        assertTrue(backoff >= 1000 && backoff <= 2000, "backoff " + backoff);
+        breaker.allowProbe();
+        backoff = breaker.onFailure();
+        assertTrue(backoff >= 1500 && backoff <= 3000, "backoff " + backoff);
+    }
+
+    @Test
+    public void testProbeGetsOneMoreChance() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        breaker.allowProbe();
+        breaker.onConnected();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.onFailure() >= 0);
+
+        breaker.allowProbe();
+        breaker.onConnected();
+        breaker.onSuccess();
+        assertEquals(-1, breaker.onFailure());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testRttAdaptsTimeout() {
+        RttEstimator rtt = new RttEstimator(5000, 100, 10000);
+        assertEquals(5000, rtt.getTimeoutMillis());
+        for (int i = 0; i < 50; i++) {
+            rtt.sample(20_000_000L);
+        }
+        assertEquals(100, rtt.getTimeoutMillis());
+
+        rtt.sample(2_000_000_000L);
+        assertTrue(rtt.getTimeoutMillis() > 1000);
+
+        long before = rtt.getTimeoutMillis();
+        rtt.onTimeout();
+        assertEquals(Math.min(10000, before * 2), rtt.getTimeoutMillis());
+    }
+}
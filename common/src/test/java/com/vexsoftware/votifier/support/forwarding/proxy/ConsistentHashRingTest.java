@@ -0,0 +1,63 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsistentHashRingTest {
+
+    private static ConsistentHashRing<String> ring(int servers) {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < servers; i++) {
+            nodes.put("server" + i, "server" + i);
+        }
+        return new ConsistentHashRing<>(nodes, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    @Test
+    public void testBalanced() {
+        ConsistentHashRing<String> ring = ring(10);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            counts.merge(ring.lookup("player" + i, 1).get(0), 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 7000 && count < 13000, "count " + count);
+        }
+    }
+
+    @Test
+    public void testOnlyNewServerGainsKeys() {
+        ConsistentHashRing<String> before = ring(10);
+        ConsistentHashRing<String> after = ring(11);
+        int moved = 0;
+        for (int i = 0; i < 100000; i++) {
+            String owner = after.lookup("player" + i, 1).get(0);
+            if (!owner.equals(before.lookup("player" + i, 1).get(0))) {
+                assertEquals("server10", owner);
+                moved++;
+            }
+        }
+        // About one in eleven keys should move.
+        assertTrue(moved > 6000 && moved < 12000, "moved " + moved);
+    }
+
+    @Test
+    public void testReplicasAreDistinct() {
+        ConsistentHashRing<String> ring = ring(5);
+        for (int i = 0; i < 1000; i++) {
+            List<String> owners = ring.lookup("player" + i, 3);
+            assertEquals(3, owners.size());
+            assertEquals(3, new HashSet<>(owners).size());
+            assertEquals(ring.lookup("player" + i, 1).get(0), owners.get(0));
+        }
+        assertEquals(5, ring.lookup("player", 8).size());
+    }
+}
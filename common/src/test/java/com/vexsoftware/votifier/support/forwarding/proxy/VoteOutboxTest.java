@@ -0,0 +1,157 @@
+package com.vexsoftware.votifier.support.forwarding.proxy;
+
+import com.vexsoftware.votifier.model.Vote;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteOutboxTest {
+    @TempDir
+    Path directory;
+
+    private static Vote vote(int i) {
+        return new Vote("Test", "user" + i, "127.0.0.1", Integer.toString(i));
+    }
+
+    @Test
+    public void testRecoversUnacknowledgedVotes() throws Exception {
+        Path file = directory.resolve("hub.log");
+        List<Long> ids = new ArrayList<>();
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            for (int i = 0; i < 4; i++) {
+                ids.add(outbox.append(vote(i)).get());
+            }
+            outbox.ack(ids.get(0));
+            outbox.ack(ids.get(2));
+            assertEquals(2, outbox.getPendingCount());
+        }
+
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            assertEquals(ids.get(1), outbox.getRecovered().get(0));
+            assertEquals(2, outbox.getRecovered().size());
+            assertEquals(vote(1), outbox.getPending(outbox.getRecovered().get(0)));
+            assertEquals(vote(3), outbox.getPending(outbox.getRecovered().get(1)));
+
+            // New votes never reuse an ID.
+            assertTrue(outbox.append(vote(4)).get() > ids.get(3));
+        }
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        Queue<Runnable> flushes = new ArrayDeque<>();
+        Path file = directory.resolve("hub.log");
+        try (VoteOutbox outbox = VoteOutbox.open(file, flushes::add)) {
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(outbox.append(vote(i)));
+            }
+            assertEquals(1, flushes.size());
+            assertFalse(futures.get(0).isDone());
+
+            flushes.poll().run();
+            for (CompletableFuture<Long> future : futures) {
+                assertTrue(future.isDone());
+            }
+        }
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            assertEquals(100, outbox.getRecovered().size());
+        }
+    }
+
+    @Test
+    public void testTruncatedOnceEverythingIsAcknowledged() throws Exception {
+        Path file = directory.resolve("hub.log");
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            long first = outbox.append(vote(0)).get();
+            long second = outbox.append(vote(1)).get();
+            outbox.ack(first);
+            assertTrue(Files.size(file) > 5);
+            outbox.ack(second);
+            assertEquals(5, Files.size(file));
+        }
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws Exception {
+        Path file = directory.resolve("hub.log");
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            outbox.append(vote(0)).get();
+            outbox.append(vote(1)).get();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            assertEquals(1, outbox.getRecovered().size());
+            assertEquals(vote(0), outbox.getPending(outbox.getRecovered().get(0)));
+            outbox.append(vote(2)).get();
+        }
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            assertEquals(2, outbox.getRecovered().size());
+        }
+    }
+
+    @Test
+    public void testKeepsWritingAfterCompaction() throws Exception {
+        Queue<Runnable> flushes = new ArrayDeque<>();
+        Path file = directory.resolve("hub.log");
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        try (VoteOutbox outbox = VoteOutbox.open(file, flushes::add)) {
+            // Enough to pass the compaction threshold in one flush.
+            for (int i = 0; i < 12000; i++) {
+                futures.add(outbox.append(vote(i)));
+            }
+            flushes.poll().run();
+            assertFalse(Files.exists(directory.resolve("hub.log.tmp")));
+
+            for (int i = 0; i < 11990; i++) {
+                outbox.ack(futures.get(i).get());
+            }
+            outbox.append(vote(12000));
+            flushes.poll().run();
+            assertEquals(11, outbox.getPendingCount());
+        }
+
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            assertEquals(11, outbox.getRecovered().size());
+            assertEquals(vote(11990), outbox.getPending(outbox.getRecovered().get(0)));
+            assertEquals(vote(12000), outbox.getPending(outbox.getRecovered().get(10)));
+        }
+    }
+
+    @Test
+    public void testParkedVotesAreHandedOutOldestFirst() throws Exception {
+        Path file = directory.resolve("hub.log");
+        try (VoteOutbox outbox = VoteOutbox.open(file, Runnable::run)) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                ids.add(outbox.append(vote(i)).get());
+            }
+            outbox.park(ids.get(3));
+            outbox.park(ids.get(1));
+            outbox.park(ids.get(4));
+            outbox.ack(ids.get(4));
+            assertEquals(2, outbox.getParkedCount());
+
+            List<Long> unparked = outbox.unpark(1);
+            assertEquals(ids.subList(1, 2), unparked);
+            assertEquals(vote(1), outbox.getPending(unparked.get(0)));
+            assertEquals(ids.subList(3, 4), outbox.unpark(10));
+            assertEquals(0, outbox.getParkedCount());
+            assertTrue(outbox.unpark(10).isEmpty());
+        }
+    }
+}
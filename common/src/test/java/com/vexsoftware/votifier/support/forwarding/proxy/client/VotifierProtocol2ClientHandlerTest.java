@@ -0,0 +1,161 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.protocol.TestVotifierPlugin;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VotifierProtocol2ClientHandlerTest {
+    // The test plugin has no logger, so keep debug logging off.
+    private static final TestVotifierPlugin PLUGIN = new TestVotifierPlugin() {
+        @Override
+        public boolean isDebug() {
+            return false;
+        }
+    };
+
+    private static class RecordingSession implements VotifierSessionHandler {
+        private final Queue<Vote> votes = new ArrayDeque<>();
+        private boolean keepIdle;
+        private VotifierProtocol2ClientHandler idle;
+        private int successes;
+        private Throwable failure;
+        private Vote notSent;
+        private boolean closed;
+        private Throwable closeError;
+
+        @Override
+        public Vote nextVote() {
+            return votes.poll();
+        }
+
+        @Override
+        public boolean onIdle(VotifierProtocol2ClientHandler connection) {
+            if (keepIdle) {
+                idle = connection;
+            }
+            return keepIdle;
+        }
+
+        @Override
+        public void onSuccess() {
+            successes++;
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            failure = error;
+        }
+
+        @Override
+        public void onNotSent(Vote vote) {
+            notSent = vote;
+        }
+
+        @Override
+        public void onClosed(Throwable error) {
+            closed = true;
+            closeError = error;
+        }
+    }
+
+    private static EmbeddedChannel createChannel(RecordingSession session) {
+        return new EmbeddedChannel(new VotifierProtocol2ClientHandler(session, PLUGIN, 5000, 4000));
+    }
+
+    @Test
+    public void testVotesSentOverOneConnection() {
+        Vote first = new Vote("Test", "test", "test", "0");
+        Vote second = new Vote("Test", "test", "test", "1");
+        RecordingSession session = new RecordingSession();
+        session.votes.addAll(Arrays.asList(first, second));
+        EmbeddedChannel channel = createChannel(session);
+
+        channel.writeInbound("VOTIFIER 2 abc");
+        VoteRequest request = channel.readOutbound();
+        assertEquals("abc", request.getChallenge());
+        assertEquals(first, request.getVote());
+
+        channel.writeInbound("{\"status\":\"ok\",\"challenge\":\"def\"}");
+        request = channel.readOutbound();
+        assertEquals("def", request.getChallenge());
+        assertEquals(second, request.getVote());
+
+        channel.writeInbound("{\"status\":\"ok\"}");
+        assertEquals(2, session.successes);
+        assertFalse(channel.isActive());
+        assertTrue(session.closed);
+        assertNull(session.closeError);
+        assertNull(session.failure);
+    }
+
+    @Test
+    public void testIdleConnectionSendsLater() {
+        RecordingSession session = new RecordingSession();
+        session.keepIdle = true;
+        EmbeddedChannel channel = createChannel(session);
+
+        channel.writeInbound("VOTIFIER 2 abc");
+        assertNull(channel.readOutbound());
+        assertSame(channel.pipeline().last(), session.idle);
+        assertTrue(channel.isActive());
+
+        Vote vote = new Vote("Test", "test", "test", "0");
+        session.idle.send(vote);
+        channel.runPendingTasks();
+        VoteRequest request = channel.readOutbound();
+        assertEquals("abc", request.getChallenge());
+        assertEquals(vote, request.getVote());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testVoteForClosedIdleConnectionIsHandedBack() {
+        RecordingSession session = new RecordingSession();
+        session.keepIdle = true;
+        EmbeddedChannel channel = createChannel(session);
+
+        channel.writeInbound("VOTIFIER 2 abc");
+        channel.close();
+
+        Vote vote = new Vote("Test", "test", "test", "0");
+        session.idle.send(vote);
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+        assertEquals(vote, session.notSent);
+        assertNull(session.failure);
+    }
+
+    @Test
+    public void testHandshakeFailureReported() {
+        RecordingSession session = new RecordingSession();
+        EmbeddedChannel channel = createChannel(session);
+
+        channel.writeInbound("VOTIFIER");
+        assertFalse(channel.isActive());
+        assertTrue(session.closed);
+        assertNotNull(session.closeError);
+        assertNull(session.failure);
+    }
+
+    @Test
+    public void testRemoteErrorFailsVote() {
+        RecordingSession session = new RecordingSession();
+        session.votes.add(new Vote("Test", "test", "test", "0"));
+        EmbeddedChannel channel = createChannel(session);
+
+        channel.writeInbound("VOTIFIER 2 abc");
+        channel.readOutbound();
+        channel.writeInbound("{\"status\":\"error\",\"cause\":\"Overloaded\"}");
+        assertNotNull(session.failure);
+        assertEquals(0, session.successes);
+        assertFalse(channel.isActive());
+        assertNull(session.closeError);
+    }
+}
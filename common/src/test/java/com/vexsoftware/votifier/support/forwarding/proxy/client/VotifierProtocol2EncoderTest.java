@@ -0,0 +1,83 @@
+package com.vexsoftware.votifier.support.forwarding.proxy.client;
+
+import com.google.gson.JsonObject;
+import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.VotifierSession;
+import com.vexsoftware.votifier.net.protocol.TestVotifierPlugin;
+import com.vexsoftware.votifier.net.protocol.VotifierProtocolHandler;
+import com.vexsoftware.votifier.platform.VotifierPlugin;
+import com.vexsoftware.votifier.util.GsonInst;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VotifierProtocol2EncoderTest {
+    private static final VotifierSession SESSION = new VotifierSession();
+    private static final VotifierProtocol2Encoder ENCODER =
+            new VotifierProtocol2Encoder(TestVotifierPlugin.getI().getTokens().get("default"));
+
+    // Returns the message of the frame, after checking its header.
+    private static ByteBuf encode(VoteRequest request) {
+        EmbeddedChannel channel = new EmbeddedChannel(ENCODER);
+        assertTrue(channel.writeOutbound(request));
+        ByteBuf frame = channel.readOutbound();
+        assertFalse(channel.finish());
+
+        assertEquals(0x733A, frame.readShort());
+        int length = frame.readUnsignedShort();
+        assertEquals(frame.readableBytes(), length);
+        return frame;
+    }
+
+    private static void assertRoundTrip(Vote vote) throws Exception {
+        // Each round trip needs a session of its own, as the server records the protocol version on it.
+        VotifierSession session = new VotifierSession();
+        ByteBuf frame = encode(new VoteRequest(session.getChallenge(), vote, true));
+        String message = frame.toString(StandardCharsets.UTF_8);
+
+        // The envelope and payload parse as JSON, and hold what Gson would have written.
+        JsonObject envelope = GsonInst.gson.fromJson(message, JsonObject.class);
+        JsonObject expected = vote.serialize();
+        expected.addProperty("challenge", session.getChallenge());
+        assertEquals(expected, GsonInst.gson.fromJson(envelope.get("payload").getAsString(), JsonObject.class));
+        assertTrue(envelope.get("multiVote").getAsBoolean());
+
+        // The server accepts the signature.
+        EmbeddedChannel server = new EmbeddedChannel(false, false);
+        server.attr(VotifierSession.KEY).set(session);
+        server.attr(VotifierPlugin.KEY).set(TestVotifierPlugin.getI());
+        server.pipeline().addLast(new VotifierProtocolHandler(false, null));
+        server.register();
+        assertTrue(server.writeInbound(frame.readerIndex(0)));
+        assertEquals(vote, server.readInbound());
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testAsciiVote() throws Exception {
+        assertRoundTrip(new Vote("Test", "test", "127.0.0.1", "1500000000000"));
+    }
+
+    @Test
+    public void testLengthCountsBytes() throws Exception {
+        // Each of these characters takes more than one byte in UTF-8, which the length has to account for.
+        Vote vote = new Vote("T\u00e9st \u2713 \ud83d\ude00", "test", "127.0.0.1", "0");
+        ByteBuf frame = encode(new VoteRequest(SESSION.getChallenge(), vote));
+        try {
+            assertTrue(frame.toString(StandardCharsets.UTF_8).length() < frame.readableBytes());
+        } finally {
+            frame.release();
+        }
+        assertRoundTrip(vote);
+    }
+
+    @Test
+    public void testEscapedVote() throws Exception {
+        byte[] additionalData = "extra data".getBytes(StandardCharsets.UTF_8);
+        assertRoundTrip(new Vote("\"Quoted\" \\ site\n\t\u0001 \u2028", "test", "127.0.0.1", "0", additionalData));
+    }
+}
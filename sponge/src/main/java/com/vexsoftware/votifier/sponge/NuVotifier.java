@@ -1,8 +1,11 @@
 package com.vexsoftware.votifier.sponge;
 
 import com.google.inject.Inject;
+import com.vexsoftware.votifier.ReceivedVote;
 import com.vexsoftware.votifier.VoteHandler;
 import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.AddressFilter;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
 import com.vexsoftware.votifier.net.VotifierServerBootstrap;
 import com.vexsoftware.votifier.net.VotifierSession;
 import com.vexsoftware.votifier.net.protocol.v1crypto.RSAIO;
@@ -13,6 +16,7 @@ import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
 import com.vexsoftware.votifier.sponge.cmd.NVReloadCmd;
 import com.vexsoftware.votifier.sponge.cmd.TestVoteCmd;
 import com.vexsoftware.votifier.sponge.config.ConfigLoader;
+import com.vexsoftware.votifier.sponge.config.SpongeConfig;
 import com.vexsoftware.votifier.sponge.event.VotifierEvent;
 import com.vexsoftware.votifier.sponge.forwarding.SpongePluginMessagingForwardingSink;
 import com.vexsoftware.votifier.support.forwarding.ForwardedVoteListener;
@@ -33,8 +37,13 @@ import org.spongepowered.api.text.Text;
 import java.io.File;
 import java.security.Key;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Plugin(id = "nuvotifier", name = "NuVotifier", version = "@version@", authors = "Ichbinjoe",
         description = "Safe, smart, and secure Votifier server plugin")
@@ -99,7 +108,42 @@ public class NuVotifier implements VoteHandler, VotifierPlugin, ForwardedVoteLis
                 logger.info("------------------------------------------------------------------------------");
             }
 
+            AddressFilter addressFilter;
+            try {
+                SpongeConfig.AddressFilterConfig filterCfg = ConfigLoader.getSpongeConfig().addressFilter;
+                addressFilter = filterCfg == null ? AddressFilter.ALLOW_ALL : AddressFilter.compile(filterCfg.allow, filterCfg.deny);
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid address-filter configuration", e);
+                return false;
+            }
+
+            InFlightVoteLimiter voteLimiter = new InFlightVoteLimiter(InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK,
+                    InFlightVoteLimiter.DEFAULT_LOW_WATERMARK, InFlightVoteLimiter.OverloadAction.PAUSE);
+            SpongeConfig.InFlightVotes inFlightCfg = ConfigLoader.getSpongeConfig().inFlightVotes;
+            if (inFlightCfg != null) {
+                try {
+                    voteLimiter = InFlightVoteLimiter.fromConfig(inFlightCfg.highWatermark, inFlightCfg.lowWatermark,
+                            inFlightCfg.overloadAction);
+                } catch (IllegalArgumentException e) {
+                    logger.error("Invalid in-flight-votes configuration", e);
+                    return false;
+                }
+            }
+
             this.bootstrap = new VotifierServerBootstrap(host, port, this, disablev1);
+            this.bootstrap.setAddressFilter(addressFilter);
+            this.bootstrap.setVoteLimiter(voteLimiter);
+            SpongeConfig.ConnectionLimits limitsCfg = ConfigLoader.getSpongeConfig().connectionLimits;
+            if (limitsCfg != null) {
+                this.bootstrap.setTimeouts(limitsCfg.handshakeTimeout, limitsCfg.readTimeout);
+                this.bootstrap.setMaxConnections(limitsCfg.maxConnections);
+                this.bootstrap.setHandlerTimeout(limitsCfg.handlerTimeout);
+                this.bootstrap.setConnectionRateLimit(limitsCfg.connectionBurst, limitsCfg.connectionRate);
+            }
+            SpongeConfig.VoteBatching batchingCfg = ConfigLoader.getSpongeConfig().voteBatching;
+            if (batchingCfg != null) {
+                this.bootstrap.setVoteBatching(batchingCfg.maxSize, batchingCfg.maxDelay);
+            }
             this.bootstrap.start(err -> {
             });
         } else {
@@ -259,6 +303,11 @@ public class NuVotifier implements VoteHandler, VotifierPlugin, ForwardedVoteLis
 
     @Override
     public void onVoteReceived(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        onVoteReceivedAsync(vote, protocolVersion, remoteAddress);
+    }
+
+    @Override
+    public CompletionStage<Void> onVoteReceivedAsync(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
         if (debug) {
             if (protocolVersion == VotifierSession.ProtocolVersion.ONE) {
                 logger.info("Got a protocol v1 vote record from " + remoteAddress + " -> " + vote);
@@ -266,7 +315,38 @@ public class NuVotifier implements VoteHandler, VotifierPlugin, ForwardedVoteLis
                 logger.info("Got a protocol v2 vote record from " + remoteAddress + " -> " + vote);
             }
         }
-        this.fireVoteEvent(vote);
+        return this.fireVoteEvent(vote);
+    }
+
+    @Override
+    public List<CompletionStage<Void>> onVotesReceived(List<ReceivedVote> votes) {
+        if (debug) {
+            for (ReceivedVote vote : votes) {
+                logger.info("Got a " + vote.getProtocolVersion().humanReadable + " vote record from " + vote.getRemoteAddress() + " -> " + vote.getVote());
+            }
+        }
+        List<CompletableFuture<Void>> handled = new ArrayList<>(votes.size());
+        for (int i = 0; i < votes.size(); i++) {
+            handled.add(new CompletableFuture<>());
+        }
+        Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> {
+                    // Each vote succeeds or fails on its own, so a failing listener doesn't get the others sent again.
+                    for (int i = 0; i < votes.size(); i++) {
+                        if (handled.get(i).isDone()) {
+                            // The handler timeout already failed this vote, so the site will send it again.
+                            continue;
+                        }
+                        try {
+                            Sponge.getEventManager().post(new VotifierEvent(votes.get(i).getVote(), Sponge.getCauseStackManager().getCurrentCause()));
+                            handled.get(i).complete(null);
+                        } catch (Throwable e) {
+                            handled.get(i).completeExceptionally(e);
+                        }
+                    }
+                })
+                .submit(this);
+        return Collections.unmodifiableList(handled);
     }
 
     @Override
@@ -291,12 +371,23 @@ public class NuVotifier implements VoteHandler, VotifierPlugin, ForwardedVoteLis
         fireVoteEvent(v);
     }
 
-    private void fireVoteEvent(final Vote vote) {
+    private CompletionStage<Void> fireVoteEvent(final Vote vote) {
+        CompletableFuture<Void> handled = new CompletableFuture<>();
         Sponge.getScheduler().createTaskBuilder()
                 .execute(() -> {
-                    VotifierEvent event = new VotifierEvent(vote, Sponge.getCauseStackManager().getCurrentCause());
-                    Sponge.getEventManager().post(event);
+                    if (handled.isDone()) {
+                        // The handler timeout already failed this vote, so the site will send it again.
+                        return;
+                    }
+                    try {
+                        VotifierEvent event = new VotifierEvent(vote, Sponge.getCauseStackManager().getCurrentCause());
+                        Sponge.getEventManager().post(event);
+                        handled.complete(null);
+                    } catch (Throwable e) {
+                        handled.completeExceptionally(e);
+                    }
                 })
                 .submit(this);
+        return handled;
     }
 }
@@ -1,11 +1,17 @@
 package com.vexsoftware.votifier.sponge.config;
 
+import com.vexsoftware.votifier.net.ConnectionRateLimiter;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
+import com.vexsoftware.votifier.net.VoteBatcher;
+import com.vexsoftware.votifier.net.VotifierServerBootstrap;
 import com.vexsoftware.votifier.util.TokenUtil;
 import ninja.leaping.configurate.objectmapping.Setting;
 import ninja.leaping.configurate.objectmapping.serialize.ConfigSerializable;
 import org.spongepowered.api.Sponge;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 @ConfigSerializable
@@ -27,6 +33,26 @@ public class SpongeConfig {
             "using NuVotifier's proxy forwarding mechanism, enabling this option will increase your server's security.")
     public boolean disableV1Protocol = false;
 
+    @Setting(value = "address-filter", comment = "Optional lists of IPv4 and IPv6 CIDR blocks (for example 192.0.2.0/24 or 2001:db8::/32) to accept or reject\n" +
+            "connections from. Connections are matched against the most specific block that contains their address. If the allow\n" +
+            "list is not empty, connections from addresses outside of it are rejected.")
+    public AddressFilterConfig addressFilter = new AddressFilterConfig();
+
+    @Setting(value = "connection-limits", comment = "Limits that protect the vote listener from clients that connect but never finish sending a vote.")
+    public ConnectionLimits connectionLimits = new ConnectionLimits();
+
+    @Setting(value = "in-flight-votes", comment = "Limits how many received votes may be waiting to be handled. Once high-watermark votes are waiting, NuVotifier takes\n" +
+            "the overload-action until the backlog drops to low-watermark. Set high-watermark to 0 to disable the limit.\n" +
+            "Supported actions:\n" +
+            "- pause - Stop reading from new connections until the backlog has cleared.\n" +
+            "- reject - Keep reading, but answer protocol v2 votes with an error so that the sender retries later.")
+    public InFlightVotes inFlightVotes = new InFlightVotes();
+
+    @Setting(value = "vote-batching", comment = "Delivers votes to vote listeners in small batches instead of one at a time, which saves work when many votes arrive\n" +
+            "at once. A batch is delivered when it holds max-size votes or after max-delay milliseconds, whichever comes first.\n" +
+            "A max-size of 1 delivers every vote on its own.")
+    public VoteBatching voteBatching = new VoteBatching();
+
     @Setting(comment = "All tokens, labeled by the serviceName of each server list.\n" +
             "Default token for all server lists, if another isn't supplied.")
     public Map<String, String> tokens = Collections.singletonMap("default", TokenUtil.newToken());
@@ -34,6 +60,61 @@ public class SpongeConfig {
     @Setting(comment = "Configuration section for all vote forwarding to NuVotifier")
     public Forwarding forwarding = new Forwarding();
 
+    @ConfigSerializable
+    public static class AddressFilterConfig {
+
+        @Setting
+        public List<String> allow = new ArrayList<>();
+
+        @Setting
+        public List<String> deny = new ArrayList<>();
+    }
+
+    @ConfigSerializable
+    public static class ConnectionLimits {
+
+        @Setting(value = "handshake-timeout", comment = "Milliseconds a client has to send its vote after connecting. 0 disables this timeout.")
+        public long handshakeTimeout = VotifierServerBootstrap.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+
+        @Setting(value = "read-timeout", comment = "Milliseconds a client may go without sending anything before its vote is complete. 0 disables this timeout.")
+        public long readTimeout = VotifierServerBootstrap.DEFAULT_READ_TIMEOUT_MILLIS;
+
+        @Setting(value = "max-connections", comment = "How many vote connections may be open at once. 0 means no limit.")
+        public int maxConnections = VotifierServerBootstrap.DEFAULT_MAX_CONNECTIONS;
+
+        @Setting(value = "handler-timeout", comment = "Milliseconds the server has to handle a vote once it has arrived. Votes that take longer fail with an error. 0 disables this timeout.")
+        public long handlerTimeout = VotifierServerBootstrap.DEFAULT_HANDLER_TIMEOUT_MILLIS;
+
+        @Setting(value = "connection-rate", comment = "How many connections per second each address may open in the long run. 0 means no limit, which is the default. Sites that send many votes at once from one address may have them refused if this is set; 5 with a burst of 20 suits most servers.")
+        public double connectionRate = 0;
+
+        @Setting(value = "connection-burst", comment = "How many connections each address may open at once. Only used if connection-rate is set.")
+        public int connectionBurst = ConnectionRateLimiter.DEFAULT_BURST;
+    }
+
+    @ConfigSerializable
+    public static class InFlightVotes {
+
+        @Setting(value = "high-watermark")
+        public int highWatermark = InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK;
+
+        @Setting(value = "low-watermark")
+        public int lowWatermark = InFlightVoteLimiter.DEFAULT_LOW_WATERMARK;
+
+        @Setting(value = "overload-action")
+        public String overloadAction = "pause";
+    }
+
+    @ConfigSerializable
+    public static class VoteBatching {
+
+        @Setting(value = "max-size")
+        public int maxSize = 1;
+
+        @Setting(value = "max-delay")
+        public long maxDelay = VoteBatcher.DEFAULT_MAX_DELAY_MILLIS;
+    }
+
     @ConfigSerializable
     public static class Forwarding {
 
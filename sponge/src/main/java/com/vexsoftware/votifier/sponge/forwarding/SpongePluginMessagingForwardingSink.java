@@ -7,6 +7,7 @@ import org.spongepowered.api.Platform;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.network.ChannelBinding;
 import org.spongepowered.api.network.ChannelBuf;
+import org.spongepowered.api.network.PlayerConnection;
 import org.spongepowered.api.network.RawDataListener;
 import org.spongepowered.api.network.RemoteConnection;
 
@@ -44,7 +45,11 @@ public class SpongePluginMessagingForwardingSink extends AbstractPluginMessaging
     public void handlePayload(ChannelBuf channelBuf, RemoteConnection remoteConnection, Platform.Type type) {
         byte[] msgDirBuf = channelBuf.readBytes(channelBuf.available());
         try {
-            this.handlePluginMessage(msgDirBuf);
+            byte[] ack = this.handlePluginMessage(msgDirBuf);
+            if (ack != null && remoteConnection instanceof PlayerConnection) {
+                // The acknowledgement goes back to the proxy over the connection the votes came in on.
+                channelBinding.sendTo(((PlayerConnection) remoteConnection).getPlayer(), buf -> buf.writeBytes(ack));
+            }
         } catch (Exception e) {
             p.getLogger().error("There was an unknown error when processing a forwarded vote.", e);
         }
@@ -37,7 +37,7 @@ public final class OnlineForwardPluginMessagingForwardingSource extends Abstract
         if (sc.isPresent() &&
                 serverFilter.isAllowed(sc.get().getServerInfo().getName())
         ) {
-            if (forwardSpecific(new VelocityBackendServer(plugin.getServer(), sc.get().getServer()), v)) {
+            if (forwardSpecific(new VelocityBackendServer(plugin.getServer(), sc.get().getServer()), v, v.getUsername())) {
                 if (plugin.isDebug()) {
                     plugin.getPluginLogger().info("Successfully forwarded vote " + v + " to server " + sc.get().getServerInfo().getName());
                 }
@@ -66,6 +66,9 @@ public final class OnlineForwardPluginMessagingForwardingSource extends Abstract
     public void onPluginMessage(PluginMessageEvent e) {
         if (e.getIdentifier().equals(velocityChannelId)) {
             e.setResult(PluginMessageEvent.ForwardResult.handled());
+            if (e.getSource() instanceof ServerConnection) {
+                handleAck(((ServerConnection) e.getSource()).getServerInfo().getName(), e.getData());
+            }
         }
     }
 }
@@ -3,6 +3,7 @@ package com.vexsoftware.votifier.velocity;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PluginMessageEvent;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.messages.ChannelIdentifier;
 import com.vexsoftware.votifier.support.forwarding.AbstractPluginMessagingForwardingSource;
 import com.vexsoftware.votifier.support.forwarding.ServerFilter;
@@ -30,6 +31,9 @@ public class PluginMessagingForwardingSource extends AbstractPluginMessagingForw
     public void onPluginMessage(PluginMessageEvent e) {
         if (e.getIdentifier().equals(velocityChannelId)) {
             e.setResult(PluginMessageEvent.ForwardResult.handled());
+            if (e.getSource() instanceof ServerConnection) {
+                handleAck(((ServerConnection) e.getSource()).getServerInfo().getName(), e.getData());
+            }
         }
     }
 }
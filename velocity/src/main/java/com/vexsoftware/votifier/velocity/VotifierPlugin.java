@@ -9,26 +9,38 @@ import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.vexsoftware.votifier.VoteHandler;
 import com.vexsoftware.votifier.model.Vote;
+import com.vexsoftware.votifier.net.AddressFilter;
+import com.vexsoftware.votifier.net.ConnectionRateLimiter;
+import com.vexsoftware.votifier.net.InFlightVoteLimiter;
+import com.vexsoftware.votifier.net.VoteBatcher;
 import com.vexsoftware.votifier.net.VotifierServerBootstrap;
 import com.vexsoftware.votifier.net.VotifierSession;
 import com.vexsoftware.votifier.net.protocol.v1crypto.RSAIO;
 import com.vexsoftware.votifier.net.protocol.v1crypto.RSAKeygen;
 import com.vexsoftware.votifier.platform.BackendServer;
+import com.vexsoftware.votifier.platform.BackendServerSnapshot;
+import com.vexsoftware.votifier.platform.BackendServerTracker;
 import com.vexsoftware.votifier.platform.LoggingAdapter;
 import com.vexsoftware.votifier.platform.ProxyVotifierPlugin;
 import com.vexsoftware.votifier.platform.scheduler.VotifierScheduler;
+import com.vexsoftware.votifier.support.forwarding.AbstractPluginMessagingForwardingSource;
+import com.vexsoftware.votifier.support.forwarding.BoundedSendQueue;
 import com.vexsoftware.votifier.support.forwarding.ForwardingVoteSource;
 import com.vexsoftware.votifier.support.forwarding.ServerFilter;
 import com.vexsoftware.votifier.support.forwarding.cache.FileVoteCache;
 import com.vexsoftware.votifier.support.forwarding.cache.MemoryVoteCache;
 import com.vexsoftware.votifier.support.forwarding.cache.VoteCache;
+import com.vexsoftware.votifier.support.forwarding.proxy.ConsistentHashRing;
 import com.vexsoftware.votifier.support.forwarding.proxy.ProxyForwardingVoteSource;
 import com.vexsoftware.votifier.util.IOUtil;
 import com.vexsoftware.votifier.util.KeyCreator;
 import com.vexsoftware.votifier.util.TokenUtil;
+import com.vexsoftware.votifier.util.VotifierStatus;
 import com.vexsoftware.votifier.velocity.cmd.NVReloadCmd;
+import com.vexsoftware.votifier.velocity.cmd.NVStatusCmd;
 import com.vexsoftware.votifier.velocity.cmd.TestVoteCmd;
 import com.vexsoftware.votifier.velocity.event.VotifierEvent;
 import org.slf4j.Logger;
@@ -48,7 +60,8 @@ import java.nio.file.StandardCopyOption;
 import java.security.Key;
 import java.security.KeyPair;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(id = "nuvotifier", name = "NuVotifier", version = "@version@", authors = "Ichbinjoe",
         description = "Safe, smart, and secure Votifier server plugin")
@@ -123,12 +136,75 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
             logger.info("------------------------------------------------------------------------------");
         }
 
+        AddressFilter addressFilter = AddressFilter.ALLOW_ALL;
+        Toml filterCfg = config.getTable("address-filter");
+        if (filterCfg != null) {
+            try {
+                addressFilter = AddressFilter.compile(filterCfg.getList("allow", Collections.emptyList()),
+                        filterCfg.getList("deny", Collections.emptyList()));
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid address-filter configuration", e);
+                return false;
+            }
+        }
+
+        InFlightVoteLimiter voteLimiter = new InFlightVoteLimiter(InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK,
+                InFlightVoteLimiter.DEFAULT_LOW_WATERMARK, InFlightVoteLimiter.OverloadAction.PAUSE);
+        Toml inFlightCfg = config.getTable("in-flight-votes");
+        if (inFlightCfg != null) {
+            try {
+                voteLimiter = InFlightVoteLimiter.fromConfig(
+                        Math.toIntExact(inFlightCfg.getLong("high-watermark", (long) InFlightVoteLimiter.DEFAULT_HIGH_WATERMARK)),
+                        Math.toIntExact(inFlightCfg.getLong("low-watermark", (long) InFlightVoteLimiter.DEFAULT_LOW_WATERMARK)),
+                        inFlightCfg.getString("overload-action", "pause"));
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid in-flight-votes configuration", e);
+                return false;
+            }
+        }
+
         this.bootstrap = new VotifierServerBootstrap(host, port, this, disablev1);
+        this.bootstrap.setAddressFilter(addressFilter);
+        this.bootstrap.setVoteLimiter(voteLimiter);
+        Toml limitsCfg = config.getTable("connection-limits");
+        if (limitsCfg != null) {
+            this.bootstrap.setTimeouts(
+                    limitsCfg.getLong("handshake-timeout", VotifierServerBootstrap.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS),
+                    limitsCfg.getLong("read-timeout", VotifierServerBootstrap.DEFAULT_READ_TIMEOUT_MILLIS));
+            this.bootstrap.setMaxConnections(Math.toIntExact(
+                    limitsCfg.getLong("max-connections", (long) VotifierServerBootstrap.DEFAULT_MAX_CONNECTIONS)));
+            this.bootstrap.setHandlerTimeout(
+                    limitsCfg.getLong("handler-timeout", VotifierServerBootstrap.DEFAULT_HANDLER_TIMEOUT_MILLIS));
+            this.bootstrap.setConnectionRateLimit(Math.toIntExact(
+                    limitsCfg.getLong("connection-burst", (long) ConnectionRateLimiter.DEFAULT_BURST)),
+                    getNumber(limitsCfg, "connection-rate", 0));
+        }
+        Toml batchingCfg = config.getTable("vote-batching");
+        if (batchingCfg != null) {
+            this.bootstrap.setVoteBatching(Math.toIntExact(batchingCfg.getLong("max-size", 1L)),
+                    batchingCfg.getLong("max-delay", VoteBatcher.DEFAULT_MAX_DELAY_MILLIS));
+        }
         this.bootstrap.start(err -> {
         });
 
         Toml fwdCfg = config.getTable("forwarding");
         String fwdMethod = fwdCfg.getString("method", "none").toLowerCase();
+        int queueCapacity = BoundedSendQueue.DEFAULT_CAPACITY;
+        BoundedSendQueue.OverflowPolicy overflowPolicy = BoundedSendQueue.OverflowPolicy.SPILL;
+        Toml queueCfg = fwdCfg.getTable("queue");
+        if (queueCfg != null) {
+            queueCapacity = Math.toIntExact(queueCfg.getLong("capacity", (long) queueCapacity));
+            try {
+                overflowPolicy = BoundedSendQueue.OverflowPolicy.fromConfig(queueCfg.getString("overflow", "spill"));
+            } catch (IllegalArgumentException e) {
+                getLogger().error("Unknown queue overflow policy '" + queueCfg.getString("overflow") + "'", e);
+                return false;
+            }
+            if (queueCapacity < 1) {
+                getLogger().error("The forwarding queue capacity must be positive");
+                return false;
+            }
+        }
         if ("none".equals(fwdMethod)) {
             getLogger().info("Method none selected for vote forwarding: Votes will not be forwarded to backend servers.");
         } else if ("pluginmessaging".equals(fwdMethod)) {
@@ -154,6 +230,16 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
                 }
             }
             int dumpRate = pmCfg.getLong("dumpRate", 5L).intValue();
+            int maxMessageSize = pmCfg.getLong("maxMessageSize", (long) AbstractPluginMessagingForwardingSource.DEFAULT_MAX_MESSAGE_SIZE).intValue();
+            boolean acknowledge = pmCfg.getBoolean("acknowledge", false);
+            long ackTimeout = pmCfg.getLong("ackTimeout", 30L);
+            AbstractPluginMessagingForwardingSource.MessageFormat messageFormat;
+            try {
+                messageFormat = AbstractPluginMessagingForwardingSource.MessageFormat.fromConfig(pmCfg.getString("format", "json"));
+            } catch (IllegalArgumentException e) {
+                getLogger().error("Unknown plugin messaging format '" + pmCfg.getString("format") + "'", e);
+                return false;
+            }
 
             ServerFilter filter = new ServerFilter(
                     pmCfg.getList("excludedServers", Collections.emptyList()),
@@ -162,7 +248,12 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
 
             if (!pmCfg.getBoolean("onlySendToJoinedServer")) {
                 try {
-                    forwardingMethod = new PluginMessagingForwardingSource(channel, filter, this, voteCache, dumpRate);
+                    PluginMessagingForwardingSource source = new PluginMessagingForwardingSource(channel, filter, this, voteCache, dumpRate);
+                    source.setQueueLimits(queueCapacity, overflowPolicy);
+                    source.setMessageFormat(messageFormat);
+                    source.setMaxMessageSize(maxMessageSize);
+                    if (acknowledge) source.enableAcks(TimeUnit.SECONDS.toMillis(ackTimeout));
+                    forwardingMethod = source;
                     getLogger().info("Forwarding votes over PluginMessaging channel '" + channel + "' for vote forwarding!");
                 } catch (RuntimeException e) {
                     getLogger().error("NuVotifier could not set up PluginMessaging for vote forwarding!", e);
@@ -171,7 +262,12 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
                 try {
                     String fallbackServer = pmCfg.getString("joinedServerFallback", null);
                     if (fallbackServer != null && fallbackServer.isEmpty()) fallbackServer = null;
-                    forwardingMethod = new OnlineForwardPluginMessagingForwardingSource(channel, filter, this, voteCache, fallbackServer, dumpRate);
+                    OnlineForwardPluginMessagingForwardingSource source = new OnlineForwardPluginMessagingForwardingSource(channel, filter, this, voteCache, fallbackServer, dumpRate);
+                    source.setQueueLimits(queueCapacity, overflowPolicy);
+                    source.setMessageFormat(messageFormat);
+                    source.setMaxMessageSize(maxMessageSize);
+                    if (acknowledge) source.enableAcks(TimeUnit.SECONDS.toMillis(ackTimeout));
+                    forwardingMethod = source;
                     getLogger().info("Forwarding votes over PluginMessaging channel '" + channel + "' for vote forwarding for online players!");
                 } catch (RuntimeException e) {
                     getLogger().error("NuVotifier could not set up PluginMessaging for vote forwarding!", e);
@@ -207,7 +303,34 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
                 }
             }
 
-            forwardingMethod = bootstrap.createForwardingSource(serverList, null);
+            ProxyForwardingVoteSource proxySource;
+            if (fwdCfg.getBoolean("proxy-outbox", true)) {
+                proxySource = bootstrap.createForwardingSource(serverList, null, configDir.resolve("proxy-outbox"));
+            } else {
+                proxySource = bootstrap.createForwardingSource(serverList, null);
+            }
+
+            String routing = fwdCfg.getString("proxy-routing", "broadcast");
+            if ("sharded".equalsIgnoreCase(routing)) {
+                try {
+                    proxySource.setSharding(
+                            fwdCfg.getLong("proxy-virtual-nodes", (long) ConsistentHashRing.DEFAULT_VIRTUAL_NODES).intValue(),
+                            fwdCfg.getLong("proxy-replicas", 1L).intValue());
+                } catch (IllegalArgumentException e) {
+                    getLogger().error("Invalid vote sharding settings", e);
+                    return false;
+                }
+            } else if (!"broadcast".equalsIgnoreCase(routing)) {
+                getLogger().error("No proxy routing '" + routing + "' known. Sending votes to every server.");
+            }
+            proxySource.setQueueLimits(queueCapacity, overflowPolicy);
+            try {
+                proxySource.setIdleTimeout(fwdCfg.getLong("proxy-idle-timeout", ProxyForwardingVoteSource.DEFAULT_IDLE_TIMEOUT_MILLIS));
+            } catch (IllegalArgumentException e) {
+                getLogger().error("Invalid proxy idle timeout", e);
+                return false;
+            }
+            forwardingMethod = proxySource;
             getLogger().info("Forwarding votes from this NuVotifier instance to another NuVotifier server.");
         } else {
             getLogger().error("No vote forwarding method '" + fwdMethod + "' known. Defaulting to noop implementation.");
@@ -216,6 +339,14 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
         return true;
     }
 
+    /**
+     * Reads a number that may be written with or without a fractional part.
+     */
+    private static double getNumber(Toml table, String key, double defaultValue) {
+        Object value = table.toMap().get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+
     void halt() {
         if (bootstrap != null) {
             bootstrap.shutdown();
@@ -249,12 +380,20 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
         }
     }
 
+    /**
+     * Describes what the Votifier server and vote forwarding are up to, one line at a time.
+     */
+    public List<String> getStatus() {
+        return VotifierStatus.describe(bootstrap, forwardingMethod);
+    }
+
     @Subscribe
     public void onServerStart(ProxyInitializeEvent event) {
         this.scheduler = new VelocityScheduler(server, this);
         this.loggingAdapter = new SLF4JLogger(logger);
 
         this.getServer().getCommandManager().register("pnvreload", new NVReloadCmd(this));
+        this.getServer().getCommandManager().register("pnvstatus", new NVStatusCmd(this));
         this.getServer().getCommandManager().register("ptestvote", new TestVoteCmd(this));
 
         if (!loadAndBind())
@@ -353,6 +492,12 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
      */
     private ForwardingVoteSource forwardingMethod;
 
+    /**
+     * Backend servers, rewrapped only when servers are registered or unregistered.
+     */
+    private final BackendServerTracker<RegisteredServer> backendServers =
+            new BackendServerTracker<>(rs -> new VelocityBackendServer(server, rs));
+
     private void gracefulExit() {
         logger.error("Votifier did not initialize properly!");
     }
@@ -383,6 +528,11 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
 
     @Override
     public void onVoteReceived(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
+        onVoteReceivedAsync(vote, protocolVersion, remoteAddress);
+    }
+
+    @Override
+    public CompletionStage<Void> onVoteReceivedAsync(final Vote vote, VotifierSession.ProtocolVersion protocolVersion, String remoteAddress) {
         if (debug) {
             if (protocolVersion == VotifierSession.ProtocolVersion.ONE) {
                 logger.info("Got a protocol v1 vote record from " + remoteAddress + " -> " + vote);
@@ -391,10 +541,13 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
             }
         }
 
-        server.getEventManager().fireAndForget(new VotifierEvent(vote));
+        CompletionStage<Void> handled = server.getEventManager().fire(new VotifierEvent(vote)).thenApply(event -> null);
         if (forwardingMethod != null) {
-            forwardingMethod.forward(vote);
+            // Only forward votes that were handled, as the site sends failed and timed out votes again.
+            ForwardingVoteSource forwarding = forwardingMethod;
+            handled.thenRun(() -> forwarding.forward(vote));
         }
+        return handled;
     }
 
     @Override
@@ -413,7 +566,12 @@ public class VotifierPlugin implements VoteHandler, ProxyVotifierPlugin {
 
     @Override
     public Collection<BackendServer> getAllBackendServers() {
-        return server.getAllServers().stream().map(s -> new VelocityBackendServer(server, s)).collect(Collectors.toList());
+        return getBackendServerSnapshot().asList();
+    }
+
+    @Override
+    public BackendServerSnapshot getBackendServerSnapshot() {
+        return backendServers.update(server.getAllServers());
     }
 
     @Override
@@ -0,0 +1,27 @@
+package com.vexsoftware.votifier.velocity.cmd;
+
+import com.velocitypowered.api.command.SimpleCommand;
+import com.vexsoftware.votifier.velocity.VotifierPlugin;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+public class NVStatusCmd implements SimpleCommand {
+
+    private final VotifierPlugin plugin;
+
+    public NVStatusCmd(VotifierPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(SimpleCommand.Invocation invocation) {
+        for (String line : plugin.getStatus()) {
+            invocation.source().sendMessage(Component.text(line, NamedTextColor.GRAY));
+        }
+    }
+
+    @Override
+    public boolean hasPermission(SimpleCommand.Invocation invocation) {
+        return invocation.source().hasPermission("nuvotifier.status");
+    }
+}